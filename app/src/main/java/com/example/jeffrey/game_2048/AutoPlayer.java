@@ -0,0 +1,207 @@
+package com.example.jeffrey.game_2048;
+
+import android.os.Process;
+
+import com.example.jeffrey.game_2048.engine.Expectimax;
+import com.example.jeffrey.game_2048.engine.GameSnapshot;
+import com.example.jeffrey.game_2048.engine.NTupleNetwork;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/** Plays the game by itself, for demonstrations and for soaking devices.
+ *
+ *  Moves are chosen on a background thread, by a trained NTupleNetwork if
+ *  one is given and otherwise by an Expectimax search, and fed to the same
+ *  key queue as swipes.  The player waits for the display to catch up before
+ *  each move, and plays at most one move per interval set by the speed.  Its
+ *  search budget is a share of that interval, halved whenever the display is
+ *  found to be behind and grown back while it keeps up, so the display never
+ *  has to drop frames to keep pace.  Both choose on the packed board, where
+ *  tiles above 2^15 are seen as 2^15; when they find no move there, the
+ *  player makes any move the whole board allows.  When a game is won, the
+ *  player pauses and then keeps going beyond 2048; when it is lost, the
+ *  player starts a new one after a pause, unless told not to, as in a
+ *  race.
+ *  @author Jeffrey Jacinto */
+class AutoPlayer implements Runnable {
+    /** Longest interval between moves, at speed 0 (milliseconds). */
+    static final int MAX_INTERVAL = 1000;
+    /** Least and greatest search budget for a move (milliseconds). */
+    static final int MIN_BUDGET = 2, MAX_BUDGET = 200;
+    /** Wait between checks for the game to be ready (milliseconds). */
+    static final int POLL = 16;
+    /** Time to wait for a move to be taken before choosing again
+     *  (milliseconds). */
+    static final int STALL = 1000;
+    /** Pause before starting a new game after one ends (milliseconds). */
+    static final int GAME_OVER_PAUSE = 2000;
+    /** Size of the search cache (log 2). */
+    static final int CACHE_BITS = 16;
+
+    /** The model played, the display of it, and the key queue fed. */
+    private final GameMain mModel;
+    private final BoardRenderer mRenderer;
+    private final GameInput mListener;
+    /** Runs the player. */
+    private final ExecutorService mExecutor =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "auto-play");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    /** The running player, or null. */
+    private Future<?> mTask;
+    /** Interval between moves (milliseconds). */
+    private volatile int mInterval = MAX_INTERVAL / 2;
+    /** True iff a lost game is followed by a new one. */
+    private volatile boolean mRestarting = true;
+    /** Network choosing moves, or null to search. */
+    private volatile NTupleNetwork mNetwork;
+
+    /** A player of MODEL, shown by RENDERER, feeding keys to LISTENER. */
+    AutoPlayer(GameMain model, BoardRenderer renderer, GameInput listener) {
+        mModel = model;
+        mRenderer = renderer;
+        mListener = listener;
+    }
+
+    /** Set my speed to PERCENT, from 0 (a move a second) to 100 (as fast
+     *  as the display keeps up). */
+    void setSpeed(int percent) {
+        mInterval = MAX_INTERVAL * (100 - Math.max(0, Math.min(100, percent)))
+                / 100;
+    }
+
+    /** Start a new game after each lost one iff RESTARTING, as by
+     *  default; otherwise, wait for a new game to be started. */
+    void setRestarting(boolean restarting) {
+        mRestarting = restarting;
+    }
+
+    /** Choose moves by NETWORK, or by searching if NETWORK is null, as by
+     *  default. */
+    void setNetwork(NTupleNetwork network) {
+        mNetwork = network;
+    }
+
+    /** Start playing, if not already. */
+    synchronized void start() {
+        if (mTask == null) {
+            mTask = mExecutor.submit(this);
+        }
+    }
+
+    /** Stop playing at once.  A move being chosen is abandoned. */
+    synchronized void stop() {
+        if (mTask != null) {
+            mTask.cancel(true);
+            mTask = null;
+        }
+    }
+
+    /** Return true iff playing. */
+    synchronized boolean isRunning() {
+        return mTask != null;
+    }
+
+    /** Run TASK on my thread, after any play in progress has stopped.
+     *  Ignored once I am shut down. */
+    void execute(Runnable task) {
+        try {
+            mExecutor.execute(task);
+        } catch (RejectedExecutionException excp) {
+            // shut down
+        }
+    }
+
+    /** Stop playing for good, releasing my thread. */
+    void shutdown() {
+        stop();
+        mExecutor.shutdownNow();
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        Expectimax solver = new Expectimax(CACHE_BITS);
+        int budget = MAX_BUDGET;
+        GameSnapshot last = null;
+        long lastMove = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                GameSnapshot state = mModel.getAwaitingState();
+                long now = System.currentTimeMillis();
+                if (state == null || mListener.getBacklog() > 0
+                        || (state == last && now - lastMove < STALL)) {
+                    Thread.sleep(POLL);
+                    continue;
+                }
+                if (mRenderer.getBacklog() > 0) {
+                    budget = Math.max(MIN_BUDGET, budget / 2);
+                    Thread.sleep(POLL);
+                    continue;
+                }
+                int interval = mInterval;
+                if (state.getStatus() == GameSnapshot.Status.LOST
+                        && !mRestarting) {
+                    Thread.sleep(POLL);
+                    continue;
+                } else if (state.getStatus() == GameSnapshot.Status.LOST) {
+                    Thread.sleep(GAME_OVER_PAUSE);
+                    offer(GameFragment.NEW_GAME_KEY);
+                } else {
+                    boolean won =
+                            state.getStatus() == GameSnapshot.Status.WON;
+                    if (won) {
+                        Thread.sleep(GAME_OVER_PAUSE);
+                    }
+                    int target = Math.max(MIN_BUDGET,
+                            Math.min(MAX_BUDGET, interval / 2));
+                    budget = Math.min(target, budget * 2);
+                    NTupleNetwork network = mNetwork;
+                    int side = network != null
+                            ? network.bestMove(state.getBoard())
+                            : solver.bestMove(state.getBoard(),
+                                              budget * 1000000L);
+                    if (side < 0) {
+                        // packed boards hold tiles above 2^15 as 2^15, and
+                        // so may show no move where these tiles can merge
+                        side = state.anyMove();
+                    }
+                    if (side < 0 && won) {
+                        side = 0;
+                    } else if (side < 0) {
+                        Thread.sleep(POLL);
+                        continue;
+                    }
+                    long wait = lastMove + interval
+                            - System.currentTimeMillis();
+                    if (wait > 0) {
+                        Thread.sleep(wait);
+                    }
+                    offer(GameFragment.SIDE_KEYS[side]);
+                }
+                last = state;
+                lastMove = System.currentTimeMillis();
+            }
+        } catch (InterruptedException excp) {
+            // stopped
+        }
+    }
+
+    /** Feed KEY to the key queue, unless stopped. */
+    private void offer(String key) throws InterruptedException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException();
+        }
+        mListener.offerKey(key);
+    }
+
+}
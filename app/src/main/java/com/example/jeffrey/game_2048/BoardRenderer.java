@@ -0,0 +1,155 @@
+package com.example.jeffrey.game_2048;
+
+import com.example.jeffrey.game_2048.boardUI.Game;
+import com.example.jeffrey.game_2048.boardUI.GameBoard;
+import com.example.jeffrey.game_2048.boardUI.RenderThread;
+import com.example.jeffrey.game_2048.engine.GameSnapshot;
+import com.example.jeffrey.game_2048.engine.MoveEvent;
+import com.example.jeffrey.game_2048.engine.MovePublisher;
+
+import java.util.concurrent.Executor;
+
+/** Shows the turns committed by a GameMain on a Game display.  Subscribed
+ *  to the model's events on the RenderThread, it replays each turn's moves
+ *  as an animation, while the model may already be several turns ahead; the
+ *  further behind it falls, the shorter its animations.  If events are
+ *  dropped, it skips ahead to a SYNCED snapshot of the model.  Any number
+ *  of renderers may show games side by side, as in a race.
+ *
+ *  Events are delivered on the RenderThread, where the display lives;
+ *  only score changes are passed on to the UI thread.
+ *  @author Jeffrey Jacinto */
+class BoardRenderer implements MovePublisher.Subscriber {
+    /** Number of undelivered events the renderer may fall behind by,
+     *  several hundred turns. */
+    static final int CAPACITY = 1 << 14;
+
+    /** The model and the score display. */
+    private final GameMain mModel;
+    private final GameInput mListener;
+    /** The display, or null until it is made on the RenderThread. */
+    private volatile Game mView;
+    /** Runs score updates on the UI thread. */
+    private final Executor mUiThread;
+    /** True iff events have been dropped since the last full state. */
+    private boolean mStale;
+    /** My subscription to the model's events. */
+    private volatile MovePublisher.Subscription mSubscription;
+
+    /** A renderer showing MODEL's turns on BOARD, and its scores through
+     *  LISTENER, called by UITHREAD.  The Game driving BOARD is made, and
+     *  cleared, on the RenderThread, ahead of any event delivered there. */
+    BoardRenderer(GameMain model, final GameBoard board, GameInput listener,
+                  Executor uiThread) {
+        mModel = model;
+        mListener = listener;
+        mUiThread = uiThread;
+        RenderThread.executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                mView = new Game(board, GameMain.SIZE);
+            }
+        });
+    }
+
+    @Override
+    public void onSubscribe(MovePublisher.Subscription subscription) {
+        mSubscription = subscription;
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    /** Return the number of events published and not yet delivered, plus
+     *  the number of turns delivered and not yet animated.  May be called
+     *  from any thread. */
+    int getBacklog() {
+        MovePublisher.Subscription subscription = mSubscription;
+        Game view = mView;
+        return (subscription == null ? 0 : subscription.getBacklog())
+                + (view == null ? 0 : view.getBacklog());
+    }
+
+    @Override
+    public void onEvent(MoveEvent event) {
+        switch (event.getType()) {
+            case CLEARED:
+                mStale = false;
+                mView.clear();
+                showScore(0);
+                break;
+            case LOADED:
+            case SYNCED:
+                mStale = false;
+                show(event.getSnapshot());
+                break;
+            default:
+                if (!mStale) {
+                    play(event);
+                }
+                break;
+        }
+    }
+
+    /** Apply EVENT, part of a turn, to the display. */
+    private void play(MoveEvent event) {
+        int value = event.getValue();
+        switch (event.getType()) {
+            case SPAWNED:
+                mView.addTile(value, event.getRow(), event.getCol());
+                break;
+            case MOVED:
+                mView.moveTile(value, event.getRow(), event.getCol(),
+                        event.getToRow(), event.getToCol());
+                break;
+            case MERGED:
+                mView.mergeTile(value / 2, value, event.getRow(),
+                        event.getCol(), event.getToRow(), event.getToCol());
+                break;
+            case SCORE_CHANGED:
+                showScore(value);
+                break;
+            case TURN_ENDED:
+                mView.displayMoves(backlog(event.getTurn()));
+                break;
+            case GAME_ENDED:
+                mView.endGame(event.getSnapshot().getStatus()
+                        == GameSnapshot.Status.WON);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /** Show the whole game described by SNAPSHOT at once. */
+    private void show(GameSnapshot snapshot) {
+        mView.setTiles(snapshot.getTiles());
+        showScore(snapshot.getScore());
+        if (snapshot.getStatus() != GameSnapshot.Status.PLAYING) {
+            mView.endGame(snapshot.getStatus() == GameSnapshot.Status.WON);
+        }
+    }
+
+    /** Show SCORE, and the model's best score, on the UI thread. */
+    private void showScore(final int score) {
+        final int best = mModel.getBestScore();
+        mUiThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                mListener.setScore(score, best);
+            }
+        });
+    }
+
+    /** Return the number of turns after TURN that the display has yet to
+     *  show: those the model has made, and those waiting as input. */
+    private int backlog(int turn) {
+        int ahead = mModel.getSnapshot().getMoves() - turn;
+        return Math.max(0, ahead) + mListener.getBacklog();
+    }
+
+    @Override
+    public void onDropped(int count) {
+        mStale = true;
+        mModel.requestSync();
+    }
+
+}
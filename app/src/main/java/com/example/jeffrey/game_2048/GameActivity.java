@@ -50,11 +50,30 @@ public class GameActivity extends AppCompatActivity {
         //noinspection SimplifiableIfStatement
         if (id == R.id.action_settings) {
             return true;
+        } else if (id == R.id.action_race) {
+            showRace(4, 1);
+            return true;
+        } else if (id == R.id.action_race_crowd) {
+            showRace(RaceFragment.MAX_BOARDS, 1);
+            return true;
+        } else if (id == R.id.action_split_screen) {
+            showRace(2, 2);
+            return true;
         }
 
         return super.onOptionsItemSelected(item);
     }
 
+    /** Show a race of BOARDS boards, PLAYERS of them played by swipes,
+     *  in place of the game until Back is pressed. */
+    private void showRace(int boards, int players) {
+        getSupportFragmentManager().beginTransaction()
+                .replace(R.id.game_container,
+                        RaceFragment.newInstance(boards, players))
+                .addToBackStack(null)
+                .commit();
+    }
+
     public void onLoadView(int labelPanelHeight) {
         TextView appTitle = (TextView) findViewById(R.id.app_title);
         labelPanelHeight = (labelPanelHeight == 0) ? 100 : labelPanelHeight;
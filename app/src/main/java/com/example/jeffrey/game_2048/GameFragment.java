@@ -6,31 +6,56 @@ import android.media.AudioManager;
 import android.media.SoundPool;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.app.Fragment;
 import android.util.Log;
-import android.view.GestureDetector;
 import android.view.LayoutInflater;
-import android.view.MotionEvent;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.view.ViewGroup;
 import android.widget.Button;
+import android.widget.CompoundButton;
 import android.widget.RelativeLayout;
+import android.widget.SeekBar;
+import android.widget.Toast;
+import android.widget.ToggleButton;
 
 import com.example.jeffrey.game_2048.boardUI.GameBoard;
 import com.example.jeffrey.game_2048.boardUI.OnSwipeListener;
+import com.example.jeffrey.game_2048.boardUI.RenderThread;
+import com.example.jeffrey.game_2048.engine.GameSnapshot;
+import com.example.jeffrey.game_2048.engine.MoveEvent;
+import com.example.jeffrey.game_2048.engine.MovePublisher;
+import com.example.jeffrey.game_2048.engine.NTupleNetwork;
+import com.example.jeffrey.game_2048.store.CheckpointLog;
+import com.example.jeffrey.game_2048.store.GameRecord;
+import com.example.jeffrey.game_2048.store.ScoreHistory;
 
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
 
 public class GameFragment extends Fragment {
     // TODO: Rename parameter arguments, choose names that match
     // the fragment initialization parameters, e.g. ARG_ITEM_NUMBER
     private static final String ARG_PARAM1 = "param1";
     private static final String ARG_PARAM2 = "param2";
+    /** Distance a swipe must move, in multiples of the system touch slop. */
+    private static final int SWIPE_SLOP_FACTOR = 3;
+    /** Key starting a new game. */
+    static final String NEW_GAME_KEY = "New Game";
+    /** Keys for the sides, indexed as numbered by Boards. */
+    static final String[] SIDE_KEYS = { "Up", "Right", "Down", "Left" };
     // TODO: Rename and change types of parameters
     private String mParam1;
     private String mParam2;
@@ -41,15 +66,34 @@ public class GameFragment extends Fragment {
     /** Game loop task. */
     private GameLoop mGameLoop;
 
-    /** Detects gestures for listener. */
-    private GestureDetector mGdt;
-
     /** Fragment Game interface. */
     private GameListener mListener;
 
+    /** Player for auto-play mode, and the button toggling it. */
+    private AutoPlayer mAutoPlayer;
+    private ToggleButton mAutoPlayButton;
+
     /** Sound player. */
     private SoundPoolPlayer mSounds;
 
+    /** Record of finished games, or null if it is not open, or could not
+     *  be opened.  Opened, and used, only by GameLoops, since opening it
+     *  may repair and reindex the whole history. */
+    private ScoreHistory mHistory;
+
+    /** Log of the current game, checkpointed after every move. */
+    private CheckpointLog mCheckpoints;
+    /** True iff mGame holds the game to play, loaded by an earlier
+     *  GameLoop, so that a resumed loop carries on with it rather than
+     *  reading the log.  Used only by GameLoops, which run one at a
+     *  time. */
+    private boolean mLoaded;
+
+    /** Trained network giving hints and choosing auto-play moves, or null
+     *  if none is installed or it is not loaded yet.  Used only on the UI
+     *  thread. */
+    private NTupleNetwork mNetwork;
+
     /** Root view. */
     private View rootView;
 
@@ -79,6 +123,99 @@ public class GameFragment extends Fragment {
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         mSounds = new SoundPoolPlayer(getActivity());
+        mCheckpoints = new CheckpointLog(new File(getActivity().getFilesDir(),
+                "checkpoint.log"));
+    }
+
+    /** Give PLAYER the network trained by NTupleTrainer, if one is
+     *  installed, and offer hints from it.  The network is loaded on
+     *  PLAYER's thread, unless already loaded, and handed back through
+     *  UITHREAD; it is mapped, not read, so that its weights are paged in
+     *  only as they are used. */
+    private void loadNetwork(final AutoPlayer player,
+                             final Executor uiThread) {
+        if (mNetwork != null) {
+            player.setNetwork(mNetwork);
+            return;
+        }
+        final File weights = new File(getActivity().getFilesDir(),
+                NTupleNetwork.FILE_NAME);
+        player.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!weights.exists()) {
+                    return;
+                }
+                final NTupleNetwork network;
+                try {
+                    network = NTupleNetwork.load(weights, false);
+                } catch (IOException e) {
+                    Log.e("NETWORK", "NETWORK LOAD FAILED");
+                    return;
+                }
+                player.setNetwork(network);
+                uiThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        mNetwork = network;
+                        setHasOptionsMenu(true);
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
+        inflater.inflate(R.menu.menu_fragment_game, menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_hint) {
+            showHint();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /** Show the move the network would make, if the game is waiting for
+     *  one and is not being auto-played.  The network's weights are paged
+     *  in as they are read, so the move is chosen on the auto-play thread
+     *  and only shown on the UI thread. */
+    private void showHint() {
+        final NTupleNetwork network = mNetwork;
+        final GameMain game = mGame;
+        if (network == null || mAutoPlayer == null
+                || mAutoPlayer.isRunning()) {
+            return;
+        }
+        final Handler uiHandler = new Handler(Looper.getMainLooper());
+        mAutoPlayer.execute(new Runnable() {
+            @Override
+            public void run() {
+                GameSnapshot state = game.getAwaitingState();
+                if (state == null) {
+                    return;
+                }
+                int best = network.bestMove(state.getBoard());
+                final int side = best >= 0 ? best : state.anyMove();
+                if (side < 0) {
+                    return;
+                }
+                uiHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isAdded()) {
+                            Toast.makeText(getContext(),
+                                    getString(R.string.hint_format,
+                                            SIDE_KEYS[side]),
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                });
+            }
+        });
     }
 
     @Override
@@ -107,22 +244,47 @@ public class GameFragment extends Fragment {
         bestScoreView.setTitle("BEST");
 
         mListener = new GameListener();
-        mGdt = new GestureDetector(getContext(), mListener);
+        mListener.setSlop(SWIPE_SLOP_FACTOR
+                * ViewConfiguration.get(getContext()).getScaledTouchSlop());
 
-        // attach detector to GameBoard view
+        // attach swipe recognizer to GameBoard view
         final GameBoard gameBoard = (GameBoard) view.findViewById(R.id.game_board);
-        gameBoard.setOnTouchListener(new View.OnTouchListener() {
+        gameBoard.setOnTouchListener(mListener);
+
+        // init game, shown on the render thread as its turns are
+        // committed
+        mGame = new GameMain(mListener);
+        mLoaded = false;
+        final Handler uiHandler = new Handler(Looper.getMainLooper());
+        Executor uiThread = new Executor() {
             @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                if (mGdt.onTouchEvent(event)) {
-                    return false;
+            public void execute(Runnable task) {
+                uiHandler.post(task);
+            }
+        };
+        BoardRenderer renderer = new BoardRenderer(mGame, gameBoard,
+                mListener, uiThread);
+        mGame.getEvents().subscribe(renderer, RenderThread.executor(),
+                BoardRenderer.CAPACITY);
+
+        // play sound for every completed turn
+        mGame.getEvents().subscribe(new MovePublisher.Subscriber() {
+            @Override
+            public void onSubscribe(MovePublisher.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onEvent(MoveEvent event) {
+                if (event.getType() == MoveEvent.Type.TURN_ENDED) {
+                    mSounds.playShortResource(R.raw.blop);
                 }
-                return true;
             }
-        });
 
-        // init game
-        mGame = new GameMain(gameBoard, mListener);
+            @Override
+            public void onDropped(int count) {
+            }
+        }, MovePublisher.DIRECT, 1);
 
         // start new game on new game button click
         Button button = (Button) view.findViewById(R.id.button_new_game);
@@ -132,25 +294,62 @@ public class GameFragment extends Fragment {
             }
         });
 
+        // let the game play itself while auto-play is on
+        mAutoPlayer = new AutoPlayer(mGame, renderer, mListener);
+        loadNetwork(mAutoPlayer, uiThread);
+        mAutoPlayButton = (ToggleButton) view.findViewById(
+                R.id.button_auto_play);
+        mAutoPlayButton.setOnCheckedChangeListener(
+                new CompoundButton.OnCheckedChangeListener() {
+                    @Override
+                    public void onCheckedChanged(CompoundButton b,
+                                                 boolean checked) {
+                        if (checked) {
+                            mAutoPlayer.start();
+                        } else {
+                            mAutoPlayer.stop();
+                        }
+                    }
+                });
+        SeekBar speed = (SeekBar) view.findViewById(R.id.auto_play_speed);
+        mAutoPlayer.setSpeed(speed.getProgress());
+        speed.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar bar, int progress,
+                                          boolean fromUser) {
+                mAutoPlayer.setSpeed(progress);
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar bar) {
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar bar) {
+            }
+        });
+
         return view;
     }
 
-    /** Start game loop. */
-    private void startLoop(boolean toInit) {
-        mGameLoop = new GameLoop(toInit);
+    /** Start game loop, resuming the last checkpointed game if any. */
+    private void startLoop() {
+        mGameLoop = new GameLoop();
         mGameLoop.execute();
     }
 
     @Override
     public void onPause() {
         super.onPause();
+        stopAutoPlay();
 
-        // save game state
+        // game state is already checkpointed after every move, so only the
+        // best score is saved here, and neither waits on the disk
         SharedPreferences state = getActivity().getSharedPreferences("STATE",
                 0);
         SharedPreferences.Editor editor = state.edit();
-        editor.putString("gameState", mGame.toJSON());
         editor.putInt("maxScore", mGame.getMaxScore());
+        mCheckpoints.flush();
 
         if (mGameLoop != null) {
             mGameLoop.cancel(true);
@@ -158,7 +357,7 @@ public class GameFragment extends Fragment {
         }
 
         // save edits
-        editor.commit();
+        editor.apply();
     }
 
     @Override
@@ -166,185 +365,217 @@ public class GameFragment extends Fragment {
         super.onResume();
 
         // load previous game state
-        SharedPreferences state = getActivity().getSharedPreferences("STATE", 0);
-        String stateJSON = state.getString("gameState", "");
-
-        setGameState(stateJSON);
+        if (mGameLoop == null) {
+            startLoop();
+        }
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
         mSounds.release(); // release audio resources
+        mCheckpoints.close();
+        if (mAutoPlayer != null) {
+            mAutoPlayer.shutdown();
+        }
     }
 
-    /** Set game state from JSON string STATEJSON
-     *  @param stateJSON the game state */
-    public void setGameState(String stateJSON) {
-        if (stateJSON == "") {
-            startLoop(true); // start game from scratch
+    /** Turn auto-play off, if on.  Called on the UI thread. */
+    private void stopAutoPlay() {
+        if (mAutoPlayer != null) {
+            mAutoPlayer.stop();
+            mAutoPlayButton.setChecked(false);
+        }
+    }
+
+    /** Return the best score saved in PREFERENCES or recorded in the
+     *  score history. */
+    private int bestScore(SharedPreferences preferences) {
+        int maxScore = preferences.getInt("maxScore", 0);
+        if (mHistory != null) {
+            maxScore = Math.max(maxScore, mHistory.getBestScore());
+        }
+        return maxScore;
+    }
+
+    /** Open the score history, if not already open.  Called off the UI
+     *  thread. */
+    private void openHistory() {
+        if (mHistory != null) {
             return;
         }
+        try {
+            mHistory = new ScoreHistory(getActivity().getFilesDir());
+        } catch (IOException e) {
+            Log.e("HISTORY", "SCORE HISTORY OPEN FAILED");
+        }
+    }
+
+    /** Append the current game to the score history, if it has moves and
+     *  has not been recorded yet.  Called off the UI thread. */
+    private void recordGame() {
+        GameRecord record = mGame.takeRecord();
+        if (record == null || mHistory == null) {
+            return;
+        }
+        try {
+            mHistory.add(record);
+        } catch (IOException e) {
+            Log.e("HISTORY", "SCORE HISTORY WRITE FAILED");
+        }
+    }
+
+    /** Return the game saved as a JSON string by earlier versions, or null
+     *  if there is none.  Reads files, so is called off the UI thread. */
+    private GameSnapshot loadLegacyState() {
+        SharedPreferences state = getActivity().getSharedPreferences("STATE",
+                0);
+        return parseGameState(state.getString("gameState", ""));
+    }
+
+    /** Forget the game saved by earlier versions, once the checkpoint log
+     *  holds the game restored from it.  Waits for the log, so is called
+     *  off the UI thread. */
+    private void forgetLegacyState() {
+        if (mCheckpoints.readLast() != null) {
+            getActivity().getSharedPreferences("STATE", 0).edit()
+                    .remove("gameState").apply();
+        }
+    }
+
+    /** Return the game state stored in JSON string STATEJSON, or null if
+     *  there is none.
+     *  @param stateJSON the game state */
+    private GameSnapshot parseGameState(String stateJSON) {
+        if (stateJSON.isEmpty()) {
+            return null;
+        }
         try {
             // load string into JSON
             JSONObject state = new JSONObject(stateJSON);
             JSONArray tiles = state.getJSONArray("tiles");
 
-            SharedPreferences preferences = getActivity()
-                    .getSharedPreferences("STATE", 0);
-
-            // set score
-            int score = state.getInt("score"), maxScore;
-            maxScore = preferences.getInt("maxScore", 0);
-            mListener.setScore(score, maxScore);
-            mGame.setScore(score, maxScore);
-
             // get tiles from JSON data
-            int[][] tileArray = new int[tiles.length()][];
+            int[][] board = new int[GameMain.SIZE][GameMain.SIZE];
             for (int index = 0; index < tiles.length(); index += 1) {
                 JSONObject tile = (JSONObject) tiles.get(index);
-                tileArray[index] = new int[] { tile.getInt("value"), tile.getInt("row"),
-                                               tile.getInt("col") };
-            }
-
-            if (mGameLoop == null) {
-                startLoop(false); // start loop from state
+                board[tile.getInt("row")][tile.getInt("col")] =
+                        tile.getInt("value");
             }
-
-            mGame.setTiles(tileArray);
+            return new GameSnapshot(board, state.getInt("score"),
+                    state.optInt("moves", 0),
+                    state.optLong("started", System.currentTimeMillis()),
+                    GameSnapshot.Status.PLAYING);
         } catch (Exception e) {
             Log.e("GAMESTATE", "JSON READ FAILED");
+            return null;
         }
     }
 
     public class GameLoop extends AsyncTask<Void, Void, Void> {
         /** True iff to start game from scratch. */
         private boolean mInit;
-
-        public GameLoop(boolean toInit) {
-            super();
-            mInit = toInit;
-        }
+        /** True iff the saved game is yet to be restored. */
+        private boolean mRestore = true;
+        /** True iff the game was restored from the state saved by earlier
+         *  versions, which is to be dropped once it is checkpointed. */
+        private boolean mMigrating;
 
         @Override
         protected Void doInBackground(Void... params) {
-            Runnable toRun;
-            if (mInit) {
-                toRun = new Runnable() {
-                    @Override
-                    public void run() {
-                        mGame.clear();
-                        mGame.setRandomPiece();
-                        synchronized (this) {
-                            this.notify();
-                        }
-                    }
-                };
-                synchronized (toRun) {
-                    getActivity().runOnUiThread(toRun);
-                    try {
-                        toRun.wait();
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
+            // moves are applied here as soon as they are read; the board
+            // display catches up on the render thread from the model's events
+            if (mRestore && mLoaded) {
+                // resumed in the same process: the model is as the last
+                // loop left it, waiting for a move, and may be newer than
+                // the log
+                mRestore = false;
+                mInit = false;
+            } else if (mRestore) {
+                mRestore = false;
+                mLoaded = true;
+                openHistory();
+                GameSnapshot saved = mCheckpoints.readLast();
+                if (saved == null) {
+                    saved = loadLegacyState();
+                    mMigrating = saved != null;
                 }
+                int maxScore = bestScore(getActivity()
+                        .getSharedPreferences("STATE", 0));
+                mInit = saved == null;
+                if (saved == null) {
+                    mGame.setScore(0, maxScore);
+                } else {
+                    mGame.restore(saved, maxScore);
+                }
+            }
+            if (mInit) {
+                mGame.clear();
+                mGame.setRandomPiece();
             }
 
             while (true) {
-                toRun = new Runnable() {
-                    @Override
-                    public void run() {
-                        if (mInit) {
-                            mGame.setRandomPiece();
-                        } else {
-                            mInit = true;
-                        }
-                        if (mGame.gameOver()) {
-                            mGame.endGame();
-                        }
-                        synchronized (this) {
-                            this.notify();
-                        }
-                    }
-                };
-                synchronized (toRun) {
-                    getActivity().runOnUiThread(toRun);
-                    try {
-                        toRun.wait();
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
+                if (mInit) {
+                    mGame.setRandomPiece();
+                } else {
+                    mInit = true;
+                }
+                mCheckpoints.append(mGame.getSnapshot());
+                if (mMigrating) {
+                    mMigrating = false;
+                    forgetLegacyState();
+                }
+                if (mGame.gameOver()) {
+                    recordGame();
                 }
 
                 GetMove:
                 while (true) {
+                    mGame.sync();
                     String key = mListener.readKey();
 
                     switch (key) {
                         case "Up": case "Down": case "Left": case "Right":
+                            // a move on a won board keeps going beyond 2048
+                            mGame.keepPlaying();
                             if (!mGame.gameOver() && mGame.tiltBoard(mGame.keyToSide(key), true)) {
                                 break GetMove;
                             }
                             break;
                         case "New Game":
-                            toRun = new Runnable() {
-                                @Override
-                                public void run() {
-                                    mGame.clear();
-                                    synchronized (this) {
-                                        this.notify();
-                                    }
-                                }
-                            };
-                            synchronized (toRun) {
-                                getActivity().runOnUiThread(toRun);
-                                try {
-                                    toRun.wait();
-                                } catch (InterruptedException e) {
-                                    e.printStackTrace();
-                                }
-                            }
+                            recordGame();
                             doInBackground();
                             return null;
                         default:
                             break;
                     }
                 }
-                toRun = new Runnable() {
-                    @Override
-                    public void run() {
-                        mGame.scoreUpdate();
-                        mGame.displayMoves();
-                        // play sound
-                        mSounds.playShortResource(R.raw.blop);
-                        synchronized (this) {
-                            this.notify();
-                        }
-                    }
-                };
-                synchronized (toRun) {
-                    getActivity().runOnUiThread(toRun);
-                    try {
-                        toRun.wait();
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
             }
         }
     }
 
-    public class GameListener extends OnSwipeListener {
+    public class GameListener extends OnSwipeListener implements GameInput {
         /** Queue of pending key presses. */
         private ArrayBlockingQueue<String> _pendingKeys =
                 new ArrayBlockingQueue<>(5);
 
         /** Response to "New Game" button click. */
         public void newGame() {
-            _pendingKeys.offer("New Game");
+            stopAutoPlay();
+            _pendingKeys.offer(NEW_GAME_KEY);
         }
 
-        /** Return the next key press, waiting for it as necessary. */
+        @Override
+        public void offerKey(String key) {
+            _pendingKeys.offer(key);
+        }
+
+        @Override
+        public int getBacklog() {
+            return _pendingKeys.size();
+        }
+
+        @Override
         public String readKey() {
             try {
                 return _pendingKeys.take();
@@ -353,8 +584,7 @@ public class GameFragment extends Fragment {
             }
         }
 
-        /** Set the current score being displayed to SCORE and the current
-         *  maximum score to MAXSCORE. */
+        @Override
         public void setScore(int score, int maxScore) {
             ScoreView currScoreView = (ScoreView) rootView.findViewById(R.id.current_score);
             ScoreView bestScoreView = (ScoreView) rootView.findViewById(R.id.best_score);
@@ -378,6 +608,7 @@ public class GameFragment extends Fragment {
             } else {
                 return false;
             }
+            stopAutoPlay();
             _pendingKeys.offer(directionKey);
             return true;
         }
@@ -0,0 +1,20 @@
+package com.example.jeffrey.game_2048;
+
+/** The key presses played by a GameMain, and the display of its score: the
+ *  swipes and buttons of the main screen, or one board of a race.
+ *  @author Jeffrey Jacinto */
+interface GameInput {
+    /** Return the next key press, waiting for it as necessary. */
+    String readKey();
+
+    /** Queue KEY as if pressed, unless the queue is full.  May be called
+     *  from any thread. */
+    void offerKey(String key);
+
+    /** Return the number of key presses waiting to be read. */
+    int getBacklog();
+
+    /** Set the current score being displayed to SCORE and the current
+     *  maximum score to MAXSCORE.  Called on the UI thread. */
+    void setScore(int score, int maxScore);
+}
@@ -1,26 +1,37 @@
 package com.example.jeffrey.game_2048;
 
-import com.example.jeffrey.game_2048.boardUI.Game;
-import com.example.jeffrey.game_2048.boardUI.GameBoard;
+import com.example.jeffrey.game_2048.engine.GameSnapshot;
+import com.example.jeffrey.game_2048.engine.MoveEvent;
+import com.example.jeffrey.game_2048.engine.MovePublisher;
+import com.example.jeffrey.game_2048.engine.RuleEngine;
+import com.example.jeffrey.game_2048.engine.Rules;
+import com.example.jeffrey.game_2048.engine.SpawnRandom;
+import com.example.jeffrey.game_2048.engine.Xoroshiro128;
+import com.example.jeffrey.game_2048.store.GameRecord;
 
 import static com.example.jeffrey.game_2048.GameMain.Side.*;
 
 import java.util.Arrays;
 
+/** The model of a game of 2048.  Moves are applied at once, on the thread
+ *  that makes them, and every change is published as MoveEvents, from which
+ *  the display (a BoardRenderer) catches up at its own pace.  So the model
+ *  never waits for animation. */
 public class GameMain {
     /** Size of the board: number of rows and of columns. */
     static final int SIZE = 4;
     /** Number of squares on the board. */
     static final int SQUARES = SIZE * SIZE;
-    /** Winning number. */
-    public static final int WIN = 2048;
-    /** True if game is over */
-    public static boolean hasWon = false;
     /** Symbolic names for the four sides of a board. */
     static enum Side { NORTH, EAST, SOUTH, WEST };
 
-    /** Fragment Game interface. */
-    private GameFragment.GameListener mListener;
+    /** Source of key presses. */
+    private GameInput mListener;
+    /** The rules played, which choose the tiles spawned and the winning
+     *  tile, and the value of that tile.  Tiles merge as in the standard
+     *  game, but without the limit of packed boards on their size. */
+    private final RuleEngine mEngine;
+    private final int mWin;
 
     /** Can be accessed to see if the tile at row ROW and column COL on the
      *  tilted board has already merged once for the current turn. */
@@ -29,107 +40,224 @@ public class GameMain {
     /** Represents the board: mBoard[row][col] is the tile value at row ROW,
      *  column COL, or 0 if there is no tile there. */
     private int[][] mBoard = new int[SIZE][SIZE];
-
-    /** The current input source and output sink. */
-    private Game mGame;
+    /** Scratch boards used by tiltBoard: the board turned toward the side
+     *  tilted, and the board before the tilt. */
+    private final int[][] mTilted = new int[SIZE][SIZE],
+            mBefore = new int[SIZE][SIZE];
+    /** Scratch list used by setRandomPiece: the empty squares, numbered
+     *  R * SIZE + C. */
+    private final int[] mEmpty = new int[SQUARES];
+
+    /** PRNG for generating random tiles. */
+    private SpawnRandom mRandom = Xoroshiro128.seeded();
     /** The score of the current game, and the maximum final score
-     *  over all games in this session. Also, the maximum score for
-     *  the previous game. */
-    private int mScore, mMaxScore, mTempMax;
+     *  over all games in this session. */
+    private int mScore, mMaxScore;
+    /** The maximum score before the current game, which is displayed as
+     *  the best score. */
+    private volatile int mTempMax;
     /** Number of tiles on the board. */
     private int mCount;
+    /** Number of moves made in the current game. */
+    private int mMoves;
+    /** Time the current game started (milliseconds since the epoch). */
+    private long mStartTime;
+    /** True iff the winning tile has been made in the current game. */
+    private boolean mWon;
+    /** True iff play has continued beyond a win. */
+    private boolean mKeepPlaying;
+    /** True iff the current game has been handed out by takeRecord. */
+    private boolean mRecorded;
+    /** Snapshot of the model, replaced after every change. */
+    private volatile GameSnapshot mSnapshot;
+    /** True iff GAME_ENDED has been published for the current game. */
+    private boolean mEnded;
+    /** Publisher of the changes made by each turn. */
+    private final MovePublisher mEvents = new MovePublisher();
+    /** True iff a subscriber has asked for a SYNCED event. */
+    private volatile boolean mSyncRequested;
+    /** The state in which the game last waited for a move, or null. */
+    private volatile GameSnapshot mAwaiting;
+
+    /** A game by the standard rules, reading keys from LISTENER. */
+    GameMain(GameInput listener) {
+        this(listener, RuleEngine.STANDARD);
+    }
 
-    GameMain(GameBoard board, GameFragment.GameListener listener) {
-        mGame = new Game(board, SIZE);
+    /** A game by the rules of ENGINE, which must be on a board of SIZE and
+     *  merge tiles as powers of two, reading keys from LISTENER. */
+    GameMain(GameInput listener, RuleEngine engine) {
+        Rules rules = engine.getRules();
+        if (rules.getSize() != SIZE
+                || rules.getMergeRule() != Rules.POWERS_OF_TWO) {
+            throw new IllegalArgumentException("unsupported rules: " + rules);
+        }
         mListener = listener;
+        mEngine = engine;
+        mWin = engine.valueOf(rules.getWinRank());
+        publish();
     }
 
     /** Reset the score for the current game to 0 and clear the board. */
     void clear() {
-        hasWon = false;
+        mWon = false;
+        mKeepPlaying = false;
         mScore = 0;
         mCount = 0;
-        mGame.clear();
+        mMoves = 0;
+        mStartTime = System.currentTimeMillis();
+        mRecorded = false;
         mTempMax = mMaxScore;
-        mListener.setScore(mScore, mMaxScore);
         for (int r = 0; r < SIZE; r += 1) {
             for (int c = 0; c < SIZE; c += 1) {
                 mBoard[r][c] = 0;
                 mMergeHis[r][c] = false;
             }
         }
+        mEnded = false;
+        publish();
+        mEvents.publish(MoveEvent.cleared());
     }
 
-    /** Return true iff the current game is over (no more moves
-     *  possible). */
-    boolean gameOver() {
-        int[][] board = new int[SIZE][SIZE];
+    /** Return the publisher of the changes made by each turn. */
+    public MovePublisher getEvents() {
+        return mEvents;
+    }
+
+    /** Ask for a SYNCED event to be published at the end of the current
+     *  turn, or at once if between turns.  May be called from any
+     *  thread. */
+    public void requestSync() {
+        mSyncRequested = true;
+    }
 
-        if (hasWon) {
-            return true;
+    /** Publish a SYNCED event if one has been requested.  Called between
+     *  turns, by the thread making moves, just before it waits for the
+     *  next one. */
+    void sync() {
+        if (mSyncRequested) {
+            mSyncRequested = false;
+            mEvents.publish(MoveEvent.synced(mSnapshot));
         }
+        mAwaiting = mSnapshot;
+    }
 
-        // copy board
-        for (int row = 0; row < SIZE; row += 1) {
-            for (int col = 0; col < SIZE; col += 1) {
-                board[row][col] = mBoard[row][col];
-            }
+    /** Return the state in which the game last waited for a move, or null
+     *  if it has not yet waited.  A new object is returned each time the
+     *  game waits after a change.  May be called from any thread. */
+    public GameSnapshot getAwaitingState() {
+        return mAwaiting;
+    }
+
+    /** Return the PRNG from which random tiles are drawn. */
+    public SpawnRandom getRandom() {
+        return mRandom;
+    }
+
+    /** Draw random tiles from RANDOM from now on.  Called by the thread
+     *  making moves, between turns, or before it starts. */
+    public void setRandom(SpawnRandom random) {
+        mRandom = random;
+    }
+
+    /** Replace the published snapshot with one of the current state. */
+    private void publish() {
+        GameSnapshot.Status status = GameSnapshot.Status.PLAYING;
+        if (mWon && !mKeepPlaying) {
+            status = GameSnapshot.Status.WON;
+        } else if (mCount == SQUARES && !canMerge()) {
+            status = GameSnapshot.Status.LOST;
         }
+        mSnapshot = new GameSnapshot(mBoard, mScore, mMoves, mStartTime,
+                status);
+    }
 
-        // if board full, check if it can be reduced by tilting
-        if (mCount == SQUARES) {
-            Side[] sides = {NORTH, EAST, WEST, SOUTH};
-            for (Side side: sides) {
-                if (tiltBoard(side, false)) {
-                    mBoard = board;
-                    return false;
+    /** Return true iff some tile on the board could merge with a
+     *  neighbour.  Unlike the packed boards of Boards, works with tiles of
+     *  any size. */
+    private boolean canMerge() {
+        for (int r = 0; r < SIZE; r += 1) {
+            for (int c = 0; c < SIZE; c += 1) {
+                int value = mBoard[r][c];
+                if (value != 0
+                        && ((r + 1 < SIZE && mBoard[r + 1][c] == value)
+                            || (c + 1 < SIZE && mBoard[r][c + 1] == value))) {
+                    return true;
                 }
             }
-            return true;
         }
-
         return false;
     }
 
-    /** Mark end of game on display. */
-    void endGame() {
-        mGame.endGame();
+    /** Continue a won game, so that play goes on beyond the winning tile
+     *  until no move is left.  Publishes the game, no longer won, as a
+     *  SYNCED event, and lets it be recorded again, with its final score,
+     *  when it ends; that record replaces the record of the win (see
+     *  ScoreHistory.add).
+     *  Return true iff the game had been won and play can go on. */
+    boolean keepPlaying() {
+        if (mSnapshot.getStatus() != GameSnapshot.Status.WON) {
+            return false;
+        }
+        mKeepPlaying = true;
+        mRecorded = false;
+        publish();
+        mEnded = gameOver();
+        mEvents.publish(MoveEvent.synced(mSnapshot));
+        return !mEnded;
     }
 
-    /** Add a tile to a random, empty position, choosing a value (2 or
-     *  4) at random.  Has no effect if the board is currently full. */
+    /** Return the latest snapshot of the model.  Never blocks, and may be
+     *  called from any thread. */
+    public GameSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /** Return true iff the current game is over (no more moves
+     *  possible). */
+    boolean gameOver() {
+        return mSnapshot.getStatus() != GameSnapshot.Status.PLAYING;
+    }
+
+    /** Add a tile to a random, empty position, choosing its value at
+     *  random as the rules say.  Has no effect if the board is currently
+     *  full. */
     void setRandomPiece() {
         if (mCount == SQUARES) {
             return;
         }
 
-        int[][] emptyTiles = new int[SQUARES - mCount][2];
-        int row = 0, tiles = 0, col;
-        for (; tiles < emptyTiles.length && row < SIZE; row += 1) {
-            for (col = 0; tiles < emptyTiles.length && col < SIZE; col += 1) {
+        int empty = SQUARES - mCount, tiles = 0;
+        for (int row = 0; tiles < empty && row < SIZE; row += 1) {
+            for (int col = 0; tiles < empty && col < SIZE; col += 1) {
                 if (mBoard[row][col] == 0) {
-                    emptyTiles[tiles] = new int[] { row, col };
+                    mEmpty[tiles] = row * SIZE + col;
                     tiles += 1;
                 }
             }
         }
 
         mCount += 1;
-        int[] newTile = mGame.getRandomTile(emptyTiles.length);
-        row = emptyTiles[newTile[1]][0];
-        col = emptyTiles[newTile[1]][1];
+        int spawn = mEngine.nextSpawn(empty, mRandom);
+        int row = mEmpty[RuleEngine.spawnIndex(spawn)] / SIZE,
+                col = mEmpty[RuleEngine.spawnIndex(spawn)] % SIZE;
 
-        int value = newTile[0];
-        mGame.addTile(value, row, col);
+        int value = mEngine.valueOf(RuleEngine.spawnRank(spawn));
         mBoard[row][col] = value;
+        publish();
+        mEvents.publish(MoveEvent.spawned(mMoves, row, col, value));
+        if (!mEnded && gameOver()) {
+            mEnded = true;
+            mEvents.publish(MoveEvent.gameEnded(mSnapshot));
+        }
     }
 
     /** Perform the result of tilting the board toward SIDE.
      *  Returns true iff the tilt changes the board. Reforms the
      *  board only if CHANGETILES is true. */
     boolean tiltBoard(Side side, boolean changeTiles) {
-        int[][] board = new int[SIZE][SIZE];
-        int[][] boardCopy = new int[SIZE][SIZE];
+        int oldScore = mScore;
+        int[][] board = mTilted, boardCopy = mBefore;
 
         for (int r = 0; r < SIZE; r += 1) {
             for (int c = 0; c < SIZE; c += 1) {
@@ -156,16 +284,22 @@ public class GameMain {
                         newCol = tiltCol(side, boardRow - 1, c);
                         int v = value, v2 = 2 * value;
                         if (changeTiles) {
-                            mGame.mergeTile(v, v2, row, col, newRow, newCol);
+                            mEvents.publish(MoveEvent.merged(mMoves + 1,
+                                    row, col, newRow, newCol, v2));
                             mCount -= 1;
                             mScore += v2;
+                            if (v2 >= mWin) {
+                                mWon = true;
+                            }
                         }
                         board[boardRow][c] = 0;
                         board[boardRow - 1][c] = v2;
                         mMergeHis[boardRow - 1][c] = true;
                     } else {
-                        if (changeTiles) {
-                            mGame.moveTile(value, row, col, newRow, newCol);
+                        if (changeTiles
+                                && (row != newRow || col != newCol)) {
+                            mEvents.publish(MoveEvent.moved(mMoves + 1,
+                                    row, col, newRow, newCol, value));
                         }
                     }
                 }
@@ -179,7 +313,22 @@ public class GameMain {
                 mMergeHis[r][c] = false;
             }
         }
-        return !Arrays.deepEquals(boardCopy, mBoard);
+        boolean changed = false;
+        for (int r = 0; r < SIZE; r += 1) {
+            changed |= !Arrays.equals(boardCopy[r], mBoard[r]);
+        }
+        if (changed && changeTiles) {
+            mMoves += 1;
+            if (mScore > mMaxScore) {
+                mMaxScore = mScore;
+            }
+            publish();
+            if (mScore != oldScore) {
+                mEvents.publish(MoveEvent.scoreChanged(mMoves, mScore));
+            }
+            mEvents.publish(MoveEvent.turnEnded(mMoves, side.ordinal()));
+        }
+        return changed;
     }
 
     /** Return the row number to which the tile at row R and column C on
@@ -269,16 +418,15 @@ public class GameMain {
 
         while (true) {
             setRandomPiece();
-            if (gameOver()) {
-                endGame();
-            }
 
             GetMove:
             while (true) {
+                sync();
                 String key = mListener.readKey();
 
                 switch (key) {
                     case "Up": case "Down": case "Left": case "Right":
+                        keepPlaying();
                         if (!gameOver() && tiltBoard(keyToSide(key), true)) {
                             break GetMove;
                         }
@@ -292,42 +440,69 @@ public class GameMain {
                         break;
                 }
             }
-            if (mScore > mMaxScore) {
-                mMaxScore = mScore;
-            }
-            mListener.setScore(mScore, mTempMax);
-            mGame.displayMoves();
         }
     }
 
-    /** Display game changes. */
-    public void displayMoves() {
-        mGame.displayMoves();
-    }
-
-    /** Set score values in game, then display. */
+    /** Set the score to SCORE and the best score to MAXSCORE.  They are
+     *  displayed with the next CLEARED or LOADED event. */
     public void setScore(int score, int maxScore) {
         mScore = score;
         mMaxScore = maxScore;
-        scoreUpdate();
-    }
-
-    /** Update score values in game and display. */
-    public void scoreUpdate() {
-        if (mScore > mMaxScore) {
-            mMaxScore = mScore;
-        }
-        mListener.setScore(mScore, mTempMax);
+        mTempMax = maxScore;
+        publish();
     }
 
     /** Set tiles to values stored in TILES, an array containing triples { V,
-     *  R, C } representing tile VALUE, ROW, and COL, respectively. */
+     *  R, C } representing tile VALUE, ROW, and COL, respectively.  Replaces
+     *  the whole board. */
     public void setTiles(int[][] tiles) {
+        for (int r = 0; r < SIZE; r += 1) {
+            for (int c = 0; c < SIZE; c += 1) {
+                mBoard[r][c] = 0;
+                mMergeHis[r][c] = false;
+            }
+        }
         mCount = tiles.length;
         for (int[] tile : tiles) {
             mBoard[tile[1]][tile[2]] = tile[0];
         }
-        mGame.setTiles(tiles);
+    }
+
+    /** Set the number of moves made so far to MOVES, and the time the
+     *  current game started to STARTTIME. */
+    public void setProgress(int moves, long startTime) {
+        mMoves = moves;
+        mStartTime = startTime;
+    }
+
+    /** Replace the current game with the one saved in SNAPSHOT, with
+     *  MAXSCORE as the best score, published as a single LOADED event.  A
+     *  game saved once over was recorded when it ended, and is not handed
+     *  out again by takeRecord. */
+    public void restore(GameSnapshot snapshot, int maxScore) {
+        mWon = snapshot.getStatus() == GameSnapshot.Status.WON
+                || snapshot.getMaxTile() >= mWin;
+        mKeepPlaying = mWon
+                && snapshot.getStatus() != GameSnapshot.Status.WON;
+        mRecorded = snapshot.getStatus() != GameSnapshot.Status.PLAYING;
+        setProgress(snapshot.getMoves(), snapshot.getStartTime());
+        setTiles(snapshot.getTiles());
+        setScore(snapshot.getScore(), maxScore);
+        mEnded = gameOver();
+        mEvents.publish(MoveEvent.loaded(mSnapshot));
+    }
+
+    /** Return a record of the current game, or null if it has no moves or
+     *  has already been returned by a previous call. */
+    public GameRecord takeRecord() {
+        if (mRecorded || mMoves == 0) {
+            return null;
+        }
+        mRecorded = true;
+        GameSnapshot snapshot = mSnapshot;
+        long now = System.currentTimeMillis();
+        return new GameRecord(snapshot.getScore(), snapshot.getMaxTile(),
+                snapshot.getMoves(), now - snapshot.getStartTime(), now);
     }
 
     /** Return MAXSCORE. */
@@ -335,12 +510,10 @@ public class GameMain {
         return mMaxScore;
     }
 
-    /** Return game state as JSON string, containing TILES and SCORE. */
-    public String toJSON() {
-        StringBuilder stateJSON = new StringBuilder("{ tiles: ");
-        stateJSON.append(mGame.toJSON()).append(", score: ");
-        stateJSON.append(mScore).append("}");
-        return stateJSON.toString();
+    /** Return the best score to display: the maximum score before the
+     *  current game.  May be called from any thread. */
+    public int getBestScore() {
+        return mTempMax;
     }
 
 }
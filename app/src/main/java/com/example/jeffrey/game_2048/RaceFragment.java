@@ -0,0 +1,378 @@
+package com.example.jeffrey.game_2048;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.app.Fragment;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.LinearLayout;
+
+import com.example.jeffrey.game_2048.boardUI.GameBoard;
+import com.example.jeffrey.game_2048.boardUI.OnSwipeListener;
+import com.example.jeffrey.game_2048.boardUI.RenderThread;
+import com.example.jeffrey.game_2048.engine.GameSnapshot;
+import com.example.jeffrey.game_2048.engine.MoveEvent;
+import com.example.jeffrey.game_2048.engine.MovePublisher;
+import com.example.jeffrey.game_2048.engine.Xoroshiro128;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+
+/** A race of 2 to 16 games shown side by side: the player against boards
+ *  played by AutoPlayers, or several players sharing the screen, each
+ *  swiping on their own board.
+ *
+ *  Every board has its own GameMain, played on its own thread, and its own
+ *  GameBoard, while all boards share the tile images of their size and are
+ *  animated from a single frame callback on the RenderThread.  All games
+ *  of a race draw their tiles from PRNGs with the same seed.  The race is
+ *  over when every game is lost, and is won by the highest score.
+ *  @author Jeffrey Jacinto */
+public class RaceFragment extends Fragment {
+    /** Least and greatest number of boards. */
+    static final int MIN_BOARDS = 2, MAX_BOARDS = 16;
+    /** Speed of the boards played by AutoPlayers (see
+     *  AutoPlayer.setSpeed). */
+    static final int AI_SPEED = 50;
+    /** Height of the score above each board (dp). */
+    static final int SCORE_HEIGHT = 40;
+    /** Distance a swipe must move, in multiples of the system touch slop. */
+    private static final int SWIPE_SLOP_FACTOR = 3;
+    /** Number of pending key presses kept for each board. */
+    private static final int KEY_QUEUE = 5;
+    private static final String ARG_BOARDS = "boards";
+    private static final String ARG_PLAYERS = "players";
+    /** Key ending a board's game thread. */
+    private static final String QUIT_KEY = "Quit";
+
+    /** The boards of the race. */
+    private Racer[] mRacers;
+
+    /** Return a race of BOARDS boards, the first PLAYERS of which are
+     *  played by swipes and the others by AutoPlayers. */
+    public static RaceFragment newInstance(int boards, int players) {
+        if (boards < MIN_BOARDS || boards > MAX_BOARDS
+                || players < 0 || players > boards) {
+            throw new IllegalArgumentException("bad race size");
+        }
+        RaceFragment fragment = new RaceFragment();
+        Bundle args = new Bundle();
+        args.putInt(ARG_BOARDS, boards);
+        args.putInt(ARG_PLAYERS, players);
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container,
+                             Bundle savedInstanceState) {
+        View view = inflater.inflate(R.layout.fragment_race, container, false);
+        int boards = getArguments().getInt(ARG_BOARDS, MIN_BOARDS),
+                players = getArguments().getInt(ARG_PLAYERS, 1);
+
+        final Handler uiHandler = new Handler(Looper.getMainLooper());
+        Executor uiThread = new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                uiHandler.post(task);
+            }
+        };
+        float slop = SWIPE_SLOP_FACTOR
+                * ViewConfiguration.get(getContext()).getScaledTouchSlop();
+        int scoreHeight = (int) (SCORE_HEIGHT
+                * getResources().getDisplayMetrics().density);
+
+        // lay the boards out in rows of equal columns, as near square as
+        // fits them
+        LinearLayout grid = (LinearLayout) view.findViewById(R.id.race_grid);
+        int columns = (int) Math.ceil(Math.sqrt(boards));
+        LinearLayout row = null;
+        long seed = System.nanoTime();
+        mRacers = new Racer[boards];
+        for (int k = 0; k < boards; k += 1) {
+            if (k % columns == 0) {
+                row = new LinearLayout(getContext());
+                row.setOrientation(LinearLayout.HORIZONTAL);
+                grid.addView(row, new LinearLayout.LayoutParams(
+                        ViewGroup.LayoutParams.MATCH_PARENT,
+                        ViewGroup.LayoutParams.WRAP_CONTENT));
+            }
+            LinearLayout cell = new LinearLayout(getContext());
+            cell.setOrientation(LinearLayout.VERTICAL);
+            ScoreView score = new ScoreView(getContext(), null);
+            cell.addView(score, new LinearLayout.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, scoreHeight));
+            GameBoard board = new GameBoard(getContext(), null);
+            cell.addView(board, new LinearLayout.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT,
+                    ViewGroup.LayoutParams.WRAP_CONTENT));
+            row.addView(cell, new LinearLayout.LayoutParams(0,
+                    ViewGroup.LayoutParams.WRAP_CONTENT, 1));
+
+            boolean human = k < players;
+            String title = human ? (players == 1 ? "YOU" : "P" + (k + 1))
+                    : "AI " + (k - players + 1);
+            mRacers[k] = new Racer(title, score, board, uiThread, seed);
+            if (human) {
+                mRacers[k].setSlop(slop);
+                board.setOnTouchListener(mRacers[k]);
+            } else {
+                mRacers[k].makeAutomatic();
+            }
+        }
+        // fill out the last row, so that its boards are as wide as the rest
+        for (int k = boards; k % columns != 0; k += 1) {
+            row.addView(new View(getContext(), null),
+                    new LinearLayout.LayoutParams(0, 0, 1));
+        }
+
+        Button button = (Button) view.findViewById(R.id.button_new_race);
+        button.setOnClickListener(new View.OnClickListener() {
+            public void onClick(View v) {
+                newRace();
+            }
+        });
+
+        for (Racer racer : mRacers) {
+            racer.start();
+        }
+        return view;
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        for (Racer racer : mRacers) {
+            racer.resumeAutoPlay();
+        }
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        for (Racer racer : mRacers) {
+            racer.pauseAutoPlay();
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        for (Racer racer : mRacers) {
+            racer.quit();
+        }
+    }
+
+    /** Start every board on a new game, with a fresh common seed. */
+    private void newRace() {
+        long seed = System.nanoTime();
+        for (Racer racer : mRacers) {
+            racer.restart(seed);
+        }
+    }
+
+    /** Called on the UI thread when a board's game ends or starts anew:
+     *  if every game is over, mark the board with the highest score as the
+     *  winner. */
+    private void checkFinish() {
+        Racer best = null;
+        for (Racer racer : mRacers) {
+            if (!racer.mFinished) {
+                return;
+            }
+            if (best == null || racer.mScore > best.mScore) {
+                best = racer;
+            }
+        }
+        best.mScoreView.setTitle("WINNER");
+    }
+
+    /** One board of the race: its game, the thread playing it, its display,
+     *  and the queue of its key presses, fed by swipes or by an
+     *  AutoPlayer. */
+    private class Racer extends OnSwipeListener
+            implements GameInput, MovePublisher.Subscriber {
+        /** Name shown over the board. */
+        private final String mTitle;
+        /** The game, its display, and its score display. */
+        private final GameMain mGame;
+        private final BoardRenderer mRenderer;
+        private final ScoreView mScoreView;
+        /** Pending key presses. */
+        private final ArrayBlockingQueue<String> mKeys =
+                new ArrayBlockingQueue<>(KEY_QUEUE);
+        /** Thread playing the game. */
+        private final Thread mThread;
+        /** Player of the game, or null if played by swipes. */
+        private AutoPlayer mAutoPlayer;
+        /** Latest score, and whether the game is over (UI thread only). */
+        private int mScore;
+        private boolean mFinished;
+        /** Seed of the current race, from which the game thread reseeds
+         *  its PRNG on reading each new-game key. */
+        private volatile long mSeed;
+
+        /** A board called TITLE, shown on SCOREVIEW and BOARD, whose events
+         *  are delivered by UITHREAD, with tiles drawn from a PRNG seeded
+         *  with SEED. */
+        Racer(String title, ScoreView scoreView, GameBoard board,
+              Executor uiThread, long seed) {
+            mTitle = title;
+            mScoreView = scoreView;
+            scoreView.setTitle(title);
+            scoreView.setText("0");
+            mGame = new GameMain(this);
+            mSeed = seed;
+            mGame.setRandom(new Xoroshiro128(seed));
+            mRenderer = new BoardRenderer(mGame, board, this, uiThread);
+            mGame.getEvents().subscribe(mRenderer, RenderThread.executor(),
+                    BoardRenderer.CAPACITY);
+            mGame.getEvents().subscribe(this, uiThread,
+                    BoardRenderer.CAPACITY);
+            mThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (mGame.play()) {
+                        continue;
+                    }
+                }
+            }, "race-" + title);
+            mThread.setDaemon(true);
+        }
+
+        /** Have my game played by an AutoPlayer. */
+        void makeAutomatic() {
+            mAutoPlayer = new AutoPlayer(mGame, mRenderer, this);
+            mAutoPlayer.setSpeed(AI_SPEED);
+            mAutoPlayer.setRestarting(false);
+        }
+
+        /** Start playing. */
+        void start() {
+            mThread.start();
+        }
+
+        /** Start my AutoPlayer, if any. */
+        void resumeAutoPlay() {
+            if (mAutoPlayer != null) {
+                mAutoPlayer.start();
+            }
+        }
+
+        /** Stop my AutoPlayer, if any. */
+        void pauseAutoPlay() {
+            if (mAutoPlayer != null) {
+                mAutoPlayer.stop();
+            }
+        }
+
+        /** Start a new game with tiles drawn from a PRNG seeded with
+         *  SEED.  The PRNG is replaced by the game thread when it reads the
+         *  new-game key, between turns, so no spawn of the old game draws
+         *  from it. */
+        void restart(long seed) {
+            mKeys.clear();
+            mSeed = seed;
+            mKeys.offer(GameFragment.NEW_GAME_KEY);
+        }
+
+        /** Stop playing for good. */
+        void quit() {
+            if (mAutoPlayer != null) {
+                mAutoPlayer.shutdown();
+            }
+            mThread.interrupt();
+        }
+
+        @Override
+        public String readKey() {
+            String key;
+            try {
+                key = mKeys.take();
+            } catch (InterruptedException excp) {
+                return QUIT_KEY;
+            }
+            if (key.equals(GameFragment.NEW_GAME_KEY)) {
+                // every new game of the race, however many were asked
+                // for, starts from the latest seed
+                mGame.setRandom(new Xoroshiro128(mSeed));
+            }
+            return key;
+        }
+
+        @Override
+        public void offerKey(String key) {
+            mKeys.offer(key);
+        }
+
+        @Override
+        public int getBacklog() {
+            return mKeys.size();
+        }
+
+        @Override
+        public void setScore(int score, int maxScore) {
+            mScoreView.setText(Integer.toString(score));
+        }
+
+        @Override
+        public boolean onSwipe(Direction direction) {
+            String key;
+            if (direction == Direction.up) {
+                key = "Up";
+            } else if (direction == Direction.down) {
+                key = "Down";
+            } else if (direction == Direction.left) {
+                key = "Left";
+            } else if (direction == Direction.right) {
+                key = "Right";
+            } else {
+                return false;
+            }
+            mKeys.offer(key);
+            return true;
+        }
+
+        @Override
+        public void onSubscribe(MovePublisher.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onEvent(MoveEvent event) {
+            switch (event.getType()) {
+                case CLEARED:
+                    mScore = 0;
+                    mFinished = false;
+                    mScoreView.setTitle(mTitle);
+                    break;
+                case SCORE_CHANGED:
+                    mScore = event.getValue();
+                    break;
+                case GAME_ENDED:
+                case SYNCED:
+                case LOADED:
+                    GameSnapshot snapshot = event.getSnapshot();
+                    mScore = snapshot.getScore();
+                    mFinished = snapshot.getStatus()
+                            == GameSnapshot.Status.LOST;
+                    if (mFinished) {
+                        checkFinish();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void onDropped(int count) {
+            mGame.requestSync();
+        }
+    }
+
+}
@@ -0,0 +1,429 @@
+package com.example.jeffrey.game_2048;
+
+import com.example.jeffrey.game_2048.engine.Boards;
+import com.example.jeffrey.game_2048.engine.GameSnapshot;
+import com.example.jeffrey.game_2048.engine.RuleEngine;
+import com.example.jeffrey.game_2048.engine.SpawnRandom;
+import com.example.jeffrey.game_2048.engine.Symmetry;
+import com.example.jeffrey.game_2048.engine.Xoroshiro128;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Checks fast move engines against the reference rules of
+ *  GameMain.tiltBoard, on boards generated at random.
+ *
+ *  Every board is tilted toward all four sides by GameMain and by the
+ *  engine under test, and the two must agree on the resulting board and
+ *  on the score gained.  Besides uniformly random boards, most boards are
+ *  drawn from two or three neighbouring exponents, so that runs of equal
+ *  tiles, chains such as 2 2 4 8 (which must not merge twice) and full,
+ *  locked boards are common.  A board on which the engine disagrees is
+ *  shrunk, by removing and lowering tiles while it still disagrees, to a
+ *  minimal case that is reported.
+ *
+ *  Tiles of 2^Boards.MAX_EXPONENT are never generated: packed boards
+ *  cannot hold their merge, so Boards deliberately leaves them unmerged.
+ *  @author Jeffrey Jacinto */
+public class TiltFuzzer {
+    /** Largest exponent generated. */
+    static final int LIMIT = Boards.MAX_EXPONENT - 1;
+    /** Boards checked between checks for a mismatch found elsewhere. */
+    private static final int BATCH = 1 << 12;
+
+    /** A move engine under test. */
+    public interface Engine {
+        /** Return the result of tilting BOARD (packed as by Boards) toward
+         *  SIDE. */
+        long move(long board, int side);
+
+        /** Return the score gained by tilting BOARD toward SIDE. */
+        int score(long board, int side);
+    }
+
+    /** The table-driven tilts of Boards. */
+    public static final Engine BOARDS = new Engine() {
+        @Override
+        public long move(long board, int side) {
+            return Boards.move(board, side);
+        }
+
+        @Override
+        public int score(long board, int side) {
+            return Boards.score(board, side);
+        }
+
+        @Override
+        public String toString() {
+            return "boards";
+        }
+    };
+
+    /** Tilts of Boards made on the symmetry-canonical image of a board and
+     *  mapped back, as by searches that cache canonical boards. */
+    public static final Engine CANONICAL = new Engine() {
+        @Override
+        public long move(long board, int side) {
+            int transform = Symmetry.canonicalTransform(board);
+            return Symmetry.apply(Symmetry.inverse(transform),
+                    Boards.move(Symmetry.apply(transform, board),
+                            Symmetry.mapSide(transform, side)));
+        }
+
+        @Override
+        public int score(long board, int side) {
+            int transform = Symmetry.canonicalTransform(board);
+            return Boards.score(Symmetry.apply(transform, board),
+                    Symmetry.mapSide(transform, side));
+        }
+
+        @Override
+        public String toString() {
+            return "canonical";
+        }
+    };
+
+    /** The standard rules compiled by RuleEngine, whose tables are built
+     *  from a description of the rules rather than by Boards. */
+    public static final Engine RULES = new Engine() {
+        @Override
+        public long move(long board, int side) {
+            return RuleEngine.STANDARD.move(board, side);
+        }
+
+        @Override
+        public int score(long board, int side) {
+            return RuleEngine.STANDARD.score(board, side);
+        }
+
+        @Override
+        public String toString() {
+            return "rules";
+        }
+    };
+
+    /** A disagreement between GameMain and an engine. */
+    public static class Mismatch {
+        /** The board tilted and the side toward which it was tilted. */
+        public final long board;
+        public final int side;
+        /** The boards resulting from GameMain's tilt and the engine's. */
+        public final long expected, actual;
+        /** The scores gained by GameMain's tilt and the engine's. */
+        public final int expectedScore, actualScore;
+
+        Mismatch(long board, int side, long expected, long actual,
+                 int expectedScore, int actualScore) {
+            this.board = board;
+            this.side = side;
+            this.expected = expected;
+            this.actual = actual;
+            this.expectedScore = expectedScore;
+            this.actualScore = actualScore;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder();
+            result.append(String.format("tilting %016x %s:%n", board,
+                    GameMain.Side.values()[side]));
+            result.append(String.format("%-24s%-24s%s%n", "board",
+                    "GameMain (" + expectedScore + ")",
+                    "engine (" + actualScore + ")"));
+            for (int r = 0; r < Boards.SIZE; r += 1) {
+                result.append(String.format("%-24s%-24s%s%n", row(board, r),
+                        row(expected, r), row(actual, r)));
+            }
+            return result.toString();
+        }
+
+        /** Return row R of BOARD as tile values. */
+        private static String row(long board, int r) {
+            StringBuilder result = new StringBuilder();
+            for (int c = 0; c < Boards.SIZE; c += 1) {
+                result.append(String.format("%6d",
+                        Boards.valueOf(Boards.get(board, r, c))));
+            }
+            return result.toString();
+        }
+    }
+
+    /** The engine under test. */
+    private final Engine mEngine;
+    /** The reference: a model with no display, used only for its tilts. */
+    private final GameMain mReference = new GameMain(null);
+
+    /** A fuzzer checking ENGINE.  A TiltFuzzer is not synchronized; give
+     *  each thread its own. */
+    public TiltFuzzer(Engine engine) {
+        mEngine = engine;
+    }
+
+    /** Return the disagreement between GameMain and my engine on tilting
+     *  BOARD toward SIDE, or null if they agree. */
+    public Mismatch check(long board, int side) {
+        mReference.setTiles(tiles(board));
+        mReference.setScore(0, 0);
+        mReference.tiltBoard(GameMain.Side.values()[side], true);
+        GameSnapshot result = mReference.getSnapshot();
+        long expected = result.getBoard(), actual = mEngine.move(board, side);
+        int expectedScore = result.getScore(),
+                actualScore = mEngine.score(board, side);
+        if (expected == actual && expectedScore == actualScore) {
+            return null;
+        }
+        return new Mismatch(board, side, expected, actual, expectedScore,
+                actualScore);
+    }
+
+    /** Return the first disagreement on tilting BOARD toward any side, or
+     *  null if there is none. */
+    public Mismatch check(long board) {
+        for (int side = Boards.NORTH; side <= Boards.WEST; side += 1) {
+            Mismatch mismatch = check(board, side);
+            if (mismatch != null) {
+                return mismatch;
+            }
+        }
+        return null;
+    }
+
+    /** Return a minimal disagreement like MISMATCH: one in the same
+     *  direction from which no tile can be removed or lowered, nor all
+     *  tiles lowered together, without the engine agreeing again. */
+    public Mismatch shrink(Mismatch mismatch) {
+        boolean shrunk = true;
+        while (shrunk) {
+            shrunk = false;
+            long lower = lowered(mismatch.board);
+            Mismatch smaller = lower == mismatch.board ? null
+                    : check(lower, mismatch.side);
+            if (smaller != null) {
+                mismatch = smaller;
+                shrunk = true;
+            }
+            for (int i = 0; i < Boards.SQUARES; i += 1) {
+                int shift = 4 * i;
+                long exponent = (mismatch.board >>> shift) & 0xF;
+                if (exponent == 0) {
+                    continue;
+                }
+                long cleared = mismatch.board & ~(0xFL << shift);
+                smaller = check(cleared, mismatch.side);
+                if (smaller == null && exponent > 1) {
+                    smaller = check(cleared | ((exponent - 1) << shift),
+                            mismatch.side);
+                }
+                if (smaller != null) {
+                    mismatch = smaller;
+                    shrunk = true;
+                }
+            }
+        }
+        return mismatch;
+    }
+
+    /** Check BOARDS boards drawn from RANDOM, stopping early if STOP is
+     *  set.  Return the first disagreement found, shrunk, or null. */
+    Mismatch run(SpawnRandom random, long boards, Flag stop) {
+        for (long n = 0; n < boards; n += 1) {
+            if (n % BATCH == 0 && stop.set) {
+                return null;
+            }
+            Mismatch mismatch = check(randomBoard(random));
+            if (mismatch != null) {
+                stop.set = true;
+                return shrink(mismatch);
+            }
+        }
+        return null;
+    }
+
+    /** A flag shared by the threads of a run. */
+    static class Flag {
+        /** True iff the run is to stop. */
+        volatile boolean set;
+    }
+
+    /** Return a board drawn from RANDOM.  A quarter are uniformly random;
+     *  the rest use only two or three neighbouring exponents, with or
+     *  without empty squares. */
+    static long randomBoard(SpawnRandom random) {
+        long bits = random.nextLong(), board = 0;
+        int kind = (int) bits & 3;
+        int base = 2 + (int) ((bits >>> 2) & 0xFFFF) % (LIMIT - 2);
+        bits = random.nextLong();
+        for (int i = 0; i < Boards.SQUARES; i += 1) {
+            int nibble = (int) (bits >>> (4 * i)) & 0xF, exponent;
+            switch (kind) {
+                case 0:
+                    exponent = nibble % (LIMIT + 1);
+                    break;
+                case 1:
+                    exponent = nibble < 6 ? 0 : base + (nibble & 1);
+                    break;
+                case 2:
+                    exponent = nibble < 4 ? 0 : base - 1 + nibble % 3;
+                    break;
+                default:
+                    exponent = base + (nibble & 1);
+                    break;
+            }
+            board |= (long) exponent << (4 * i);
+        }
+        return board;
+    }
+
+    /** Return BOARD with every tile lowered by one, or BOARD itself if it
+     *  has a tile of 2 or no tiles. */
+    static long lowered(long board) {
+        long result = 0;
+        for (int i = 0; i < Boards.SQUARES; i += 1) {
+            long exponent = (board >>> (4 * i)) & 0xF;
+            if (exponent == 1) {
+                return board;
+            }
+            if (exponent != 0) {
+                result |= (exponent - 1) << (4 * i);
+            }
+        }
+        return result;
+    }
+
+    /** Return the tiles of BOARD as triples { VALUE, ROW, COL }, as taken
+     *  by GameMain.setTiles. */
+    private static int[][] tiles(long board) {
+        int[][] tiles = new int[Boards.SQUARES - Boards.countEmpty(board)][];
+        int n = 0;
+        for (int r = 0; r < Boards.SIZE; r += 1) {
+            for (int c = 0; c < Boards.SIZE; c += 1) {
+                int exponent = Boards.get(board, r, c);
+                if (exponent != 0) {
+                    tiles[n] = new int[] { Boards.valueOf(exponent), r, c };
+                    n += 1;
+                }
+            }
+        }
+        return tiles;
+    }
+
+    /** Fuzz as directed by ARGS:
+     *  <pre>
+     *  [--seed N] [--boards N] [--threads N]
+     *  [--engine boards|canonical|rules]
+     *  </pre>
+     *  Checks N boards (by default, 2^24) in every direction, split among
+     *  N threads (by default, one per processor), against each engine (by
+     *  default, all), with boards drawn from a PRNG seeded by N (by
+     *  default, from the clock).  Reports the seed, the rate and the
+     *  minimal disagreement found, if any, on the standard error, and
+     *  exits with status 1 if one was found. */
+    public static void main(String[] args) throws InterruptedException {
+        long seed = System.nanoTime(), boards = 1 << 24;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Engine> engines = new ArrayList<>();
+        for (int i = 0; i < args.length; i += 1) {
+            if (i + 1 == args.length) {
+                usage();
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--boards":
+                    boards = Long.parseLong(value);
+                    break;
+                case "--threads":
+                    threads = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "--engine":
+                    if (value.equals(BOARDS.toString())) {
+                        engines.add(BOARDS);
+                    } else if (value.equals(CANONICAL.toString())) {
+                        engines.add(CANONICAL);
+                    } else if (value.equals(RULES.toString())) {
+                        engines.add(RULES);
+                    } else {
+                        usage();
+                    }
+                    break;
+                default:
+                    usage();
+                    break;
+            }
+            i += 1;
+        }
+        if (engines.isEmpty()) {
+            engines.add(BOARDS);
+            engines.add(CANONICAL);
+            engines.add(RULES);
+        }
+        boolean failed = false;
+        for (Engine engine : engines) {
+            long start = System.nanoTime();
+            Mismatch mismatch = fuzz(engine, seed, boards, threads);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.err.printf("%s: seed %d, %d boards in %.1f s"
+                    + " (%.1f million boards/minute)%n", engine, seed, boards,
+                    seconds, boards * 60 / seconds / 1e6);
+            if (mismatch != null) {
+                System.err.print(mismatch);
+                failed = true;
+            }
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    /** Check ENGINE on BOARDS boards drawn from a PRNG seeded with SEED,
+     *  using THREADS threads.  Return a minimal disagreement, or null if
+     *  none was found. */
+    public static Mismatch fuzz(final Engine engine, long seed, long boards,
+                                int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final Flag stop = new Flag();
+        SpawnRandom seeds = new Xoroshiro128(seed);
+        try {
+            List<Future<Mismatch>> pending = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t += 1) {
+                final SpawnRandom random = seeds.split();
+                final long share = boards / threads
+                        + (t < boards % threads ? 1 : 0);
+                pending.add(pool.submit(new Callable<Mismatch>() {
+                    @Override
+                    public Mismatch call() {
+                        return new TiltFuzzer(engine).run(random, share,
+                                stop);
+                    }
+                }));
+            }
+            Mismatch result = null;
+            for (Future<Mismatch> future : pending) {
+                try {
+                    Mismatch mismatch = future.get();
+                    if (result == null) {
+                        result = mismatch;
+                    }
+                } catch (ExecutionException excp) {
+                    throw new IllegalStateException(excp.getCause());
+                }
+            }
+            return result;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Report correct usage and exit. */
+    private static void usage() {
+        System.err.println("Usage: TiltFuzzer [--seed N] [--boards N]"
+                + " [--threads N] [--engine boards|canonical|rules]");
+        System.exit(1);
+    }
+
+}
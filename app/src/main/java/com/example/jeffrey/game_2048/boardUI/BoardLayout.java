@@ -0,0 +1,127 @@
+package com.example.jeffrey.game_2048.boardUI;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** The sizes of the parts of a board drawn at one width, and the images of
+ *  its empty board and of its tiles, drawn once and then copied onto the
+ *  screen.
+ *
+ *  Layouts are shared: every board of the same width uses the same one, so
+ *  that a race of many equal boards draws each tile image only once.  The
+ *  layouts of the few widths last used are kept.  Layouts are used only on
+ *  the RenderThread.
+ *  @author Jeffrey Jacinto */
+final class BoardLayout {
+    /** Number of rows and of columns. */
+    static final int SIZE = 4;
+    /** Width of the board for which the sizes below were chosen
+     *  (pixels). */
+    static final int INIT_SIZE = 475;
+    /** Bar width separating tiles and length of tile's side at INIT_SIZE
+     *  (pixels). */
+    static final int TILE_SEP_IN = 15, TILE_SIDE_IN = 100,
+            ROW_SIZE_IN = TILE_SEP_IN + TILE_SIDE_IN;
+    /** Sizes of the fonts used for numbering tiles with <= 2 digits, with
+     *  3 digits, and with 4 digits (the largest used for longer numbers,
+     *  which are shrunk to fit), and for overlay text, at INIT_SIZE. */
+    static final int FONT2_SIZE_IN = 48, FONT3_SIZE_IN = 40,
+            FONT4_SIZE_IN = 32, OVERLAY_SIZE_IN = 64;
+    /** Number of widths whose layouts are kept. */
+    static final int CACHED_WIDTHS = 4;
+
+    /** Colors of empty squares and grid lines. */
+    static final int
+            EMPTY_SQUARE_COLOR = Color.rgb(205, 192, 176),
+            BAR_COLOR = Color.rgb(184, 173, 158);
+    static final Typeface TILE_FONT =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+
+    /** Layouts by width, least recently used first. */
+    private static final LinkedHashMap<Integer, BoardLayout> LAYOUTS =
+            new LinkedHashMap<Integer, BoardLayout>(CACHED_WIDTHS, 0.75f,
+                                                    true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<Integer, BoardLayout> eldest) {
+                    return size() > CACHED_WIDTHS;
+                }
+            };
+
+    /** Width of the board, bar width separating tiles, length of tile's
+     *  side, and distance between rows (pixels). */
+    final int boardSide, tileSep, tileSide, rowSize;
+    /** Font sizes for tiles with <= 2, 3 and 4 or more digits, and for
+     *  overlay text. */
+    final int font2Size, font3Size, font4Size, overlayFontSize;
+
+    /** mStyles[E] is the look of tiles of 2^E, or null if not yet made. */
+    private final TileStyle[] mStyles =
+            new TileStyle[TileStyle.MAX_EXPONENT + 1];
+    /** Image of the empty board, or null if not yet made. */
+    private Bitmap mBackdrop;
+
+    /** The layout of a board BOARDSIDE pixels wide. */
+    private BoardLayout(int boardSide) {
+        float multiplier = boardSide / (float) INIT_SIZE;
+        this.boardSide = boardSide;
+        tileSep = (int) (multiplier * TILE_SEP_IN);
+        tileSide = (int) (multiplier * TILE_SIDE_IN);
+        rowSize = (int) (multiplier * ROW_SIZE_IN);
+        font2Size = (int) (multiplier * FONT2_SIZE_IN);
+        font3Size = (int) (multiplier * FONT3_SIZE_IN);
+        font4Size = (int) (multiplier * FONT4_SIZE_IN);
+        overlayFontSize = (int) (multiplier * OVERLAY_SIZE_IN);
+    }
+
+    /** Return the layout of a board BOARDSIDE pixels wide. */
+    static BoardLayout of(int boardSide) {
+        BoardLayout layout = LAYOUTS.get(boardSide);
+        if (layout == null) {
+            layout = new BoardLayout(boardSide);
+            LAYOUTS.put(boardSide, layout);
+        }
+        return layout;
+    }
+
+    /** Return the pixel distance corresponding to A rows or columns,
+     *  which need not be whole. */
+    float toCoord(double a) {
+        return (float) (tileSep + a * rowSize);
+    }
+
+    /** Return the look of tiles of 2^EXPONENT at this size. */
+    TileStyle style(int exponent) {
+        TileStyle style = mStyles[exponent];
+        if (style == null) {
+            style = mStyles[exponent] = new TileStyle(exponent, this);
+        }
+        return style;
+    }
+
+    /** Return the image of the empty board: its squares and grid bars. */
+    Bitmap backdrop() {
+        if (mBackdrop == null) {
+            mBackdrop = Bitmap.createBitmap(boardSide, boardSide,
+                    Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(mBackdrop);
+            Paint paint = new Paint();
+            paint.setStyle(Paint.Style.FILL);
+            paint.setColor(EMPTY_SQUARE_COLOR);
+            canvas.drawRect(0, 0, boardSide, boardSide, paint);
+            paint.setColor(BAR_COLOR);
+            for (int k = 0; k <= boardSide && rowSize > 0; k += rowSize) {
+                canvas.drawRect(0, k, boardSide, k + tileSep, paint);
+                canvas.drawRect(k, 0, k + tileSep, boardSide, paint);
+            }
+        }
+        return mBackdrop;
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.example.jeffrey.game_2048.boardUI;
+
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/** Drives the animations of every board from a single frame callback.
+ *
+ *  A board with moves to animate asks to be ticked; on each display frame
+ *  all such boards advance by the time since their last frame and are
+ *  redrawn in that same frame, and a board drops out once it has caught
+ *  up.  The callback is posted only while some board is animating, so an
+ *  idle screen costs nothing, and however many boards animate, there is
+ *  one callback per frame.  Used only on the RenderThread, whose own
+ *  Choreographer paces it.
+ *  @author Jeffrey Jacinto */
+final class FrameClock implements Choreographer.FrameCallback {
+    /** The clock of the render thread, or null if not yet made. */
+    private static FrameClock sClock;
+
+    /** Boards being animated. */
+    private final ArrayList<GameBoard> mBoards = new ArrayList<>();
+    /** True iff my callback is posted for the next frame. */
+    private boolean mPosted;
+
+    /** Return the clock of the render thread. */
+    static FrameClock get() {
+        if (sClock == null) {
+            sClock = new FrameClock();
+        }
+        return sClock;
+    }
+
+    /** Tick BOARD on every frame until it reports that it is done, starting
+     *  with the next frame. */
+    void start(GameBoard board) {
+        if (!mBoards.contains(board)) {
+            mBoards.add(board);
+        }
+        if (!mPosted) {
+            mPosted = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /** Stop ticking BOARD. */
+    void stop(GameBoard board) {
+        mBoards.remove(board);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mPosted = false;
+        for (int i = mBoards.size() - 1; i >= 0; i -= 1) {
+            if (!mBoards.get(i).onFrame(frameTimeNanos)) {
+                mBoards.remove(i);
+            }
+        }
+        if (!mBoards.isEmpty()) {
+            mPosted = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+}
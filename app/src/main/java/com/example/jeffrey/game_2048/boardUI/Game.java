@@ -1,16 +1,10 @@
 package com.example.jeffrey.game_2048.boardUI;
 
-import com.example.jeffrey.game_2048.GameMain;
-
-import java.util.Random;
-
-/** The input/output and GUI controller for play of a game of 2048.
+/** The input/output and GUI controller for play of a game of 2048.  Used
+ *  only on the RenderThread, like its GameBoard.
  *  @author Jeffrey Jacinto */
 public class Game {
 
-    /** Probability of choosing 2 as random tile (as opposed to 4). */
-    static final double LOW_TILE_PROBABILITY = 0.9;
-
     /** The GUI interface. */
     private GameBoard mDisplay;
     /** Number of rows and of columns. */
@@ -26,15 +20,8 @@ public class Game {
     /** Number of pending moves to be made by displayMoves. */
     private int mMoves;
 
-    /** PRNG for generating random tiles or keys. */
-    private final Random mRandom;
-
-    /** A new ROWS x ROWS Game whose window title is TITLE.  SEED is a seed for
-     *  the PRNG, or 0 to indicate random seeding.  LOG is true iff all keys
-     *  pressed and random tiles returned are to be written to standard output.
-     *  GRAPHIC is true iff the window is to be displayed.  TESTING is true
-     *  iff key pressings and random tiles come from the standard input rather
-     *  than user input.
+    /** A new ROWS x ROWS Game displayed on BOARD.  Seeded, logged and
+     *  scripted play without a display is done by engine.ScriptRunner.
      * @param board
      * @param rows */
     public Game(GameBoard board, int rows) {
@@ -42,7 +29,6 @@ public class Game {
             throw new IllegalArgumentException("rows must be >= 4");
         }
         mRows = rows;
-        mRandom = new Random();
 
         mDisplay = board;
 
@@ -71,14 +57,10 @@ public class Game {
             throw badArg("square at (%d, %d) is already occupied", row, col);
         }
 
-        // add tile to board
+        // add tile to board, shown once earlier moves have been
         mTiles[row][col] = new Tile(value);
         mTiles[row][col].setPosition(row, col);
-
-        // display tile add, then clear new boards
-        mDisplay.displayMoves(mTiles, mTiles2, mTiles);
-        mTiles2 = new Tile[mRows][mRows];
-        mNextTiles = new Tile[mRows][mRows];
+        mDisplay.addTile(mTiles[row][col], row, col);
     }
 
     /** Move a tile whose value is VALUE from (ROW, COL) to (NEWROW, NEWCOL).
@@ -146,14 +128,20 @@ public class Game {
         mTiles2[newRow][newCol] = tile; // mark tile to be merged in display
         // mark new tile to be added to board
         mNextTiles[newRow][newCol] = new Tile(newValue);
-        if (newValue == GameMain.WIN) {
-            GameMain.hasWon = true;
-        }
     }
 
     /** Animate and complete all pending moves. Has no effect (and logs no
      *  output) if there are no moves. */
     public void displayMoves() {
+        displayMoves(0);
+    }
+
+    /** Complete all pending moves, animating them more briefly, or not at
+     *  all, the larger BACKLOG, the number of moves waiting to be made
+     *  after them.  Returns at once, the animation being played by the
+     *  display after any earlier ones.  Has no effect if there are no
+     *  moves. */
+    public void displayMoves(int backlog) {
         if (mMoves == 0) { // no moves
             return;
         }
@@ -165,7 +153,7 @@ public class Game {
                 }
             }
         }
-        mDisplay.displayMoves(mTiles, mTiles2, mNextTiles);
+        mDisplay.displayMoves(mTiles, mTiles2, mNextTiles, backlog);
         mMoves = 0; // reset moves
         mTiles = mNextTiles; // update board
         // reset new boards
@@ -173,36 +161,38 @@ public class Game {
         mNextTiles = new Tile[mRows][mRows];
     }
 
-    /** Indicate end of game. */
-    public void endGame() {
-        mDisplay.markEnd();
+    /** Return the number of turns completed and not yet shown by the
+     *  display.  May be called from any thread. */
+    public int getBacklog() {
+        return mDisplay.getPendingMoves();
     }
 
-
-    /** Generate the specs for a random tile, ignoring current board contents.
-     *  Return a triple { V, R, C }, giving the tile value (either 2 or 4),
-     *  row, and column.
-     * @param emptyTiles
-     * @return  */
-    public int[] getRandomTile(int emptyTiles) {
-        int result[], randomVal = mRandom.nextInt(emptyTiles);
-        int value = 2 * (1 + (int) (mRandom.nextDouble()
-                / LOW_TILE_PROBABILITY));
-        result = new int[] { value, randomVal };
-        return result;
+    /** Indicate end of game, won iff WON. */
+    public void endGame(boolean won) {
+        mDisplay.markEnd(won);
     }
 
-    /** Add tiles to display. Tile is represented by a triple { V, R, C },
-     *  giving the tile value, row, and column. */
+
+    /** Replace all tiles with TILES, each represented by a triple { V, R, C },
+     *  giving the tile value, row, and column.  The tiles are shown in place
+     *  with a single redraw rather than animated one by one.  Any pending
+     *  moves are discarded. */
     public void setTiles(int[][] tiles) {
+        Tile[][] board = new Tile[mRows][mRows];
         for (int[] tile : tiles) {
-            addTile(tile[0], tile[1], tile[2]);
+            int row = tile[1], col = tile[2];
+            if (board[row][col] != null) {
+                throw badArg("square at (%d, %d) is already occupied",
+                        row, col);
+            }
+            board[row][col] = new Tile(tile[0]);
+            board[row][col].setPosition(row, col);
         }
-    }
-
-    /** Return the display state as a JSON string. */
-    public String toJSON() {
-        return mDisplay.toJSON();
+        mTiles = board;
+        mTiles2 = new Tile[mRows][mRows];
+        mNextTiles = new Tile[mRows][mRows];
+        mMoves = 0;
+        mDisplay.showTiles(board);
     }
 
     /** Return an IllegalArgumentException with the message given by
@@ -4,163 +4,357 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Typeface;
+import android.graphics.PixelFormat;
 import android.util.AttributeSet;
 import android.util.Log;
-import android.view.View;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
 
-import com.example.jeffrey.game_2048.GameMain;
-
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Created by Jeffrey on 5/4/2016.
+ *
+ * Moves given to displayMoves are queued and animated one turn after
+ * another by the shared FrameClock, so that any number of boards may
+ * animate at once.  Sizes are kept by each board in its BoardLayout, and
+ * tile images are shared by all boards of the same width.
+ *
+ * The board draws to its own surface on the RenderThread, on which all its
+ * methods but those of View are called, so that its frames never wait on
+ * the UI thread.
+ *
+ * What is drawn is kept apart from the Tiles being animated, in two
+ * pre-allocated Frames: the animator fills the back frame and publishes it
+ * with a single atomic swap, and the drawer reads the front frame without
+ * waiting, so every frame drawn is whole, without locks and without
+ * allocating as the tiles move.
  */
-public class GameBoard extends View {
-    private Paint mGraphics;
-
-    /** Length of side of board */
-    private int mBoardSide;
-
-    /** True iff game over and marks "GAME OVER" to be displayed */
-    private boolean mEnd;
+public class GameBoard extends SurfaceView
+        implements SurfaceHolder.Callback {
+    /** Number of rows/columns, and of squares. */
+    private static final int SIZE = BoardLayout.SIZE, SQUARES = SIZE * SIZE;
 
-    /** List of Tiles being displayed */
-    private final ArrayList<Tile> mTiles = new ArrayList<>();
+    /** Color for overlay text on board. */
+    static final int OVERLAY_COLOR = Color.argb(64, 200, 0, 0);
+    /** Paint for overlay text, shared by all boards. */
+    private static final Paint OVERLAY_PAINT = new Paint();
+    static {
+        OVERLAY_PAINT.setStyle(Paint.Style.FILL);
+        OVERLAY_PAINT.setTypeface(BoardLayout.TILE_FONT);
+        OVERLAY_PAINT.setColor(OVERLAY_COLOR);
+    }
+    /** Hint shown under "YOU WON", and its size relative to the overlay
+     *  text. */
+    static final String KEEP_GOING_HINT = "swipe to keep going";
+    static final float HINT_SCALE = 0.4f;
+
+    /** Nominal wait between animation steps, and the longest step taken
+     *  after a late frame (in milliseconds). */
+    static final int TICK = 16, MAX_TICK = 2 * TICK;
+    /** Number of moves waiting to be made at which moves are shown in their
+     *  final positions rather than animated.  Below it, animations are
+     *  played faster by one normal speed per waiting move, so that the
+     *  display falls behind input by at most one shortened animation. */
+    static final int SKIP_BACKLOG = 2;
+
+    /** The moves of one turn, waiting to be animated.  Square I is at row
+     *  I / SIZE and column I % SIZE. */
+    private static final class Step {
+        /** from[I] is the tile moving to square I, merging[I] the tile
+         *  merging into it, and to[I] the tile there once the turn is
+         *  shown. */
+        final Tile[] from = new Tile[SQUARES], merging = new Tile[SQUARES],
+                to = new Tile[SQUARES];
+        /** Number of moves waiting to be made after this one. */
+        int backlog;
+        /** True iff the game ends with this turn, and was won. */
+        boolean ends, won;
+
+        /** Forget my moves, for reuse. */
+        void clear() {
+            Arrays.fill(from, null);
+            Arrays.fill(merging, null);
+            Arrays.fill(to, null);
+            ends = won = false;
+        }
+    }
 
-    /** Number of rows/columns */
-    private final int mSize = 4;
+    /** What is shown in one frame: the tiles at their positions in it, and
+     *  the end-of-game label. */
+    private static final class Frame {
+        /** Most tiles shown at once: a moving and a merging tile on every
+         *  square. */
+        static final int MAX_TILES = 2 * SQUARES;
+
+        /** exponents[K] is the exponent of the value of the Kth tile, at
+         *  column xs[K] and row ys[K], for K < count. */
+        final int[] exponents = new int[MAX_TILES];
+        final double[] xs = new double[MAX_TILES], ys = new double[MAX_TILES];
+        int count;
+        /** True iff game over and "GAME OVER" is to be displayed. */
+        boolean end;
+        /** True iff the game ended in a win, and "YOU WON" is displayed. */
+        boolean won;
+
+        /** Start a frame showing the end-of-game label of PREVIOUS and no
+         *  tiles. */
+        void begin(Frame previous) {
+            count = 0;
+            end = previous.end;
+            won = previous.won;
+        }
 
-    /** True iff size has not been set */
-    private boolean sizesNotSet;
+        /** Make me a copy of OTHER. */
+        void copy(Frame other) {
+            System.arraycopy(other.exponents, 0, exponents, 0, other.count);
+            System.arraycopy(other.xs, 0, xs, 0, other.count);
+            System.arraycopy(other.ys, 0, ys, 0, other.count);
+            count = other.count;
+            end = other.end;
+            won = other.won;
+        }
 
-    /** Colors of empty squares and grid lines. */
-    static final int
-            EMPTY_SQUARE_COLOR = Color.rgb(205, 192, 176),
-            BAR_COLOR = Color.rgb(184, 173, 158);
+        /** Show TILE where it now is. */
+        void add(Tile tile) {
+            exponents[count] = tile.getExponent();
+            xs[count] = tile.getX();
+            ys[count] = tile.getY();
+            count += 1;
+        }
+    }
 
-    /** Bar width separating tiles and length of tile's side
-     *  (pixels). */
-    static int
-            TILE_SEP = 15,
-            TILE_SIDE = 100,
-            ROW_SIZE = TILE_SEP + TILE_SIDE;
+    /** Sizes for my current width, or null if not yet drawn. */
+    private BoardLayout mLayout;
+
+    /** The frame being filled by the animator, and the frame last
+     *  published, to be drawn.  Both are made and drawn on the
+     *  RenderThread, which is done drawing a frame before it publishes the
+     *  next, so that two suffice; the swap publishes each frame whole to
+     *  the drawer. */
+    private Frame mBack = new Frame();
+    private final AtomicReference<Frame> mFront =
+            new AtomicReference<>(new Frame());
+
+    /** Turns waiting to be shown, the first being animated, and spare
+     *  steps for reuse. */
+    private final ArrayDeque<Step> mSteps = new ArrayDeque<>(),
+            mFree = new ArrayDeque<>();
+    /** Number of turns waiting to be shown, readable from any thread. */
+    private volatile int mPending;
+    /** Time of the last animated frame (nanoseconds), or 0 if none. */
+    private long mLastFrame;
+    /** True iff the board has changed since it was last drawn. */
+    private boolean mDirty;
+
+    /** Held while drawing to the surface, so that it is not destroyed
+     *  mid-frame. */
+    private final Object mSurfaceLock = new Object();
+    /** Width of the surface (pixels), or 0 if there is none.  Guarded by
+     *  mSurfaceLock. */
+    private int mSurfaceSide;
+    /** Redraws the board on the render thread. */
+    private final Runnable mRedraw = new Runnable() {
+        @Override
+        public void run() {
+            requestRender();
+        }
+    };
+    /** Forgets the board's animations on the render thread. */
+    private final Runnable mDetach = new Runnable() {
+        @Override
+        public void run() {
+            FrameClock.get().stop(GameBoard.this);
+            cancelMoves();
+        }
+    };
 
-    static final Typeface TILE_FONT = Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
-    /** Font used for numbering on tiles with <= 2 digits. */
-    static int TILE_FONT2_SIZE = 48;
-    /** Font used for numbering on tiles with 3 digits. */
-    static int TILE_FONT3_SIZE = 40;
-    /** Font used for numbering on tiles with 4 digits. */
-    static int TILE_FONT4_SIZE = 32;
+    public GameBoard(Context context, AttributeSet attrs) {
+        super(context, attrs);
 
-    /** Color for overlay text on board. */
-    static final int OVERLAY_COLOR = Color.argb(64, 200, 0, 0);
+        getHolder().setFormat(PixelFormat.OPAQUE);
+        getHolder().addCallback(this);
 
-    /** Font for overlay text on board. */
-    static int OVERLAY_FONT_SIZE = 64;
+        Log.d("gameboard", "constrcuted board");
+    }
 
-    /** Initial sizes for member data above */
-    static final int INIT_SIZE = 475;
-    static final int TILE_SEP_IN = TILE_SEP, TILE_SIDE_IN = TILE_SIDE, ROW_SIZE_IN = ROW_SIZE;
-    static final int FONT2_SIZE_IN = TILE_FONT2_SIZE, FONT3_SIZE_IN = TILE_FONT3_SIZE;
-    static final int FONT4_SIZE_IN = TILE_FONT4_SIZE, OVERLAY_SIZE_IN = OVERLAY_FONT_SIZE;
+    /** Clear all tiles from the board. */
+    void clear() {
+        cancelMoves();
+        mBack.count = 0;
+        mBack.end = false;
+        publish();
+        requestRender();
+    }
 
-    /** Wait between animation steps (in milliseconds). */
-    static final int TICK = 16;
+    /** Indicate that the "GAME OVER" label, or the "YOU WON" label if WON,
+     *  should be displayed, once the moves waiting to be shown have
+     *  been. */
+    void markEnd(boolean won) {
+        Step last = mSteps.peekLast();
+        if (last != null) {
+            last.ends = true;
+            last.won = won;
+            return;
+        }
+        mBack.copy(mFront.get());
+        mBack.end = true;
+        mBack.won = won;
+        publish();
+        requestRender();
+    }
 
-    public GameBoard(Context context, AttributeSet attrs) {
-        super(context, attrs);
+    /** Show TILES (with TILES[r][c] being the tile at (r, c), or null if
+     *  there is no tile there) in their final positions, replacing all
+     *  tiles displayed and any moves waiting to be shown, with a single
+     *  redraw. */
+    void showTiles(Tile[][] tiles) {
+        cancelMoves();
+        mBack.count = 0;
+        mBack.end = false;
+        for (Tile[] row : tiles) {
+            for (Tile tile : row) {
+                if (tile != null) {
+                    mBack.add(tile);
+                }
+            }
+        }
+        publish();
+        requestRender();
+    }
 
-        mGraphics = new Paint();
-        mGraphics.setStyle(Paint.Style.FILL);
-        mGraphics.setTypeface(TILE_FONT);
-        mEnd = false;
-        sizesNotSet = true;
+    /** Show TILE, new at (ROW, COL), once the moves waiting to be shown
+     *  have been. */
+    void addTile(Tile tile, int row, int col) {
+        Step last = mSteps.peekLast();
+        if (last != null) {
+            last.to[row * SIZE + col] = tile;
+            return;
+        }
+        tile.setPosition(row, col);
+        mBack.copy(mFront.get());
+        mBack.add(tile);
+        publish();
+        requestRender();
+    }
 
-        Log.d("gameboard", "constrcuted board");
+    /** Return the number of turns waiting to be shown.  May be called from
+     *  any thread. */
+    int getPendingMoves() {
+        return mPending;
     }
 
-    /** Calculate sizes based on initial values to maintain ratios. */
-    private void calcSizes() {
-        float multiplier = mBoardSide / (float) INIT_SIZE;
-        TILE_SEP = (int) (multiplier * TILE_SEP_IN);
-        TILE_SIDE = (int) (multiplier * TILE_SIDE_IN);
-        ROW_SIZE = (int) (multiplier * ROW_SIZE_IN);
-        Log.d("Row size", Integer.toString(ROW_SIZE));
-        TILE_FONT2_SIZE = (int) (multiplier * FONT2_SIZE_IN);
-        TILE_FONT3_SIZE = (int) (multiplier * FONT3_SIZE_IN);
-        TILE_FONT4_SIZE = (int) (multiplier * FONT4_SIZE_IN);
-        OVERLAY_FONT_SIZE = (int) (multiplier * OVERLAY_SIZE_IN);
-        sizesNotSet = false;
+    /** Discard all moves waiting to be shown. */
+    private void cancelMoves() {
+        while (!mSteps.isEmpty()) {
+            recycle(mSteps.pollFirst());
+        }
+        mPending = 0;
+        mLastFrame = 0;
     }
 
-    /** Clear all tiles from the board. */
-    synchronized void clear() {
-        mTiles.clear();
-        mEnd = false;
-        invalidate();
+    /** Keep STEP for reuse. */
+    private void recycle(Step step) {
+        step.clear();
+        mFree.addLast(step);
     }
 
-    /** Indicate that "GAME OVER" label should be displayed. */
-    synchronized void markEnd() {
-        mEnd = true;
-        invalidate();
+    /** Make the back frame the one to draw, and take the frame it
+     *  replaces to fill next. */
+    private void publish() {
+        mBack = mFront.getAndSet(mBack);
+        mDirty = true;
     }
 
-    /** Return the pixel distance corresponding to A rows or columns. */
-    static int toCoord(int a) {
-        return TILE_SEP + a * ROW_SIZE;
+    /** Draw the board in the next frame. */
+    private void requestRender() {
+        mDirty = true;
+        FrameClock.get().start(this);
     }
 
-    @Override
-    /** Draw the gameboard. */
-    protected void onDraw(Canvas canvas) {
-        mBoardSide = getWidth();
-        // Init sizes if opening for first time
-        if (sizesNotSet) {
-            calcSizes();
-            for (Tile tile : mTiles) {
-                tile.setCoord();
+    /** Draw the board to its surface, if it has one. */
+    private void render() {
+        mDirty = false;
+        synchronized (mSurfaceLock) {
+            if (mSurfaceSide == 0) {
+                return;
+            }
+            SurfaceHolder holder = getHolder();
+            Canvas canvas = holder.lockCanvas();
+            if (canvas == null) {
+                return;
+            }
+            try {
+                draw(canvas, mSurfaceSide);
+            } finally {
+                holder.unlockCanvasAndPost(canvas);
             }
         }
-        // draw board background
-        mGraphics.setColor(EMPTY_SQUARE_COLOR);
-        canvas.drawRect(0, 0, mBoardSide, mBoardSide, mGraphics);
+    }
 
-        // draw grid bars
-        mGraphics.setColor(BAR_COLOR);
-        for (int k = 0; k <= mBoardSide; k += ROW_SIZE) {
-            canvas.drawRect(0, k, mBoardSide, k + TILE_SEP, mGraphics);
-            canvas.drawRect(k, 0, k + TILE_SEP, mBoardSide, mGraphics);
+    /** Draw the gameboard on CANVAS, SIDE pixels square. */
+    private void draw(Canvas canvas, int side) {
+        if (mLayout == null || mLayout.boardSide != side) {
+            mLayout = BoardLayout.of(side);
         }
+        // draw board background and grid bars
+        canvas.drawBitmap(mLayout.backdrop(), 0, 0, null);
 
         // draw tiles
-        for (Tile tile : mTiles) {
-            tile.draw(canvas);
+        Frame frame = mFront.get();
+        for (int k = 0; k < frame.count; k += 1) {
+            canvas.drawBitmap(mLayout.style(frame.exponents[k]).sprite,
+                    (float) Math.rint(mLayout.toCoord(frame.xs[k])),
+                    (float) Math.rint(mLayout.toCoord(frame.ys[k])), null);
         }
 
         // draw end game text ("GAME OVER" if lost, "YOU WON" if won)
-        if (mEnd) {
-            String endText = "GAME OVER";
-            if (GameMain.hasWon) {
-                endText = "YOU WON";
-                GameMain.hasWon = false;
-            }
+        if (frame.end) {
+            String endText = frame.won ? "YOU WON" : "GAME OVER";
             // get text sizes relative to canvas
-            int textWidth = (int) mGraphics.measureText(endText);
-            mGraphics.setTextSize(OVERLAY_FONT_SIZE);
-            Paint.FontMetrics metrics = mGraphics.getFontMetrics();
+            OVERLAY_PAINT.setTextSize(mLayout.overlayFontSize);
+            int textWidth = (int) OVERLAY_PAINT.measureText(endText);
+            Paint.FontMetrics metrics = OVERLAY_PAINT.getFontMetrics();
+
+            canvas.drawText(endText, (side - textWidth) / 2,
+                    (2 * side + metrics.ascent) / 4, OVERLAY_PAINT);
+            if (frame.won) {
+                OVERLAY_PAINT.setTextSize(HINT_SCALE
+                        * mLayout.overlayFontSize);
+                int hintWidth = (int) OVERLAY_PAINT.measureText(
+                        KEEP_GOING_HINT);
+                canvas.drawText(KEEP_GOING_HINT, (side - hintWidth) / 2,
+                        (2 * side - metrics.ascent) / 4, OVERLAY_PAINT);
+            }
+        }
+    }
 
-            mGraphics.setColor(OVERLAY_COLOR);
-            canvas.drawText(endText, (mBoardSide - textWidth) / 2,
-                    (2 * mBoardSide + metrics.ascent) / 4, mGraphics);
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width,
+                               int height) {
+        synchronized (mSurfaceLock) {
+            mSurfaceSide = Math.min(width, height);
+        }
+        RenderThread.post(mRedraw);
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        synchronized (mSurfaceLock) {
+            mSurfaceSide = 0;
         }
     }
 
     @Override
-    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-        super.onSizeChanged(mBoardSide, mBoardSide, oldw, oldh);
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        RenderThread.post(mDetach);
     }
 
     @Override
@@ -177,71 +371,108 @@ public class GameBoard extends View {
      *  being the tile at (r, c), or null if there is no tile
      *  there), TILES2 represents the state of tiles that are to be
      *  merged into existing tiles, and NEXTTILES represents the desired
-     *  resulting state, animate the depicted moves and update mTiles
-     *  accordingly. */
-    public synchronized void displayMoves(Tile[][] tiles,
-                                          Tile[][] tiles2,
-                                          Tile[][] nextTiles) {
-        boolean changing;
-        do {
-            mTiles.clear();
-            changing = false;
-            for (int r = 0; r < mSize; r += 1) {
-                for (int c = 0; c < mSize; c += 1) {
-                    boolean change;
-                    change = false;
-                    Tile tile = tiles[r][c];
-                    if (tile == null) {
-                        continue;
-                    }
-                    Tile tile2 = tiles2[r][c];
-                    double xDest = toCoord(c), yDest = toCoord(r);
-                    if (tile.tick(xDest, yDest)) {
-                        change = true;
-                        mTiles.add(tile);
-                    }
-                    if (tile2 != null) {
-                        if (tile2.tick(xDest, yDest)) {
-                            change = true;
-                        }
-                    }
-                    if (change) {
-                        mTiles.add(tile);
-                        if (tile2 != null) {
-                            mTiles.add(tile2);
-                        }
-                    }
-                    if (!change) {
-                        Tile next = nextTiles[r][c];
-                        next.setPosition(r, c);
-                        mTiles.add(next);
-                        change = next.tick(xDest, yDest);
-                    }
-                    changing |= change;
-                }
+     *  resulting state, queue the depicted moves to be animated after any
+     *  already waiting, and return at once.  BACKLOG is the number of
+     *  moves waiting to be made after these: the animation is sped up for
+     *  each, and skipped altogether if there are at least SKIP_BACKLOG,
+     *  counting those already queued here. */
+    public void displayMoves(Tile[][] tiles, Tile[][] tiles2,
+                             Tile[][] nextTiles, int backlog) {
+        Step step = mFree.isEmpty() ? new Step() : mFree.pollFirst();
+        for (int r = 0; r < SIZE; r += 1) {
+            for (int c = 0; c < SIZE; c += 1) {
+                step.from[r * SIZE + c] = tiles[r][c];
+                step.merging[r * SIZE + c] = tiles2[r][c];
+                step.to[r * SIZE + c] = nextTiles[r][c];
             }
-            invalidate();
-            try {
-                wait(TICK);
-            } catch (InterruptedException excp) {
-                assert false : "Internal error: unexpected interrupt";
+        }
+        step.backlog = backlog;
+        mSteps.addLast(step);
+        mPending = mSteps.size();
+        FrameClock.get().start(this);
+    }
+
+    /** Advance the animation of the moves waiting to be shown to the
+     *  frame at FRAMETIMENANOS, and redraw if anything has changed.
+     *  Return true iff there is more to animate.  Called by the
+     *  FrameClock. */
+    boolean onFrame(long frameTimeNanos) {
+        double millis = mLastFrame == 0 ? TICK
+                : Math.min(MAX_TICK, (frameTimeNanos - mLastFrame) / 1e6);
+        mLastFrame = frameTimeNanos;
+        Step step;
+        while ((step = mSteps.peekFirst()) != null) {
+            int backlog = Math.max(step.backlog, mSteps.size() - 1);
+            double delta = Tile.MOVE_SPEED * (1 + backlog) * millis;
+            if (backlog < SKIP_BACKLOG && animate(step, delta)) {
+                break;
             }
-        } while (changing);
+            finish(step);
+        }
+        if (mDirty) {
+            render();
+        }
+        if (mSteps.isEmpty()) {
+            mLastFrame = 0;
+            return false;
+        }
+        return true;
     }
 
-    /** Return state as JSON string, contain array of tile info stored in mTiles
-     */
-    public String toJSON() {
-        StringBuilder stateJSON = new StringBuilder("[");
-        if (mTiles.size() > 0) {
-            for (Tile tile : mTiles) {
-                stateJSON.append(tile.toJSON());
-                stateJSON.append(",");
+    /** Move the tiles of STEP by DELTA rows or columns toward their
+     *  squares, showing each square's final tile once its tiles have
+     *  arrived, and publish the frame if any tile moved.  Return true iff
+     *  any tile moved. */
+    private boolean animate(Step step, double delta) {
+        boolean changing = false;
+        mBack.begin(mFront.get());
+        for (int i = 0; i < SQUARES; i += 1) {
+            Tile tile = step.from[i];
+            if (tile == null) {
+                continue;
+            }
+            Tile tile2 = step.merging[i];
+            int r = i / SIZE, c = i % SIZE;
+            boolean change = tile.tick(c, r, delta);
+            if (tile2 != null) {
+                change |= tile2.tick(c, r, delta);
             }
-            stateJSON.setLength(stateJSON.length() - 1);
+            if (change) {
+                mBack.add(tile);
+                if (tile2 != null) {
+                    mBack.add(tile2);
+                }
+            } else {
+                Tile next = step.to[i];
+                next.setPosition(r, c);
+                mBack.add(next);
+            }
+            changing |= change;
+        }
+        if (changing) {
+            publish();
+        }
+        return changing;
+    }
+
+    /** Show STEP in its final state, and remove it from the queue. */
+    private void finish(Step step) {
+        mBack.begin(mFront.get());
+        for (int i = 0; i < SQUARES; i += 1) {
+            Tile next = step.to[i];
+            if (next != null) {
+                next.setPosition(i / SIZE, i % SIZE);
+                mBack.add(next);
+            }
+        }
+        if (step.ends) {
+            mBack.end = true;
+            mBack.won = step.won;
         }
-        stateJSON.append("]");
-        return stateJSON.toString();
+        publish();
+        mSteps.pollFirst();
+        recycle(step);
+        mPending = mSteps.size();
     }
 
 }
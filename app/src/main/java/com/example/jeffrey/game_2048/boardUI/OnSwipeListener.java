@@ -1,41 +1,87 @@
 package com.example.jeffrey.game_2048.boardUI;
 
-import android.view.GestureDetector;
 import android.view.MotionEvent;
+import android.view.View;
+
+/** Recognizes swipes from raw touch events, committing each swipe as soon
+ *  as the finger has clearly moved, rather than waiting for it to lift.
+ *
+ *  A gesture commits once the finger is at least the slop away from where
+ *  it went down and its path lies well within one of the four quadrants:
+ *  the larger component must be at least AXIS_RATIO times the smaller.
+ *  Paths near a diagonal wait for more movement, so that the direction
+ *  does not flip between neighbouring quadrants.  A gesture that never
+ *  commits while moving commits when the finger lifts, if it has moved at
+ *  least the slop.  Each gesture fires onSwipe at most once, and gestures
+ *  with a second finger are ignored.
+ *
+ *  Direction and getDirection are from a class found on Stack Overflow
+ *  @author fernandohur. */
+public class OnSwipeListener implements View.OnTouchListener {
+    /** Least ratio of the larger to the smaller component of a swipe that
+     *  commits while moving. */
+    public static final float AXIS_RATIO = 1.5f;
+
+    /** Least distance (pixels) that a swipe must move. */
+    private float mSlop = 48;
+    /** Where the current gesture went down. */
+    private float mDownX, mDownY;
+    /** True iff the current gesture is still to fire. */
+    private boolean mTracking;
+
+    /** Set the least distance (pixels) that a swipe must move to SLOP. */
+    public void setSlop(float slop) {
+        if (slop <= 0) {
+            throw new IllegalArgumentException("slop must be positive");
+        }
+        mSlop = slop;
+    }
 
-/** Class found on Stack Overflow @author fernandohur. */
-public class OnSwipeListener extends GestureDetector.SimpleOnGestureListener{
+    /** Return the least distance (pixels) that a swipe must move. */
+    public float getSlop() {
+        return mSlop;
+    }
 
     @Override
-    public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY) {
-
-        // Grab two events located on the plane at e1=(x1, y1) and e2=(x2, y2)
-        // Let e1 be the initial event
-        // e2 can be located at 4 different positions, consider the following diagram
-        // (Assume that lines are separated by 90 degrees.)
-        //
-        //
-        //         \ A  /
-        //          \  /
-        //       D   e1   B
-        //          /  \
-        //         / C  \
-        //
-        // So if (x2,y2) falls in region:
-        //  A => it's an UP swipe
-        //  B => it's a RIGHT swipe
-        //  C => it's a DOWN swipe
-        //  D => it's a LEFT swipe
-        //
-
-        float x1 = e1.getX();
-        float y1 = e1.getY();
-
-        float x2 = e2.getX();
-        float y2 = e2.getY();
-
-        Direction direction = getDirection(x1,y1,x2,y2);
-        return onSwipe(direction);
+    public boolean onTouch(View view, MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mDownX = event.getX();
+                mDownY = event.getY();
+                mTracking = true;
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                if (mTracking) {
+                    track(event.getX(), event.getY(), false);
+                }
+                return true;
+            case MotionEvent.ACTION_UP:
+                if (mTracking) {
+                    track(event.getX(), event.getY(), true);
+                }
+                mTracking = false;
+                return true;
+            case MotionEvent.ACTION_POINTER_DOWN:
+            case MotionEvent.ACTION_CANCEL:
+                mTracking = false;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** Fire the current gesture if the finger, now at (X, Y), has moved
+     *  far enough, and clearly enough along one axis unless LIFTED. */
+    private void track(float x, float y, boolean lifted) {
+        float dx = Math.abs(x - mDownX), dy = Math.abs(y - mDownY);
+        if (dx * dx + dy * dy < mSlop * mSlop) {
+            return;
+        }
+        if (!lifted && dx < AXIS_RATIO * dy && dy < AXIS_RATIO * dx) {
+            return;
+        }
+        mTracking = false;
+        onSwipe(getDirection(mDownX, mDownY, x, y));
     }
 
     public boolean onSwipe(Direction direction){
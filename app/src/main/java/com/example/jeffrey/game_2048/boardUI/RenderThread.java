@@ -0,0 +1,56 @@
+package com.example.jeffrey.game_2048.boardUI;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import java.util.concurrent.Executor;
+
+/** The thread on which every GameBoard animates and draws.
+ *
+ *  Boards draw to their own surfaces from this thread, paced by its own
+ *  Choreographer, so that layout, score updates and sound on the UI
+ *  thread never hold up a frame of tile animation, nor it them.  A Game
+ *  and its GameBoard are used only on this thread: their display events
+ *  are delivered through executor().  The thread is started when first
+ *  needed and runs for the life of the process.
+ *  @author Jeffrey Jacinto */
+public final class RenderThread {
+    /** The thread, or null if not yet started. */
+    private static HandlerThread sThread;
+    /** Handler posting to the thread, and an Executor doing the same. */
+    private static Handler sHandler;
+    private static Executor sExecutor;
+
+    /** Not instantiable. */
+    private RenderThread() {
+    }
+
+    /** Start the thread, if not already started. */
+    private static synchronized void start() {
+        if (sThread == null) {
+            sThread = new HandlerThread("board-render",
+                    Process.THREAD_PRIORITY_DISPLAY);
+            sThread.start();
+            sHandler = new Handler(sThread.getLooper());
+            sExecutor = new Executor() {
+                @Override
+                public void execute(Runnable task) {
+                    sHandler.post(task);
+                }
+            };
+        }
+    }
+
+    /** Return an Executor running tasks in order on the render thread. */
+    public static synchronized Executor executor() {
+        start();
+        return sExecutor;
+    }
+
+    /** Run TASK on the render thread, after any tasks already posted. */
+    static void post(Runnable task) {
+        executor().execute(task);
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.example.jeffrey.game_2048.boardUI;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+/** The look of the tiles of one value at one size: their label and
+ *  colors, drawn once into an image.  Each is made by a BoardLayout the
+ *  first time a tile of its value is drawn at its size, and shared by all
+ *  boards of that size, so that drawing a tile allocates, measures and
+ *  lays out nothing, however large its value.
+ *
+ *  Tiles up to 2048 have the classic colors.  Larger tiles, which appear
+ *  when play continues after a win, get dark backgrounds of hues spread
+ *  around the color wheel, and labels shrunk to fit.
+ *  @author Jeffrey Jacinto */
+final class TileStyle {
+    /** Largest exponent of a tile value. */
+    static final int MAX_EXPONENT = 30;
+
+    /** Text and background colors of tiles 2^1 to 2^11. */
+    private static final int[][] CLASSIC_COLORS = {
+            { 0xff776e65, 0xffeee4da },
+            { 0xff776e65, 0xffede0c8 },
+            { 0xfff9f6f2, 0xfff2b179 },
+            { 0xfff9f6f2, 0xfff59563 },
+            { 0xfff9f6f2, 0xfff67c5f },
+            { 0xfff9f6f2, 0xfff65e3b },
+            { 0xfff9f6f2, 0xffedcf72 },
+            { 0xfff9f6f2, 0xffedcc61 },
+            { 0xfff9f6f2, 0xffedc850 },
+            { 0xfff9f6f2, 0xffedc53f },
+            { 0xfff9f6f2, 0xffedc22e },
+    };
+    /** Text color of generated styles. */
+    private static final int LIGHT_TEXT = 0xfff9f6f2;
+    /** Hue step between generated styles (degrees), and their saturation
+     *  and brightness. */
+    private static final float HUE_STEP = 47, SATURATION = 0.55f,
+            BRIGHTNESS = 0.35f;
+    /** Share of a tile's side that a label may span. */
+    private static final float LABEL_WIDTH = 0.85f;
+
+    /** Label of the tiles. */
+    final String label;
+    /** Image of a tile, LAYOUT.tileSide pixels square. */
+    final Bitmap sprite;
+
+    /** The style of tiles of 2^EXPONENT, laid out by LAYOUT. */
+    TileStyle(int exponent, BoardLayout layout) {
+        label = Integer.toString(1 << exponent);
+        Paint background = new Paint(), text = new Paint();
+        background.setStyle(Paint.Style.FILL);
+        text.setTypeface(BoardLayout.TILE_FONT);
+        if (exponent <= CLASSIC_COLORS.length) {
+            text.setColor(CLASSIC_COLORS[exponent - 1][0]);
+            background.setColor(CLASSIC_COLORS[exponent - 1][1]);
+        } else {
+            text.setColor(LIGHT_TEXT);
+            float hue = ((exponent - CLASSIC_COLORS.length - 1) * HUE_STEP)
+                    % 360;
+            background.setColor(Color.HSVToColor(
+                    new float[] { hue, SATURATION, BRIGHTNESS }));
+        }
+
+        int side = Math.max(1, layout.tileSide);
+        if (label.length() <= 2) {
+            text.setTextSize(layout.font2Size);
+        } else if (label.length() == 3) {
+            text.setTextSize(layout.font3Size);
+        } else {
+            text.setTextSize(layout.font4Size);
+        }
+        float width = text.measureText(label);
+        if (width > LABEL_WIDTH * side) {
+            text.setTextSize(layout.font4Size * LABEL_WIDTH * side / width);
+            width = text.measureText(label);
+        }
+
+        sprite = Bitmap.createBitmap(side, side, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(sprite);
+        canvas.drawRect(0, 0, side, side, background);
+        canvas.drawText(label, (side - width) / 2,
+                (2 * side - text.getFontMetrics().ascent) / 4, text);
+    }
+
+}
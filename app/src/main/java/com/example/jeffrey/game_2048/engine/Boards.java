@@ -0,0 +1,345 @@
+package com.example.jeffrey.game_2048.engine;
+
+/** Table-driven operations on boards packed into a single long.
+ *
+ *  The square at row R and column C occupies the four bits starting at
+ *  bit 4 * (4 * R + C) and holds the exponent E of its tile (the tile's
+ *  value is 2^E), or 0 if the square is empty.  Tilts follow the rules of
+ *  GameMain.tiltBoard: tiles slide toward the chosen side, the tiles
+ *  nearest that side merge first, and no tile merges twice in one turn.
+ *
+ *  Besides single boards, moveAll tilts whole arrays of boards at once, a
+ *  block at a time in separate passes, each a simple loop over primitive
+ *  arrays, so that the JIT can unroll them and vectorize the transposes.
+ *  @author Jeffrey Jacinto */
+public final class Boards {
+    /** Size of the board: number of rows and of columns. */
+    public static final int SIZE = 4;
+    /** Number of squares on the board. */
+    public static final int SQUARES = SIZE * SIZE;
+    /** Largest exponent a square can hold. Tiles of this exponent do not
+     *  merge, since their sum would not fit in a square. */
+    public static final int MAX_EXPONENT = 15;
+
+    /** Sides, numbered as the ordinals of GameMain.Side. */
+    public static final int NORTH = 0, EAST = 1, SOUTH = 2, WEST = 3;
+
+    /** Mask of a single row. */
+    static final long ROW_MASK = 0xFFFFL;
+    /** Number of boards moveAll tilts in each pass, small enough that a
+     *  block stays in the L1 cache between passes. */
+    static final int BLOCK = 512;
+
+    /** ROW_LEFT[ROW] is ROW tilted toward column 0, and ROW_RIGHT[ROW] is
+     *  ROW tilted toward column SIZE - 1. */
+    private static final char[] ROW_LEFT = new char[1 << 16],
+            ROW_RIGHT = new char[1 << 16];
+    /** ROW_SCORE_LEFT[ROW] is the score gained by tilting ROW toward
+     *  column 0, and ROW_SCORE_RIGHT[ROW] that gained by tilting it toward
+     *  column SIZE - 1. */
+    private static final int[] ROW_SCORE_LEFT = new int[1 << 16],
+            ROW_SCORE_RIGHT = new int[1 << 16];
+
+    static {
+        int[] line = new int[SIZE];
+        for (int row = 0; row < (1 << 16); row += 1) {
+            for (int c = 0; c < SIZE; c += 1) {
+                line[c] = (row >>> (4 * c)) & 0xF;
+            }
+            int score = 0, last = 0, dest = 0;
+            int[] result = new int[SIZE];
+            for (int c = 0; c < SIZE; c += 1) {
+                int e = line[c];
+                if (e == 0) {
+                    continue;
+                }
+                if (last != 0 && last == e && e < MAX_EXPONENT) {
+                    result[dest - 1] = e + 1;
+                    score += 1 << (e + 1);
+                    last = 0;
+                } else {
+                    result[dest] = e;
+                    dest += 1;
+                    last = e;
+                }
+            }
+            int left = 0;
+            for (int c = 0; c < SIZE; c += 1) {
+                left |= result[c] << (4 * c);
+            }
+            ROW_LEFT[row] = (char) left;
+            ROW_SCORE_LEFT[row] = score;
+            ROW_RIGHT[reverseRow(row)] = (char) reverseRow(left);
+            ROW_SCORE_RIGHT[reverseRow(row)] = score;
+        }
+    }
+
+    /** Not instantiable. */
+    private Boards() {
+    }
+
+    /** Return ROW (a single packed row) with its squares in reverse order. */
+    static int reverseRow(int row) {
+        return ((row >>> 12) & 0xF) | ((row >>> 4) & 0xF0)
+                | ((row << 4) & 0xF00) | ((row << 12) & 0xF000);
+    }
+
+    /** Return BOARD reflected about its main diagonal, so that the
+     *  square at (R, C) moves to (C, R). */
+    public static long transpose(long board) {
+        long a1 = board & 0xF0F00F0FF0F00F0FL;
+        long a2 = board & 0x0000F0F00000F0F0L;
+        long a3 = board & 0x0F0F00000F0F0000L;
+        long a = a1 | (a2 << 12) | (a3 >>> 12);
+        long b1 = a & 0xFF00FF0000FF00FFL;
+        long b2 = a & 0x00FF00FF00000000L;
+        long b3 = a & 0x00000000FF00FF00L;
+        return b1 | (b2 >>> 24) | (b3 << 24);
+    }
+
+    /** Return BOARD with every row looked up in TABLE. */
+    private static long tiltRows(long board, char[] table) {
+        return (long) table[(int) (board & ROW_MASK)]
+                | ((long) table[(int) ((board >>> 16) & ROW_MASK)] << 16)
+                | ((long) table[(int) ((board >>> 32) & ROW_MASK)] << 32)
+                | ((long) table[(int) (board >>> 48)] << 48);
+    }
+
+    /** Return the sum of the scores of every row of BOARD looked up in
+     *  TABLE. */
+    private static int scoreRows(long board, int[] table) {
+        return table[(int) (board & ROW_MASK)]
+                + table[(int) ((board >>> 16) & ROW_MASK)]
+                + table[(int) ((board >>> 32) & ROW_MASK)]
+                + table[(int) (board >>> 48)];
+    }
+
+    /** Return the result of tilting BOARD toward SIDE. */
+    public static long move(long board, int side) {
+        switch (side) {
+            case NORTH:
+                return transpose(tiltRows(transpose(board), ROW_LEFT));
+            case EAST:
+                return tiltRows(board, ROW_RIGHT);
+            case SOUTH:
+                return transpose(tiltRows(transpose(board), ROW_RIGHT));
+            case WEST:
+                return tiltRows(board, ROW_LEFT);
+            default:
+                throw new IllegalArgumentException("Unknown direction");
+        }
+    }
+
+    /** Return the score gained by tilting BOARD toward SIDE. */
+    public static int score(long board, int side) {
+        switch (side) {
+            case NORTH:
+                return scoreRows(transpose(board), ROW_SCORE_LEFT);
+            case EAST:
+                return scoreRows(board, ROW_SCORE_RIGHT);
+            case SOUTH:
+                return scoreRows(transpose(board), ROW_SCORE_RIGHT);
+            case WEST:
+                return scoreRows(board, ROW_SCORE_LEFT);
+            default:
+                throw new IllegalArgumentException("Unknown direction");
+        }
+    }
+
+    /** Tilt the COUNT boards of BOARDS starting at FROM toward SIDE,
+     *  storing the board resulting from BOARDS[FROM + K] in RESULTS[K], the
+     *  score gained in SCORES[K], unless SCORES is null, and whether the
+     *  board changed in CHANGED[K], unless CHANGED is null.  RESULTS may be
+     *  BOARDS itself only with FROM 0, to tilt in place, but then CHANGED
+     *  is of no use.  Allocates nothing. */
+    public static void moveAll(int side, long[] boards, int from, int count,
+                               long[] results, int[] scores,
+                               boolean[] changed) {
+        if (side < NORTH || side > WEST) {
+            throw new IllegalArgumentException("Unknown direction");
+        }
+        if (results == boards && from != 0) {
+            throw new IllegalArgumentException("results overlap boards");
+        }
+        boolean columns = side == NORTH || side == SOUTH;
+        char[] table = side == NORTH || side == WEST ? ROW_LEFT : ROW_RIGHT;
+        int[] scoreTable = table == ROW_LEFT ? ROW_SCORE_LEFT
+                : ROW_SCORE_RIGHT;
+        for (int start = 0; start < count; start += BLOCK) {
+            int end = Math.min(count, start + BLOCK);
+            if (columns) {
+                for (int k = start; k < end; k += 1) {
+                    results[k] = transpose(boards[from + k]);
+                }
+            } else if (results != boards) {
+                System.arraycopy(boards, from + start, results, start,
+                                 end - start);
+            }
+            if (scores != null) {
+                for (int k = start; k < end; k += 1) {
+                    scores[k] = scoreRows(results[k], scoreTable);
+                }
+            }
+            for (int k = start; k < end; k += 1) {
+                results[k] = tiltRows(results[k], table);
+            }
+            if (columns) {
+                for (int k = start; k < end; k += 1) {
+                    results[k] = transpose(results[k]);
+                }
+            }
+            if (changed != null) {
+                for (int k = start; k < end; k += 1) {
+                    changed[k] = results[k] != boards[from + k];
+                }
+            }
+        }
+    }
+
+    /** Return true iff some tilt changes BOARD. */
+    public static boolean canMove(long board) {
+        for (int side = NORTH; side <= WEST; side += 1) {
+            if (move(board, side) != board) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the exponent at ROW and COL of BOARD, or 0 if empty. */
+    public static int get(long board, int row, int col) {
+        return (int) (board >>> (4 * (SIZE * row + col))) & 0xF;
+    }
+
+    /** Return BOARD with the square at ROW and COL set to EXPONENT. */
+    public static long set(long board, int row, int col, int exponent) {
+        int shift = 4 * (SIZE * row + col);
+        return (board & ~(0xFL << shift)) | ((long) exponent << shift);
+    }
+
+    /** Return the number of empty squares on BOARD. */
+    public static int countEmpty(long board) {
+        int empty = 0;
+        for (int i = 0; i < SQUARES; i += 1) {
+            if (((board >>> (4 * i)) & 0xF) == 0) {
+                empty += 1;
+            }
+        }
+        return empty;
+    }
+
+    /** Return the largest exponent on BOARD. */
+    public static int maxExponent(long board) {
+        int max = 0;
+        for (int i = 0; i < SQUARES; i += 1) {
+            max = Math.max(max, (int) (board >>> (4 * i)) & 0xF);
+        }
+        return max;
+    }
+
+    /** Tilt toward SIDE the board whose exponents, row by row, are
+     *  EXPONENTS, in place, under the rules of move, except that tiles of
+     *  any size merge.  For boards too large to pack, made by play beyond
+     *  2^MAX_EXPONENT.  Return the score gained, or -1 if the tilt changes
+     *  nothing. */
+    public static int tiltWide(byte[] exponents, int side) {
+        int score = 0;
+        boolean changed = false;
+        for (int line = 0; line < SIZE; line += 1) {
+            int last = -1, dest = 0;
+            for (int k = 0; k < SIZE; k += 1) {
+                int from = wideSquare(side, line, k);
+                int e = exponents[from];
+                if (e == 0) {
+                    continue;
+                }
+                exponents[from] = 0;
+                if (last >= 0 && exponents[last] == e) {
+                    exponents[last] = (byte) (e + 1);
+                    score += 1 << (e + 1);
+                    last = -1;
+                    changed = true;
+                } else {
+                    last = wideSquare(side, line, dest);
+                    exponents[last] = (byte) e;
+                    changed |= last != from;
+                    dest += 1;
+                }
+            }
+        }
+        return changed ? score : -1;
+    }
+
+    /** Return the index of square K of line LINE, counting from SIDE,
+     *  in a board of exponents held row by row. */
+    private static int wideSquare(int side, int line, int k) {
+        switch (side) {
+            case NORTH:
+                return SIZE * k + line;
+            case SOUTH:
+                return SIZE * (SIZE - 1 - k) + line;
+            case WEST:
+                return SIZE * line + k;
+            case EAST:
+                return SIZE * line + SIZE - 1 - k;
+            default:
+                throw new IllegalArgumentException("bad side: " + side);
+        }
+    }
+
+    /** Return the side indicated by KEY ("Up", "Down", "Left",
+     *  or "Right"). */
+    public static int keyToSide(String key) {
+        switch (key) {
+            case "Up":
+                return NORTH;
+            case "Down":
+                return SOUTH;
+            case "Left":
+                return WEST;
+            case "Right":
+                return EAST;
+            default:
+                throw new IllegalArgumentException("unknown key designation");
+        }
+    }
+
+    /** Return the exponent E such that VALUE is 2^E, or 0 if VALUE is 0. */
+    public static int exponentOf(int value) {
+        if (value == 0) {
+            return 0;
+        }
+        if (value < 2 || Integer.bitCount(value) != 1) {
+            throw new IllegalArgumentException("not a tile value: " + value);
+        }
+        return Integer.numberOfTrailingZeros(value);
+    }
+
+    /** Return the tile value for EXPONENT, or 0 if EXPONENT is 0. */
+    public static int valueOf(int exponent) {
+        return exponent == 0 ? 0 : 1 << exponent;
+    }
+
+    /** Return the packed form of BOARD, where BOARD[r][c] is the tile
+     *  value at row r and column c, or 0 if there is no tile there. */
+    public static long pack(int[][] board) {
+        long packed = 0;
+        for (int r = 0; r < SIZE; r += 1) {
+            for (int c = 0; c < SIZE; c += 1) {
+                packed = set(packed, r, c, exponentOf(board[r][c]));
+            }
+        }
+        return packed;
+    }
+
+    /** Store the tile values of BOARD into RESULT, in the form accepted
+     *  by pack. */
+    public static void unpack(long board, int[][] result) {
+        for (int r = 0; r < SIZE; r += 1) {
+            for (int c = 0; c < SIZE; c += 1) {
+                result[r][c] = valueOf(get(board, r, c));
+            }
+        }
+    }
+
+}
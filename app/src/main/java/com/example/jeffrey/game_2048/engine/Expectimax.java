@@ -0,0 +1,190 @@
+package com.example.jeffrey.game_2048.engine;
+
+import java.util.Arrays;
+
+/** Chooses moves by expectimax search over boards packed as by Boards.
+ *
+ *  Max nodes try each tilt; chance nodes average over every empty square
+ *  receiving a 2 or a 4, weighted as GameMain spawns them.  Leaves are
+ *  scored by a Heuristic, by default Heuristic.DEFAULT.  Chance nodes are
+ *  cached by their symmetry-canonical keys, so symmetric positions share
+ *  entries, and unlikely branches are cut off.
+ *
+ *  Searches deepen one level at a time until their time budget is spent,
+ *  answering with the deepest search completed, or else search to a fixed
+ *  depth, so that the moves chosen depend only on the board.  An
+ *  Expectimax is not synchronized; give each thread its own.
+ *  @author Jeffrey Jacinto */
+public final class Expectimax {
+    /** Probability that a random tile is a 2. */
+    private static final float TWO = (float) SpawnRandom.LOW_TILE_PROBABILITY;
+    /** Branches less likely than this are scored by the heuristic. */
+    static final float PROBABILITY_CUTOFF = 0.0001f;
+    /** Deepest search attempted. */
+    static final int MAX_DEPTH = 8;
+    /** Nodes searched between checks of the clock. */
+    private static final int CLOCK_INTERVAL = 1024;
+
+    /** Cache of chance nodes: keys (canonical boards), the depth to which
+     *  each was searched, and its value.  Key 0 marks an empty slot. */
+    private final long[] mKeys;
+    private final byte[] mDepths;
+    private final float[] mValues;
+    /** Mask selecting a cache slot. */
+    private final int mMask;
+
+    /** Scores leaves. */
+    private final Heuristic mHeuristic;
+
+    /** Time (System.nanoTime) at which the current search must stop. */
+    private long mDeadline;
+    /** True iff the current search ran out of time. */
+    private boolean mAborted;
+    /** Nodes until the clock is next checked. */
+    private int mClock;
+    /** Depth of the last search completed. */
+    private int mDepth;
+
+    /** A searcher with the default heuristic whose cache holds
+     *  2^CACHEBITS positions. */
+    public Expectimax(int cacheBits) {
+        this(cacheBits, Heuristic.DEFAULT);
+    }
+
+    /** A searcher scoring leaves by HEURISTIC whose cache holds
+     *  2^CACHEBITS positions. */
+    public Expectimax(int cacheBits, Heuristic heuristic) {
+        mHeuristic = heuristic;
+        mKeys = new long[1 << cacheBits];
+        mDepths = new byte[1 << cacheBits];
+        mValues = new float[1 << cacheBits];
+        mMask = (1 << cacheBits) - 1;
+    }
+
+    /** Return the score of BOARD by the default heuristic. */
+    public static float heuristic(long board) {
+        return Heuristic.DEFAULT.score(board);
+    }
+
+    /** Return the best side (as numbered by Boards) toward which to tilt
+     *  BOARD, searching for at most BUDGET nanoseconds (but always to a
+     *  depth of at least 1), or -1 if no tilt changes BOARD.  Stops early
+     *  if the calling thread is interrupted. */
+    public int bestMove(long board, long budget) {
+        return search(board, System.nanoTime() + budget, MAX_DEPTH);
+    }
+
+    /** Return the best side toward which to tilt BOARD, searching to
+     *  DEPTH (at most MAX_DEPTH) however long that takes, or -1 if no
+     *  tilt changes BOARD.  Stops early if the calling thread is
+     *  interrupted. */
+    public int bestMoveToDepth(long board, int depth) {
+        return search(board, Long.MAX_VALUE, Math.min(depth, MAX_DEPTH));
+    }
+
+    /** Return the best side toward which to tilt BOARD, or -1, deepening
+     *  the search until MAXDEPTH or until System.nanoTime reaches
+     *  DEADLINE. */
+    private int search(long board, long deadline, int maxDepth) {
+        mDeadline = deadline;
+        mDepth = 0;
+        Arrays.fill(mKeys, 0);
+        int best = -1;
+        for (int depth = 1; depth <= maxDepth; depth += 1) {
+            mAborted = false;
+            mClock = CLOCK_INTERVAL;
+            int move = -1;
+            float bestValue = Float.NEGATIVE_INFINITY;
+            for (int side = 0; side < 4; side += 1) {
+                long next = Boards.move(board, side);
+                if (next == board) {
+                    continue;
+                }
+                float value = chance(next, depth - 1, 1f);
+                if (value > bestValue) {
+                    bestValue = value;
+                    move = side;
+                }
+            }
+            if (mAborted && depth > 1) {
+                break;
+            }
+            best = move;
+            mDepth = depth;
+            if (move == -1 || mAborted || System.nanoTime() >= mDeadline) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    /** Return the depth of the last search completed by bestMove. */
+    public int getDepth() {
+        return mDepth;
+    }
+
+    /** Return the expected value of BOARD, just tilted, before its random
+     *  tile is added, searching DEPTH more moves; it is reached with
+     *  probability PROBABILITY. */
+    private float chance(long board, int depth, float probability) {
+        if (depth == 0 || probability < PROBABILITY_CUTOFF || tick()) {
+            return mHeuristic.score(board);
+        }
+        long key = Symmetry.canonical(board);
+        int slot = (int) (key ^ (key >>> 29) ^ (key >>> 43)) & mMask;
+        if (mKeys[slot] == key && mDepths[slot] >= depth) {
+            return mValues[slot];
+        }
+        int empty = Boards.countEmpty(board);
+        float twoProbability = probability * TWO / empty,
+                fourProbability = probability * (1 - TWO) / empty;
+        float total = 0;
+        for (int i = 0; i < Boards.SQUARES; i += 1) {
+            if (((board >>> (4 * i)) & 0xF) == 0) {
+                total += TWO * max(board | (1L << (4 * i)), depth,
+                        twoProbability);
+                total += (1 - TWO) * max(board | (2L << (4 * i)), depth,
+                        fourProbability);
+            }
+        }
+        float value = total / empty;
+        if (!mAborted) {
+            mKeys[slot] = key;
+            mDepths[slot] = (byte) depth;
+            mValues[slot] = value;
+        }
+        return value;
+    }
+
+    /** Return the value of BOARD, with its random tile added, for the
+     *  best of its tilts, searching DEPTH more moves, reached with
+     *  probability PROBABILITY.  A board with no tilt is worth 0. */
+    private float max(long board, int depth, float probability) {
+        float best = 0;
+        for (int side = 0; side < 4; side += 1) {
+            long next = Boards.move(board, side);
+            if (next != board) {
+                best = Math.max(best, chance(next, depth - 1, probability));
+            }
+        }
+        return best;
+    }
+
+    /** Count a node, checking the clock and for interruption every
+     *  CLOCK_INTERVAL nodes.  Return true iff the search must stop. */
+    private boolean tick() {
+        if (mAborted) {
+            return true;
+        }
+        mClock -= 1;
+        if (mClock == 0) {
+            mClock = CLOCK_INTERVAL;
+            if (System.nanoTime() >= mDeadline
+                    || Thread.currentThread().isInterrupted()) {
+                mAborted = true;
+            }
+        }
+        return mAborted;
+    }
+
+}
@@ -0,0 +1,533 @@
+package com.example.jeffrey.game_2048.engine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/** Enumerates the boards reachable from the opening, level by level.
+ *
+ *  Level 0 holds every opening (the two tiles GameMain places on an empty
+ *  board), and level K + 1 every board first reached from level K by a
+ *  tilt that changes the board followed by the spawn of a 2 or a 4 on an
+ *  empty square.  Boards holding the winning tile are reached but not
+ *  expanded, since the game ends there.  Unless every board is wanted,
+ *  boards are reduced to their symmetry-canonical keys, which divides the
+ *  work by nearly eight.
+ *
+ *  Boards already reached are held in an OffHeapLongSet, so that only
+ *  new ones enter the next level.  A level too large for its share of the
+ *  heap is spilled to disk as sorted runs, merged back into one sorted
+ *  stream when the level is read.  Each level is expanded in chunks by a
+ *  pool of threads, each chunk tilted toward one side at a time by
+ *  Boards.moveAll.
+ *  @author Jeffrey Jacinto */
+public class Explorer {
+    /** Exponent of the winning tile, ending the game. */
+    static final int WIN_EXPONENT = Rules.STANDARD.getWinRank();
+    /** Number of boards in a chunk of work. */
+    static final int CHUNK = 1 << 14;
+    /** Log 2 of the number of shards of the set of boards reached. */
+    static final int SHARD_BITS = 10;
+    /** Size of the buffers of run and level files (bytes). */
+    private static final int FILE_BUFFER = 1 << 16;
+
+    /** Statistics of one level. */
+    public static class Level {
+        /** Number of moves made to reach the level. */
+        public final int moves;
+        /** Number of boards first reached at the level. */
+        public final long boards;
+        /** Number of runs spilled to disk to hold the level. */
+        public final int runs;
+        /** Time taken to find the level (nanoseconds). */
+        public final long nanos;
+
+        Level(int moves, long boards, int runs, long nanos) {
+            this.moves = moves;
+            this.boards = boards;
+            this.runs = runs;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("level %d: %d boards, %d runs, %.1f s",
+                    moves, boards, runs, nanos / 1e9);
+        }
+    }
+
+    /** Receives the statistics of each level as it is found. */
+    public interface LevelListener {
+        /** Called when LEVEL has been found by EXPLORER. */
+        void levelFound(Level level, Explorer explorer);
+    }
+
+    /** The boards of one level, held in memory until it is full and then
+     *  spilled to sorted runs in a directory. */
+    static class Frontier {
+        /** Directory holding runs. */
+        private final File mDir;
+        /** Boards not yet spilled. */
+        private final long[] mBuffer;
+        /** Number of boards in mBuffer. */
+        private int mCount;
+        /** Runs spilled, each holding boards in ascending order. */
+        private final List<File> mRuns = new ArrayList<>();
+        /** Number of boards held. */
+        private long mSize;
+
+        /** A frontier holding up to MEMORY boards in memory, spilling
+         *  runs to DIR. */
+        Frontier(File dir, int memory) {
+            mDir = dir;
+            mBuffer = new long[memory];
+        }
+
+        /** Add the first N boards of BOARDS.  May be called from any
+         *  thread. */
+        synchronized void add(long[] boards, int n) throws IOException {
+            int k = 0;
+            while (k < n) {
+                int copied = Math.min(n - k, mBuffer.length - mCount);
+                System.arraycopy(boards, k, mBuffer, mCount, copied);
+                mCount += copied;
+                k += copied;
+                if (mCount == mBuffer.length) {
+                    spill();
+                }
+            }
+            mSize += n;
+        }
+
+        /** Return the number of boards held. */
+        synchronized long size() {
+            return mSize;
+        }
+
+        /** Return the number of runs spilled. */
+        synchronized int getRuns() {
+            return mRuns.size();
+        }
+
+        /** Write the boards in memory to a new run. */
+        private void spill() throws IOException {
+            Arrays.sort(mBuffer, 0, mCount);
+            File run = File.createTempFile("run", ".bin", mDir);
+            run.deleteOnExit();
+            FileChannel out = new FileOutputStream(run).getChannel();
+            try {
+                write(out, mBuffer, mCount, ByteBuffer.allocate(FILE_BUFFER));
+            } finally {
+                out.close();
+            }
+            mRuns.add(run);
+            mCount = 0;
+        }
+
+        /** Return a stream of my boards in ascending order.  No more may
+         *  be added until clear() is called. */
+        synchronized Stream open() throws IOException {
+            Arrays.sort(mBuffer, 0, mCount);
+            return new Stream(mRuns, mBuffer, mCount);
+        }
+
+        /** Remove all boards, deleting the runs. */
+        synchronized void clear() {
+            for (File run : mRuns) {
+                if (!run.delete()) {
+                    run.deleteOnExit();
+                }
+            }
+            mRuns.clear();
+            mCount = 0;
+            mSize = 0;
+        }
+    }
+
+    /** A merge of sorted sources of boards: runs on disk and a sorted
+     *  array in memory. */
+    static class Stream {
+        /** A sorted source, whose next board is head. */
+        private abstract static class Source {
+            long head;
+
+            /** Advance head to my next board.  Return false if there is
+             *  none. */
+            abstract boolean advance() throws IOException;
+
+            /** Release my resources. */
+            void close() throws IOException {
+            }
+        }
+
+        /** The sources that are not exhausted, ordered by head. */
+        private final PriorityQueue<Source> mSources;
+
+        /** A stream of the boards of RUNS and of the first COUNT boards of
+         *  the sorted array MEMORY. */
+        Stream(List<File> runs, final long[] memory, final int count)
+                throws IOException {
+            mSources = new PriorityQueue<>(runs.size() + 1,
+                    new Comparator<Source>() {
+                        @Override
+                        public int compare(Source a, Source b) {
+                            return a.head < b.head ? -1
+                                    : a.head == b.head ? 0 : 1;
+                        }
+                    });
+            for (File run : runs) {
+                final FileChannel in = new FileInputStream(run).getChannel();
+                final ByteBuffer buffer = ByteBuffer.allocate(FILE_BUFFER);
+                buffer.flip();
+                enqueue(new Source() {
+                    @Override
+                    boolean advance() throws IOException {
+                        if (buffer.remaining() < 8) {
+                            buffer.compact();
+                            while (buffer.position() < 8
+                                    && in.read(buffer) >= 0) {
+                                continue;
+                            }
+                            buffer.flip();
+                            if (buffer.remaining() < 8) {
+                                return false;
+                            }
+                        }
+                        head = buffer.getLong();
+                        return true;
+                    }
+
+                    @Override
+                    void close() throws IOException {
+                        in.close();
+                    }
+                });
+            }
+            enqueue(new Source() {
+                private int mNext;
+
+                @Override
+                boolean advance() {
+                    if (mNext == count) {
+                        return false;
+                    }
+                    head = memory[mNext];
+                    mNext += 1;
+                    return true;
+                }
+            });
+        }
+
+        /** Add SOURCE to the merge, unless it is empty. */
+        private void enqueue(Source source) throws IOException {
+            if (source.advance()) {
+                mSources.add(source);
+            } else {
+                source.close();
+            }
+        }
+
+        /** Fill BOARDS with my next boards.  Return the number read, which
+         *  is less than BOARDS.length only at the end. */
+        int read(long[] boards) throws IOException {
+            int n = 0;
+            while (n < boards.length && !mSources.isEmpty()) {
+                Source source = mSources.poll();
+                boards[n] = source.head;
+                n += 1;
+                enqueue(source);
+            }
+            return n;
+        }
+
+        /** Release my resources. */
+        void close() throws IOException {
+            for (Source source : mSources) {
+                source.close();
+            }
+            mSources.clear();
+        }
+    }
+
+    /** Directory for runs. */
+    private final File mSpillDir;
+    /** Number of boards each level may hold in memory. */
+    private final int mMemory;
+    /** Number of threads expanding boards. */
+    private final int mThreads;
+    /** True iff boards are reduced to their canonical keys. */
+    private final boolean mCanonical;
+    /** The boards reached. */
+    private final OffHeapLongSet mReached = new OffHeapLongSet(SHARD_BITS);
+
+    /** An explorer spilling runs to SPILLDIR, holding up to MEMORY boards
+     *  of each level in memory, expanding with THREADS threads, and
+     *  reducing boards to their symmetry-canonical keys iff CANONICAL. */
+    public Explorer(File spillDir, int memory, int threads,
+                    boolean canonical) {
+        mSpillDir = spillDir;
+        mMemory = memory;
+        mThreads = threads;
+        mCanonical = canonical;
+    }
+
+    /** Return the set of boards reached so far. */
+    public OffHeapLongSet getReached() {
+        return mReached;
+    }
+
+    /** Find levels 0 through LEVELS, reporting each to LISTENER as it is
+     *  found, and return their statistics.  If OUT is not null, the boards
+     *  of level K are written to OUT/level-K in ascending order, as 8-byte
+     *  big-endian longs. */
+    public List<Level> explore(int levels, File out, LevelListener listener)
+            throws IOException, InterruptedException {
+        List<Level> result = new ArrayList<>();
+        Frontier current = new Frontier(mSpillDir, mMemory),
+                next = new Frontier(mSpillDir, mMemory);
+        ExecutorService pool = Executors.newFixedThreadPool(mThreads);
+        try {
+            long start = System.nanoTime();
+            openings(current);
+            for (int moves = 0; moves <= levels; moves += 1) {
+                Level level = new Level(moves, current.size(),
+                        current.getRuns(), System.nanoTime() - start);
+                result.add(level);
+                if (listener != null) {
+                    listener.levelFound(level, this);
+                }
+                start = System.nanoTime();
+                File file = out == null ? null
+                        : new File(out, "level-" + moves);
+                expand(current, moves < levels ? next : null, file, pool);
+                Frontier done = current;
+                current = next;
+                next = done;
+                next.clear();
+            }
+        } finally {
+            pool.shutdownNow();
+            current.clear();
+            next.clear();
+        }
+        return result;
+    }
+
+    /** Add every opening to LEVEL. */
+    private void openings(Frontier level) throws IOException {
+        long[] found = new long[CHUNK];
+        int n = 0;
+        for (int i = 0; i < Boards.SQUARES; i += 1) {
+            for (int j = 0; j < Boards.SQUARES; j += 1) {
+                for (long e = 1; i != j && e <= 2; e += 1) {
+                    for (long f = 1; f <= 2; f += 1) {
+                        long key = key((e << (4 * i)) | (f << (4 * j)));
+                        if (mReached.add(key)) {
+                            found[n] = key;
+                            n += 1;
+                        }
+                    }
+                }
+            }
+        }
+        level.add(found, n);
+    }
+
+    /** Add to NEXT, unless it is null, the boards first reached from those
+     *  of CURRENT, using the threads of POOL.  If FILE is not null, write
+     *  the boards of CURRENT to it. */
+    private void expand(Frontier current, final Frontier next, File file,
+                        ExecutorService pool)
+            throws IOException, InterruptedException {
+        Stream boards = current.open();
+        FileChannel output = file == null ? null
+                : new FileOutputStream(file).getChannel();
+        ByteBuffer buffer = ByteBuffer.allocate(FILE_BUFFER);
+        final Semaphore slots = new Semaphore(2 * mThreads);
+        List<Future<Void>> pending = new ArrayList<>();
+        try {
+            int n;
+            do {
+                final long[] chunk = new long[CHUNK];
+                final int count = n = boards.read(chunk);
+                if (output != null) {
+                    write(output, chunk, count, buffer);
+                }
+                if (count == 0 || next == null) {
+                    continue;
+                }
+                slots.acquire();
+                pending.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        try {
+                            expand(chunk, count, next);
+                        } finally {
+                            slots.release();
+                        }
+                        return null;
+                    }
+                }));
+            } while (n == CHUNK);
+            for (Future<Void> future : pending) {
+                future.get();
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof IOException) {
+                throw (IOException) excp.getCause();
+            }
+            throw new IllegalStateException(excp.getCause());
+        } finally {
+            boards.close();
+            if (output != null) {
+                output.close();
+            }
+        }
+    }
+
+    /** Add to NEXT the boards first reached from the first N of
+     *  BOARDS. */
+    private void expand(long[] boards, int n, Frontier next)
+            throws IOException {
+        long[] found = new long[CHUNK], tilted = new long[n];
+        boolean[] changed = new boolean[n];
+        int count = 0;
+        for (int side = Boards.NORTH; side <= Boards.WEST; side += 1) {
+            Boards.moveAll(side, boards, 0, n, tilted, null, changed);
+            for (int k = 0; k < n; k += 1) {
+                long moved = tilted[k];
+                if (!changed[k]
+                        || Boards.maxExponent(boards[k]) >= WIN_EXPONENT) {
+                    continue;
+                }
+                for (int i = 0; i < Boards.SQUARES; i += 1) {
+                    if (((moved >>> (4 * i)) & 0xF) != 0) {
+                        continue;
+                    }
+                    for (long e = 1; e <= 2; e += 1) {
+                        long key = key(moved | (e << (4 * i)));
+                        if (mReached.add(key)) {
+                            found[count] = key;
+                            count += 1;
+                            if (count == CHUNK) {
+                                next.add(found, count);
+                                count = 0;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        next.add(found, count);
+    }
+
+    /** Return the key under which BOARD is held. */
+    private long key(long board) {
+        return mCanonical ? Symmetry.canonical(board) : board;
+    }
+
+    /** Write the first N of BOARDS to OUT through BUFFER. */
+    private static void write(FileChannel out, long[] boards, int n,
+                              ByteBuffer buffer) throws IOException {
+        for (int k = 0; k < n; k += 1) {
+            if (buffer.remaining() < 8) {
+                flush(out, buffer);
+            }
+            buffer.putLong(boards[k]);
+        }
+        flush(out, buffer);
+    }
+
+    /** Write the contents of BUFFER to OUT and empty it. */
+    private static void flush(FileChannel out, ByteBuffer buffer)
+            throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /** Explore as directed by ARGS:
+     *  <pre>
+     *  [--levels N] [--threads N] [--memory MB] [--spill DIR] [--out DIR]
+     *  [--all]
+     *  </pre>
+     *  Finds levels 0 through N (by default, 20) with N threads (by
+     *  default, one per processor), holding levels in MB megabytes of heap
+     *  (by default, a quarter of the maximum) and spilling to DIR (by
+     *  default, the temporary directory).  With --out, writes each level's
+     *  boards to DIR; with --all, does not reduce boards by symmetry.
+     *  Reports each level on the standard error. */
+    public static void main(String[] args)
+            throws IOException, InterruptedException {
+        int levels = 20, threads = Runtime.getRuntime().availableProcessors();
+        long memory = Runtime.getRuntime().maxMemory() / 4;
+        File spill = new File(System.getProperty("java.io.tmpdir")), out = null;
+        boolean canonical = true;
+        for (int i = 0; i < args.length; i += 1) {
+            if (args[i].equals("--all")) {
+                canonical = false;
+                continue;
+            }
+            if (i + 1 == args.length) {
+                usage();
+            }
+            String value = args[i + 1];
+            i += 1;
+            switch (args[i - 1]) {
+                case "--levels":
+                    levels = Integer.parseInt(value);
+                    break;
+                case "--threads":
+                    threads = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "--memory":
+                    memory = Long.parseLong(value) << 20;
+                    break;
+                case "--spill":
+                    spill = new File(value);
+                    break;
+                case "--out":
+                    out = new File(value);
+                    break;
+                default:
+                    usage();
+                    break;
+            }
+        }
+        int boards = (int) Math.max(CHUNK,
+                Math.min(Integer.MAX_VALUE - 8, memory / 16));
+        Explorer explorer = new Explorer(spill, boards, threads, canonical);
+        explorer.explore(levels, out, new LevelListener() {
+            @Override
+            public void levelFound(Level level, Explorer explorer) {
+                OffHeapLongSet reached = explorer.getReached();
+                System.err.printf("%s; %d reached in %d MB off-heap%n",
+                        level, reached.size(), reached.getBytes() >> 20);
+            }
+        });
+    }
+
+    /** Report correct usage and exit. */
+    private static void usage() {
+        System.err.println("Usage: Explorer [--levels N] [--threads N]"
+                + " [--memory MB] [--spill DIR] [--out DIR] [--all]");
+        System.exit(1);
+    }
+
+}
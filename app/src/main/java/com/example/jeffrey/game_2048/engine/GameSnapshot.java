@@ -0,0 +1,170 @@
+package com.example.jeffrey.game_2048.engine;
+
+import java.nio.ByteBuffer;
+
+/** An immutable picture of a game's model state, published after every
+ *  change, and safe to read from any thread without locking.
+ *  @author Jeffrey Jacinto */
+public final class GameSnapshot {
+    /** State of play. */
+    public enum Status { PLAYING, WON, LOST }
+
+    /** Size of a snapshot when written (bytes). */
+    public static final int BYTES = Boards.SQUARES + 4 + 4 + 8 + 1;
+    /** The states of play, indexed by ordinal. */
+    private static final Status[] STATUSES = Status.values();
+
+    /** Tile exponents, row by row: the tile at (R, C) has value
+     *  2^mExponents[R * SIZE + C], or there is none if that is 0. */
+    private final byte[] mExponents;
+    /** The board in the packed form used by Boards, with tiles above
+     *  2^Boards.MAX_EXPONENT lowered to it. */
+    private final long mBoard;
+    /** Score, and number of moves made. */
+    private final int mScore, mMoves;
+    /** Time the game started (milliseconds since the epoch). */
+    private final long mStartTime;
+    /** State of play. */
+    private final Status mStatus;
+
+    /** A snapshot of BOARD (BOARD[r][c] being the tile value at row r and
+     *  column c, or 0), with score SCORE, MOVES moves made, started at
+     *  STARTTIME, and in state STATUS.  BOARD is copied. */
+    public GameSnapshot(int[][] board, int score, int moves, long startTime,
+                        Status status) {
+        this(exponentsOf(board), score, moves, startTime, status);
+    }
+
+    /** A snapshot with the given EXPONENTS, which it takes over. */
+    private GameSnapshot(byte[] exponents, int score, int moves,
+                         long startTime, Status status) {
+        mExponents = exponents;
+        mScore = score;
+        mMoves = moves;
+        mStartTime = startTime;
+        mStatus = status;
+        long packed = 0;
+        for (int i = 0; i < Boards.SQUARES; i += 1) {
+            packed |= (long) Math.min(exponents[i], Boards.MAX_EXPONENT)
+                    << (4 * i);
+        }
+        mBoard = packed;
+    }
+
+    /** Return the exponents of the tiles of BOARD, row by row. */
+    private static byte[] exponentsOf(int[][] board) {
+        byte[] exponents = new byte[Boards.SQUARES];
+        for (int r = 0; r < Boards.SIZE; r += 1) {
+            for (int c = 0; c < Boards.SIZE; c += 1) {
+                exponents[r * Boards.SIZE + c] =
+                        (byte) Boards.exponentOf(board[r][c]);
+            }
+        }
+        return exponents;
+    }
+
+    /** Return the value of the tile at ROW and COL, or 0 if none. */
+    public int getValue(int row, int col) {
+        return Boards.valueOf(mExponents[row * Boards.SIZE + col]);
+    }
+
+    /** Return the exponent of the tile at ROW and COL, or 0 if none.
+     *  Unlike those of getBoard, may be above Boards.MAX_EXPONENT. */
+    public int getExponent(int row, int col) {
+        return mExponents[row * Boards.SIZE + col];
+    }
+
+    /** Return a side toward which a tilt changes the board, as found on
+     *  the whole tiles and not on getBoard, or -1 if there is none.  For
+     *  players that choose their moves on the packed board, and find none
+     *  where only tiles above 2^Boards.MAX_EXPONENT can merge. */
+    public int anyMove() {
+        for (int side = Boards.NORTH; side <= Boards.WEST; side += 1) {
+            if (Boards.tiltWide(mExponents.clone(), side) >= 0) {
+                return side;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the board in the packed form used by Boards.  Tiles larger
+     *  than a square can hold, made by play beyond a win, are held as the
+     *  largest that fits. */
+    public long getBoard() {
+        return mBoard;
+    }
+
+    /** Return the number of tiles on the board. */
+    public int getTileCount() {
+        int count = 0;
+        for (byte exponent : mExponents) {
+            if (exponent != 0) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Return the value of the largest tile, or 0 if there is none. */
+    public int getMaxTile() {
+        int max = 0;
+        for (byte exponent : mExponents) {
+            max = Math.max(max, exponent);
+        }
+        return Boards.valueOf(max);
+    }
+
+    /** Return the tiles as triples { V, R, C } giving tile value, row, and
+     *  column, in the form accepted by GameMain.setTiles. */
+    public int[][] getTiles() {
+        int[][] tiles = new int[getTileCount()][];
+        for (int i = 0, k = 0; i < mExponents.length; i += 1) {
+            if (mExponents[i] != 0) {
+                tiles[k] = new int[] { Boards.valueOf(mExponents[i]),
+                                       i / Boards.SIZE, i % Boards.SIZE };
+                k += 1;
+            }
+        }
+        return tiles;
+    }
+
+    /** Return the score. */
+    public int getScore() {
+        return mScore;
+    }
+
+    /** Return the number of moves made. */
+    public int getMoves() {
+        return mMoves;
+    }
+
+    /** Return the time the game started. */
+    public long getStartTime() {
+        return mStartTime;
+    }
+
+    /** Return the state of play. */
+    public Status getStatus() {
+        return mStatus;
+    }
+
+    /** Write this snapshot to OUT, in BYTES bytes. */
+    public void write(ByteBuffer out) {
+        out.put(mExponents);
+        out.putInt(mScore);
+        out.putInt(mMoves);
+        out.putLong(mStartTime);
+        out.put((byte) mStatus.ordinal());
+    }
+
+    /** Return a snapshot read from IN, as written by write. */
+    public static GameSnapshot read(ByteBuffer in) {
+        byte[] exponents = new byte[Boards.SQUARES];
+        in.get(exponents);
+        int score = in.getInt(), moves = in.getInt();
+        long startTime = in.getLong();
+        Status status = STATUSES[in.get()];
+        return new GameSnapshot(exponents, score, moves, startTime, status);
+    }
+
+}
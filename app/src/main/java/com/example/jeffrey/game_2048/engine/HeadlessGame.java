@@ -0,0 +1,134 @@
+package com.example.jeffrey.game_2048.engine;
+
+/** A game of 2048 with no display, played on a packed board by the rules
+ *  of GameMain or by some variant of them compiled into a RuleEngine.
+ *  Holds only its board, score, PRNG and (shared) engine, so that very
+ *  many can be kept at once.
+ *  @author Jeffrey Jacinto */
+public class HeadlessGame {
+    /** PRNG for generating random tiles. */
+    private final SpawnRandom mRandom;
+    /** The rules played. */
+    private final RuleEngine mEngine;
+    /** The board, packed as by Boards. */
+    private long mBoard;
+    /** Score, and number of moves made. */
+    private int mScore, mMoves;
+    /** True iff the winning tile has been made. */
+    private boolean mWon;
+    /** True iff play has continued beyond a win. */
+    private boolean mKeepPlaying;
+
+    /** A new game of standard rules whose PRNG is RANDOM, with its two
+     *  opening tiles. */
+    public HeadlessGame(SpawnRandom random) {
+        this(random, RuleEngine.STANDARD);
+    }
+
+    /** A new game played by ENGINE whose PRNG is RANDOM, with its two
+     *  opening tiles. */
+    public HeadlessGame(SpawnRandom random, RuleEngine engine) {
+        mRandom = random;
+        mEngine = engine;
+        clear();
+    }
+
+    /** Start a new game: clear the board and score, and add the two
+     *  opening tiles. */
+    public void clear() {
+        mBoard = 0;
+        mScore = 0;
+        mMoves = 0;
+        mWon = false;
+        mKeepPlaying = false;
+        setRandomPiece();
+        setRandomPiece();
+    }
+
+    /** Tilt the board toward SIDE (one of Boards.NORTH, etc.) and, if that
+     *  changes it, add a random tile, as GameMain does even after the
+     *  winning move.  Return true iff the move was made: the game is not
+     *  over and the tilt changes the board. */
+    public boolean move(int side) {
+        if (gameOver()) {
+            return false;
+        }
+        long next = mEngine.move(mBoard, side);
+        if (next == mBoard) {
+            return false;
+        }
+        mScore += mEngine.score(mBoard, side);
+        mBoard = next;
+        mMoves += 1;
+        if (mEngine.isWon(next)) {
+            mWon = true;
+        }
+        setRandomPiece();
+        return true;
+    }
+
+    /** Add a tile to a random, empty position, choosing a value (2 or
+     *  4, under standard rules) at random, as GameMain.setRandomPiece
+     *  does.  Has no effect if the board is full. */
+    void setRandomPiece() {
+        mBoard = mEngine.spawnOn(mBoard, mRandom);
+    }
+
+    /** Return true iff the game is over: won, unless play has continued
+     *  beyond the win, or no tilt changes the board. */
+    public boolean gameOver() {
+        return (mWon && !mKeepPlaying) || !mEngine.canMove(mBoard);
+    }
+
+    /** Continue a won game, as GameMain.keepPlaying does, so that play
+     *  goes on until no move is left.  Return true iff the game had been
+     *  won and play can go on. */
+    public boolean keepPlaying() {
+        if (!mWon || mKeepPlaying) {
+            return false;
+        }
+        mKeepPlaying = true;
+        return !gameOver();
+    }
+
+    /** Return true iff the winning tile has been made. */
+    public boolean hasWon() {
+        return mWon;
+    }
+
+    /** Return the rules played. */
+    public RuleEngine getEngine() {
+        return mEngine;
+    }
+
+    /** Return the PRNG from which random tiles are drawn. */
+    public SpawnRandom getRandom() {
+        return mRandom;
+    }
+
+    /** Return the board, packed as by Boards, holding ranks as given by
+     *  the rules played (exponents, under standard rules). */
+    public long getBoard() {
+        return mBoard;
+    }
+
+    /** Return the score. */
+    public int getScore() {
+        return mScore;
+    }
+
+    /** Return the number of moves made. */
+    public int getMoves() {
+        return mMoves;
+    }
+
+    /** Return the state of play. */
+    public GameSnapshot.Status getStatus() {
+        if (mWon && !mKeepPlaying) {
+            return GameSnapshot.Status.WON;
+        }
+        return gameOver() ? GameSnapshot.Status.LOST
+                : GameSnapshot.Status.PLAYING;
+    }
+
+}
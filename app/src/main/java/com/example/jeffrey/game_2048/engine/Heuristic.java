@@ -0,0 +1,106 @@
+package com.example.jeffrey.game_2048.engine;
+
+import java.util.Arrays;
+
+/** Scores boards packed as by Boards for Expectimax, by a sum over rows
+ *  and columns read from a 64K-entry table, favouring empty squares,
+ *  possible merges and monotonic lines, and penalizing large tiles.
+ *
+ *  The weights of these terms are given when the heuristic is made, so
+ *  that they may be tuned (see WeightTuner).  A Heuristic is immutable,
+ *  and may be shared among threads.
+ *  @author Jeffrey Jacinto */
+public final class Heuristic {
+    /** Names of the weights, in the order taken by the constructor. */
+    public static final String[] NAMES = {
+        "lost", "empty", "merges", "monotonicityPower", "monotonicity",
+        "sumPower", "sum"
+    };
+    /** Indices of the weights in NAMES. */
+    static final int LOST = 0, EMPTY = 1, MERGES = 2, MONOTONICITY_POWER = 3,
+            MONOTONICITY = 4, SUM_POWER = 5, SUM = 6;
+
+    /** The weights used by AutoPlayer. */
+    public static final Heuristic DEFAULT =
+            new Heuristic(200000f, 270f, 700f, 4f, 47f, 3.5f, 11f);
+
+    /** The weights, indexed as NAMES. */
+    private final float[] mWeights;
+    /** mRows[ROW] is the score of a single packed row, the same whichever
+     *  way the row is read. */
+    private final float[] mRows = new float[1 << 16];
+
+    /** A heuristic with WEIGHTS, one for each of NAMES, in order. */
+    public Heuristic(float... weights) {
+        if (weights.length != NAMES.length) {
+            throw new IllegalArgumentException("need " + NAMES.length
+                    + " weights");
+        }
+        mWeights = weights.clone();
+        int[] line = new int[Boards.SIZE];
+        for (int row = 0; row < (1 << 16); row += 1) {
+            for (int c = 0; c < Boards.SIZE; c += 1) {
+                line[c] = (row >>> (4 * c)) & 0xF;
+            }
+            float sum = 0;
+            int empty = 0, merges = 0, prev = 0, counter = 0;
+            for (int rank : line) {
+                sum += Math.pow(rank, mWeights[SUM_POWER]);
+                if (rank == 0) {
+                    empty += 1;
+                } else {
+                    if (prev == rank) {
+                        counter += 1;
+                    } else if (counter > 0) {
+                        merges += 1 + counter;
+                        counter = 0;
+                    }
+                    prev = rank;
+                }
+            }
+            if (counter > 0) {
+                merges += 1 + counter;
+            }
+            float left = 0, right = 0;
+            for (int c = 1; c < Boards.SIZE; c += 1) {
+                float a = (float) Math.pow(line[c - 1],
+                                           mWeights[MONOTONICITY_POWER]),
+                        b = (float) Math.pow(line[c],
+                                             mWeights[MONOTONICITY_POWER]);
+                if (a > b) {
+                    left += a - b;
+                } else {
+                    right += b - a;
+                }
+            }
+            mRows[row] = mWeights[LOST] + mWeights[EMPTY] * empty
+                    + mWeights[MERGES] * merges
+                    - mWeights[MONOTONICITY] * Math.min(left, right)
+                    - mWeights[SUM] * sum;
+        }
+    }
+
+    /** Return my weights, indexed as NAMES. */
+    public float[] getWeights() {
+        return mWeights.clone();
+    }
+
+    /** Return the score of BOARD. */
+    public float score(long board) {
+        return rowsScore(board) + rowsScore(Boards.transpose(board));
+    }
+
+    /** Return the score of the rows of BOARD. */
+    private float rowsScore(long board) {
+        return mRows[(int) (board & Boards.ROW_MASK)]
+                + mRows[(int) ((board >>> 16) & Boards.ROW_MASK)]
+                + mRows[(int) ((board >>> 32) & Boards.ROW_MASK)]
+                + mRows[(int) ((board >>> 48) & Boards.ROW_MASK)];
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(mWeights);
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.example.jeffrey.game_2048.engine;
+
+/** One change to a game, as published by a MovePublisher.  A turn is
+ *  published as its MOVED and MERGED events, then SCORE_CHANGED if it
+ *  scored, then TURN_ENDED, then the SPAWNED event for the tile that
+ *  follows it, and then GAME_ENDED if that ends the game.  The opening
+ *  tiles of a game are turn 0, and the events of the k-th move and of the
+ *  tile spawned after it are turn k.
+ *  @author Jeffrey Jacinto */
+public final class MoveEvent {
+    /** Kinds of event. */
+    public enum Type {
+        /** The board was emptied for a new game. */
+        CLEARED,
+        /** The whole game was replaced by getSnapshot(). */
+        LOADED,
+        /** A tile of getValue() appeared at (getRow(), getCol()). */
+        SPAWNED,
+        /** A tile of getValue() slid from (getRow(), getCol()) to
+         *  (getToRow(), getToCol()). */
+        MOVED,
+        /** The tile at (getRow(), getCol()) slid into the one at
+         *  (getToRow(), getToCol()), making a tile of getValue(). */
+        MERGED,
+        /** The score became getValue(). */
+        SCORE_CHANGED,
+        /** A turn tilting toward side getValue() (as numbered by Boards)
+         *  is complete. */
+        TURN_ENDED,
+        /** The game ended, as described by getSnapshot(). */
+        GAME_ENDED,
+        /** The whole game is as described by getSnapshot(), published on
+         *  request for subscribers that dropped events.  Unlike LOADED,
+         *  the game continues. */
+        SYNCED
+    }
+
+    /** Kind of event. */
+    private final Type mType;
+    /** Turn to which this event belongs. */
+    private final int mTurn;
+    /** Squares involved, or -1. */
+    private final int mRow, mCol, mToRow, mToCol;
+    /** Tile value, score or side, according to mType. */
+    private final int mValue;
+    /** State after the event, for LOADED, GAME_ENDED and SYNCED, or
+     *  null. */
+    private final GameSnapshot mSnapshot;
+
+    private MoveEvent(Type type, int turn, int row, int col, int toRow,
+                      int toCol, int value, GameSnapshot snapshot) {
+        mType = type;
+        mTurn = turn;
+        mRow = row;
+        mCol = col;
+        mToRow = toRow;
+        mToCol = toCol;
+        mValue = value;
+        mSnapshot = snapshot;
+    }
+
+    /** Return a CLEARED event. */
+    public static MoveEvent cleared() {
+        return new MoveEvent(Type.CLEARED, 0, -1, -1, -1, -1, 0, null);
+    }
+
+    /** Return a LOADED event for SNAPSHOT. */
+    public static MoveEvent loaded(GameSnapshot snapshot) {
+        return new MoveEvent(Type.LOADED, snapshot.getMoves(), -1, -1, -1, -1,
+                0, snapshot);
+    }
+
+    /** Return a SPAWNED event in TURN for a tile of VALUE at (ROW, COL). */
+    public static MoveEvent spawned(int turn, int row, int col, int value) {
+        return new MoveEvent(Type.SPAWNED, turn, row, col, row, col, value,
+                null);
+    }
+
+    /** Return a MOVED event in TURN for a tile of VALUE sliding from
+     *  (ROW, COL) to (TOROW, TOCOL). */
+    public static MoveEvent moved(int turn, int row, int col, int toRow,
+                                  int toCol, int value) {
+        return new MoveEvent(Type.MOVED, turn, row, col, toRow, toCol, value,
+                null);
+    }
+
+    /** Return a MERGED event in TURN for the tile at (ROW, COL) merging
+     *  into the one at (TOROW, TOCOL) to make a tile of VALUE. */
+    public static MoveEvent merged(int turn, int row, int col, int toRow,
+                                   int toCol, int value) {
+        return new MoveEvent(Type.MERGED, turn, row, col, toRow, toCol, value,
+                null);
+    }
+
+    /** Return a SCORE_CHANGED event in TURN to SCORE. */
+    public static MoveEvent scoreChanged(int turn, int score) {
+        return new MoveEvent(Type.SCORE_CHANGED, turn, -1, -1, -1, -1, score,
+                null);
+    }
+
+    /** Return a TURN_ENDED event for TURN, which tilted toward SIDE. */
+    public static MoveEvent turnEnded(int turn, int side) {
+        return new MoveEvent(Type.TURN_ENDED, turn, -1, -1, -1, -1, side,
+                null);
+    }
+
+    /** Return a GAME_ENDED event for the game ending as SNAPSHOT. */
+    public static MoveEvent gameEnded(GameSnapshot snapshot) {
+        return new MoveEvent(Type.GAME_ENDED, snapshot.getMoves(), -1, -1, -1,
+                -1, 0, snapshot);
+    }
+
+    /** Return a SYNCED event for SNAPSHOT. */
+    public static MoveEvent synced(GameSnapshot snapshot) {
+        return new MoveEvent(Type.SYNCED, snapshot.getMoves(), -1, -1, -1, -1,
+                0, snapshot);
+    }
+
+    /** Return my kind. */
+    public Type getType() {
+        return mType;
+    }
+
+    /** Return the turn to which I belong. */
+    public int getTurn() {
+        return mTurn;
+    }
+
+    /** Return the row of the square I concern, or -1. */
+    public int getRow() {
+        return mRow;
+    }
+
+    /** Return the column of the square I concern, or -1. */
+    public int getCol() {
+        return mCol;
+    }
+
+    /** Return the row a tile moved to, or -1. */
+    public int getToRow() {
+        return mToRow;
+    }
+
+    /** Return the column a tile moved to, or -1. */
+    public int getToCol() {
+        return mToCol;
+    }
+
+    /** Return my tile value, score or side, according to my type. */
+    public int getValue() {
+        return mValue;
+    }
+
+    /** Return the game state for LOADED, GAME_ENDED and SYNCED events, or
+     *  null. */
+    public GameSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %d (%d, %d)->(%d, %d) %d", mType, mTurn,
+                mRow, mCol, mToRow, mToCol, mValue);
+    }
+
+}
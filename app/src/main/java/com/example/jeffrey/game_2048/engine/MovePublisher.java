@@ -0,0 +1,183 @@
+package com.example.jeffrey.game_2048.engine;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/** Publishes the MoveEvents of a game to any number of subscribers, each
+ *  receiving them on its own executor and at its own pace.
+ *
+ *  Delivery is driven by demand: a subscriber receives events only as
+ *  fast as it requests them, and events published meanwhile wait in its
+ *  subscription's bounded buffer.  Publishing never blocks.  If a buffer
+ *  fills, further events for that subscriber are dropped, and it is told
+ *  how many before it receives the next one, so that it can resynchronize
+ *  from a snapshot.
+ *  @author Jeffrey Jacinto */
+public class MovePublisher {
+
+    /** A receiver of MoveEvents. */
+    public interface Subscriber {
+        /** Called first, with the SUBSCRIPTION through which I request
+         *  events. */
+        void onSubscribe(Subscription subscription);
+
+        /** Receive EVENT. */
+        void onEvent(MoveEvent event);
+
+        /** Called before the next event when COUNT events were dropped
+         *  because my buffer was full. */
+        void onDropped(int count);
+    }
+
+    /** Initial size of subscription buffers, which grow on demand up to
+     *  their capacity. */
+    static final int INITIAL_BUFFER = 64;
+
+    /** Runs tasks on the thread that submits them. */
+    public static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            task.run();
+        }
+    };
+
+    /** The link between a publisher and one subscriber. */
+    public final class Subscription implements Runnable {
+        /** The subscriber, and the executor on which it is called. */
+        private final Subscriber mSubscriber;
+        private final Executor mExecutor;
+        /** Events published and not yet delivered. */
+        private final ArrayDeque<MoveEvent> mBuffer;
+        /** Capacity of mBuffer. */
+        private final int mCapacity;
+        /** Events requested and not yet delivered. */
+        private long mDemand;
+        /** Events dropped and not yet reported. */
+        private int mDropped;
+        /** True iff a delivery task is scheduled or running. */
+        private boolean mScheduled;
+        /** True iff cancelled. */
+        private boolean mCancelled;
+
+        Subscription(Subscriber subscriber, Executor executor, int capacity) {
+            mSubscriber = subscriber;
+            mExecutor = executor;
+            mCapacity = capacity;
+            mBuffer = new ArrayDeque<>(Math.min(capacity, INITIAL_BUFFER));
+        }
+
+        /** Ask for N more events. */
+        public void request(long n) {
+            if (n <= 0) {
+                throw new IllegalArgumentException("request must be positive");
+            }
+            synchronized (this) {
+                mDemand = Math.min(Long.MAX_VALUE - n, mDemand) + n;
+            }
+            schedule();
+        }
+
+        /** Stop delivery and unsubscribe. */
+        public void cancel() {
+            synchronized (this) {
+                mCancelled = true;
+                mBuffer.clear();
+            }
+            mSubscriptions.remove(this);
+        }
+
+        /** Return the number of events waiting for delivery. */
+        public synchronized int getBacklog() {
+            return mBuffer.size();
+        }
+
+        /** Buffer EVENT for delivery, or drop it if the buffer is full. */
+        void offer(MoveEvent event) {
+            synchronized (this) {
+                if (mCancelled) {
+                    return;
+                }
+                if (mBuffer.size() == mCapacity) {
+                    mDropped += 1;
+                    return;
+                }
+                mBuffer.add(event);
+            }
+            schedule();
+        }
+
+        /** Schedule delivery, unless already scheduled or nothing can
+         *  be delivered. */
+        private void schedule() {
+            synchronized (this) {
+                if (mScheduled || mCancelled || mDemand == 0
+                        || (mBuffer.isEmpty() && mDropped == 0)) {
+                    return;
+                }
+                mScheduled = true;
+            }
+            mExecutor.execute(this);
+        }
+
+        /** Deliver buffered events while there is demand for them. */
+        @Override
+        public void run() {
+            while (true) {
+                MoveEvent event;
+                int dropped;
+                synchronized (this) {
+                    if (mCancelled || mDemand == 0
+                            || (mBuffer.isEmpty() && mDropped == 0)) {
+                        mScheduled = false;
+                        return;
+                    }
+                    dropped = mDropped;
+                    mDropped = 0;
+                    event = mBuffer.poll();
+                    if (event != null) {
+                        mDemand -= 1;
+                    }
+                }
+                if (dropped > 0) {
+                    mSubscriber.onDropped(dropped);
+                }
+                if (event != null) {
+                    mSubscriber.onEvent(event);
+                }
+            }
+        }
+    }
+
+    /** Current subscriptions. */
+    private final CopyOnWriteArrayList<Subscription> mSubscriptions =
+            new CopyOnWriteArrayList<>();
+
+    /** Subscribe SUBSCRIBER, to be called on EXECUTOR, with room for
+     *  CAPACITY undelivered events.  Return its subscription, which is
+     *  also passed to SUBSCRIBER.onSubscribe. */
+    public Subscription subscribe(Subscriber subscriber, Executor executor,
+                                  int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        Subscription subscription =
+                new Subscription(subscriber, executor, capacity);
+        subscriber.onSubscribe(subscription);
+        mSubscriptions.add(subscription);
+        return subscription;
+    }
+
+    /** Return true iff there are subscribers. */
+    public boolean hasSubscribers() {
+        return !mSubscriptions.isEmpty();
+    }
+
+    /** Publish EVENT to all subscribers.  Never blocks. */
+    public void publish(MoveEvent event) {
+        for (Subscription subscription : mSubscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+}
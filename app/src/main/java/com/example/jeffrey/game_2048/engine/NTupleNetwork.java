@@ -0,0 +1,251 @@
+package com.example.jeffrey.game_2048.engine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+
+/** Values boards packed as by Boards by an n-tuple network: the sum, over
+ *  a few tuples of squares and over the eight symmetric placements of
+ *  each, of a weight looked up by the tiles on those squares.
+ *
+ *  A network values afterstates (boards just tilted, before their random
+ *  tile is added) by the score expected from the rest of the game, as
+ *  learnt by NTupleTrainer, and plays by choosing the tilt whose score
+ *  plus the value of its afterstate is greatest.
+ *
+ *  Each tuple's weights are one table of 16^K floats, for a tuple of K
+ *  squares, held outside the Java heap.  A network is saved as a flat file
+ *  laid out as
+ *  <pre>
+ *  MAGIC VERSION N  K1 S1 ... SK1  ...  KN S1 ... SKN  TABLE1 ... TABLEN
+ *  </pre>
+ *  all in little-endian 32-bit ints and floats, for N tuples of Ki squares
+ *  Sj (numbered as by Boards), so that a saved network is used by mapping
+ *  its file into memory rather than reading it.  Lookups may be made from
+ *  any number of threads; updates are made without locks, as by training
+ *  threads that tolerate each other's lost updates.
+ *  @author Jeffrey Jacinto */
+public final class NTupleNetwork {
+    /** Name of the file from which the game loads its network. */
+    public static final String FILE_NAME = "ntuple.weights";
+    /** First two ints of a network file: "NTUP", and the format. */
+    static final int MAGIC = 0x4E545550, VERSION = 1;
+    /** Most squares in a tuple, whose table fills 1GB. */
+    static final int MAX_TUPLE = 7;
+    /** Four tuples of six squares: two rows and a half (a row and the
+     *  first two squares of the next) and two 2x3 blocks, numbering 64M
+     *  weights in all. */
+    public static final int[][] STANDARD_TUPLES = {
+        { 0, 1, 2, 3, 4, 5 }, { 4, 5, 6, 7, 8, 9 },
+        { 0, 1, 2, 4, 5, 6 }, { 4, 5, 6, 8, 9, 10 }
+    };
+
+    /** TRANSFORMED[X][I] is the square to which Symmetry transform X
+     *  takes square I. */
+    private static final int[][] TRANSFORMED =
+            new int[Symmetry.TRANSFORMS][Boards.SQUARES];
+
+    static {
+        for (int x = 0; x < Symmetry.TRANSFORMS; x += 1) {
+            for (int i = 0; i < Boards.SQUARES; i += 1) {
+                long image = Symmetry.apply(x, 1L << (4 * i));
+                TRANSFORMED[x][i] = Long.numberOfTrailingZeros(image) / 4;
+            }
+        }
+    }
+
+    /** The tuples, as lists of squares. */
+    private final int[][] mTuples;
+    /** mShifts[T * TRANSFORMS + X][J] is the bit position in a board of the
+     *  Jth square of tuple T placed by transform X. */
+    private final int[][] mShifts;
+    /** The weights of each tuple, and the bytes holding them. */
+    private final FloatBuffer[] mTables;
+    private final ByteBuffer[] mBytes;
+
+    /** A network of TUPLES, lists of squares numbered as by Boards, with
+     *  all weights 0. */
+    public NTupleNetwork(int[][] tuples) {
+        this(tuples, null);
+    }
+
+    /** A network of TUPLES whose tables are read from BUFFER, from its
+     *  position on, or are new and zeroed if BUFFER is null. */
+    private NTupleNetwork(int[][] tuples, ByteBuffer buffer) {
+        mTuples = new int[tuples.length][];
+        mShifts = new int[tuples.length * Symmetry.TRANSFORMS][];
+        mTables = new FloatBuffer[tuples.length];
+        mBytes = new ByteBuffer[tuples.length];
+        for (int t = 0; t < tuples.length; t += 1) {
+            int[] tuple = mTuples[t] = tuples[t].clone();
+            if (tuple.length < 1 || tuple.length > MAX_TUPLE) {
+                throw new IllegalArgumentException("bad tuple size");
+            }
+            for (int x = 0; x < Symmetry.TRANSFORMS; x += 1) {
+                int[] shifts = mShifts[t * Symmetry.TRANSFORMS + x] =
+                        new int[tuple.length];
+                for (int j = 0; j < tuple.length; j += 1) {
+                    if (tuple[j] < 0 || tuple[j] >= Boards.SQUARES) {
+                        throw new IllegalArgumentException("bad square");
+                    }
+                    shifts[j] = 4 * TRANSFORMED[x][tuple[j]];
+                }
+            }
+            int bytes = 4 << (4 * tuple.length);
+            ByteBuffer table;
+            if (buffer == null) {
+                table = ByteBuffer.allocateDirect(bytes);
+            } else {
+                if (buffer.remaining() < bytes) {
+                    throw new IllegalArgumentException("tables cut short");
+                }
+                table = buffer.slice();
+                table.limit(bytes);
+                buffer.position(buffer.position() + bytes);
+            }
+            mBytes[t] = table.order(ByteOrder.LITTLE_ENDIAN);
+            mTables[t] = mBytes[t].asFloatBuffer();
+        }
+    }
+
+    /** Return the network saved in FILE, mapped into memory.  Unless
+     *  WRITABLE, the network must not be updated; if WRITABLE, updates
+     *  change only the copy in memory. */
+    public static NTupleNetwork load(File file, boolean writable)
+            throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = channel.map(writable
+                    ? FileChannel.MapMode.PRIVATE
+                    : FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < 12 || buffer.getInt() != MAGIC
+                    || buffer.getInt() != VERSION) {
+                throw new IOException(file + " is not a network");
+            }
+            int[][] tuples = new int[buffer.getInt()][];
+            for (int t = 0; t < tuples.length; t += 1) {
+                tuples[t] = new int[buffer.getInt()];
+                for (int j = 0; j < tuples[t].length; j += 1) {
+                    tuples[t][j] = buffer.getInt();
+                }
+            }
+            return new NTupleNetwork(tuples, buffer);
+        } catch (IllegalArgumentException | BufferUnderflowException
+                 | NegativeArraySizeException excp) {
+            throw new IOException("bad network " + file, excp);
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Write me to FILE, replacing it whole.  Weights updated meanwhile
+     *  may be written either before or after their update. */
+    public void save(File file) throws IOException {
+        int ints = 3;
+        for (int[] tuple : mTuples) {
+            ints += 1 + tuple.length;
+        }
+        ByteBuffer header = ByteBuffer.allocate(4 * ints)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(mTuples.length);
+        for (int[] tuple : mTuples) {
+            header.putInt(tuple.length);
+            for (int square : tuple) {
+                header.putInt(square);
+            }
+        }
+        header.flip();
+
+        File temp = new File(file.getPath() + ".tmp");
+        FileChannel out = new FileOutputStream(temp).getChannel();
+        try {
+            write(out, header);
+            for (ByteBuffer table : mBytes) {
+                write(out, table.duplicate());
+            }
+            out.force(false);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+            throw new IOException("could not replace " + file);
+        }
+    }
+
+    /** Write the remaining bytes of BUFFER to OUT. */
+    private static void write(FileChannel out, ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /** Return the number of tuples. */
+    public int getTupleCount() {
+        return mTuples.length;
+    }
+
+    /** Return the number of weights looked up for each board. */
+    int getFeatureCount() {
+        return mShifts.length;
+    }
+
+    /** Return the index in its table of the weight looked up for tuple
+     *  placement P (T * TRANSFORMS + X) on BOARD. */
+    private int index(int p, long board) {
+        int[] shifts = mShifts[p];
+        int index = 0;
+        for (int j = 0; j < shifts.length; j += 1) {
+            index |= (int) ((board >>> shifts[j]) & 0xF) << (4 * j);
+        }
+        return index;
+    }
+
+    /** Return the value of the afterstate BOARD: the score expected from
+     *  it to the end of the game. */
+    public float value(long board) {
+        float value = 0;
+        for (int p = 0; p < mShifts.length; p += 1) {
+            value += mTables[p / Symmetry.TRANSFORMS].get(index(p, board));
+        }
+        return value;
+    }
+
+    /** Add DELTA to every weight looked up for BOARD. */
+    void update(long board, float delta) {
+        for (int p = 0; p < mShifts.length; p += 1) {
+            FloatBuffer table = mTables[p / Symmetry.TRANSFORMS];
+            int index = index(p, board);
+            table.put(index, table.get(index) + delta);
+        }
+    }
+
+    /** Return the best side (as numbered by Boards) toward which to tilt
+     *  BOARD: that whose score plus the value of the tilted board is
+     *  greatest, or -1 if no tilt changes BOARD. */
+    public int bestMove(long board) {
+        int best = -1;
+        float bestValue = Float.NEGATIVE_INFINITY;
+        for (int side = 0; side < 4; side += 1) {
+            long next = Boards.move(board, side);
+            if (next == board) {
+                continue;
+            }
+            float value = Boards.score(board, side) + value(next);
+            if (value > bestValue) {
+                bestValue = value;
+                best = side;
+            }
+        }
+        return best;
+    }
+
+}
@@ -0,0 +1,233 @@
+package com.example.jeffrey.game_2048.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Trains an NTupleNetwork by temporal-difference learning from games
+ *  played against itself with no display.
+ *
+ *  Each game is a HeadlessGame, played by GameMain's rules past the
+ *  winning tile until no move is left, always choosing the tilt the
+ *  network values most.  After each move the value of the previous
+ *  afterstate is moved toward the score of the move plus the value of the
+ *  new afterstate (TD(0) on afterstates); the last afterstate of a game is
+ *  moved toward 0.
+ *
+ *  Any number of threads play games at once, each with its own PRNG,
+ *  updating the shared network without locks: an update now and then lost
+ *  to another thread's costs far less than locking every weight.  The
+ *  network is saved at intervals, so that a long run may be stopped and
+ *  resumed from its file.
+ *  @author Jeffrey Jacinto */
+public class NTupleTrainer {
+    /** Default number of games, learning rate (shared by the weights
+     *  looked up for a board), and number of games between reports. */
+    static final long GAMES = 1000000;
+    static final float RATE = 0.1f;
+    static final int REPORT = 10000;
+    /** Exponent of the winning tile, whose rate is reported. */
+    static final int WIN_EXPONENT = Rules.STANDARD.getWinRank();
+
+    /** The network trained. */
+    private final NTupleNetwork mNetwork;
+    /** Step size of each weight. */
+    private final float mRate;
+    /** Games played, their total score, and the number won, since the last
+     *  report. */
+    private final AtomicLong mGames = new AtomicLong(),
+            mTotal = new AtomicLong(), mWins = new AtomicLong();
+
+    /** A trainer of NETWORK whose updates of the value of a board are
+     *  RATE times its error. */
+    public NTupleTrainer(NTupleNetwork network, float rate) {
+        mNetwork = network;
+        mRate = rate / network.getFeatureCount();
+    }
+
+    /** Play GAME from its start to its end, learning from every move, and
+     *  return its final score. */
+    public int train(HeadlessGame game) {
+        game.clear();
+        long previous = 0;
+        boolean started = false;
+        while (true) {
+            if (game.hasWon()) {
+                game.keepPlaying();
+            }
+            if (game.gameOver()) {
+                break;
+            }
+            long board = game.getBoard(), after = board;
+            int side = -1, reward = 0;
+            float best = Float.NEGATIVE_INFINITY, bestValue = 0;
+            for (int s = 0; s < 4; s += 1) {
+                long next = Boards.move(board, s);
+                if (next == board) {
+                    continue;
+                }
+                int score = Boards.score(board, s);
+                float value = mNetwork.value(next);
+                if (score + value > best) {
+                    best = score + value;
+                    bestValue = value;
+                    side = s;
+                    after = next;
+                    reward = score;
+                }
+            }
+            if (started) {
+                learn(previous, reward + bestValue);
+            }
+            previous = after;
+            started = true;
+            game.move(side);
+        }
+        if (started) {
+            learn(previous, 0);
+        }
+        return game.getScore();
+    }
+
+    /** Move the value of the afterstate BOARD toward TARGET. */
+    private void learn(long board, float target) {
+        mNetwork.update(board, mRate * (target - mNetwork.value(board)));
+    }
+
+    /** Play GAMES games with a PRNG seeded with SEED on THREADS threads,
+     *  saving the network to FILE (unless null) and reporting progress on
+     *  the standard error every REPORT games. */
+    public void run(long games, long seed, int threads, final File file)
+            throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        SpawnRandom seeds = new Xoroshiro128(seed);
+        final AtomicLong remaining = new AtomicLong(games);
+        try {
+            List<Future<Void>> pending = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t += 1) {
+                final HeadlessGame game = new HeadlessGame(seeds.split());
+                pending.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        while (remaining.getAndDecrement() > 0) {
+                            played(train(game), game, file);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : pending) {
+                try {
+                    future.get();
+                } catch (ExecutionException excp) {
+                    if (excp.getCause() instanceof IOException) {
+                        throw (IOException) excp.getCause();
+                    }
+                    throw new IllegalStateException(excp.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        if (file != null) {
+            mNetwork.save(file);
+        }
+    }
+
+    /** Count GAME, just ended with SCORE, and, every REPORT games, report
+     *  and save the network to FILE (unless null). */
+    private void played(int score, HeadlessGame game, File file)
+            throws IOException {
+        mTotal.addAndGet(score);
+        if (Boards.maxExponent(game.getBoard()) >= WIN_EXPONENT) {
+            mWins.incrementAndGet();
+        }
+        long count = mGames.incrementAndGet();
+        if (count % REPORT == 0) {
+            synchronized (this) {
+                long total = mTotal.getAndSet(0), wins = mWins.getAndSet(0);
+                System.err.printf("%d games: mean score %.0f, %.1f%% won%n",
+                        count, total / (double) REPORT,
+                        100.0 * wins / REPORT);
+                if (file != null) {
+                    mNetwork.save(file);
+                }
+            }
+        }
+    }
+
+    /** Train as directed by ARGS:
+     *  <pre>
+     *  [--seed N] [--games N] [--threads N] [--rate R] [--out FILE]
+     *  </pre>
+     *  Plays N games (by default, GAMES) split among N threads (by default,
+     *  one per processor), with tiles drawn from PRNGs seeded by N (by
+     *  default, from the clock), learning at rate R (RATE).  If FILE
+     *  exists, training continues from the network saved there, which is
+     *  replaced every REPORT games and at the end; otherwise a network of
+     *  NTupleNetwork.STANDARD_TUPLES is trained from scratch.  The network
+     *  is saved only if FILE is given. */
+    public static void main(String[] args)
+            throws IOException, InterruptedException {
+        long seed = System.nanoTime(), games = GAMES;
+        int threads = Runtime.getRuntime().availableProcessors();
+        float rate = RATE;
+        File file = null;
+        for (int i = 0; i < args.length; i += 1) {
+            if (i + 1 == args.length) {
+                usage();
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--games":
+                    games = Long.parseLong(value);
+                    break;
+                case "--threads":
+                    threads = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "--rate":
+                    rate = Float.parseFloat(value);
+                    break;
+                case "--out":
+                    file = new File(value);
+                    break;
+                default:
+                    usage();
+                    break;
+            }
+            i += 1;
+        }
+
+        NTupleNetwork network;
+        if (file != null && file.exists()) {
+            network = NTupleNetwork.load(file, true);
+            System.err.printf("continuing %s%n", file);
+        } else {
+            network = new NTupleNetwork(NTupleNetwork.STANDARD_TUPLES);
+        }
+        System.err.printf("seed %d%n", seed);
+        long start = System.nanoTime();
+        new NTupleTrainer(network, rate).run(games, seed, threads, file);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%d games in %.1f s (%.0f games/minute)%n", games,
+                seconds, games * 60 / seconds);
+    }
+
+    /** Report correct usage and exit. */
+    private static void usage() {
+        System.err.println("Usage: NTupleTrainer [--seed N] [--games N]"
+                + " [--threads N] [--rate R] [--out FILE]");
+        System.exit(1);
+    }
+
+}
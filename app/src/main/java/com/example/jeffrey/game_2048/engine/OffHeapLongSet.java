@@ -0,0 +1,174 @@
+package com.example.jeffrey.game_2048.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/** A set of nonzero longs, such as packed boards, held outside the Java
+ *  heap so that billions of them cost the garbage collector nothing.
+ *
+ *  Keys are spread by hash over shards, each an open-addressed table with
+ *  linear probing in a direct buffer, locked separately so that many
+ *  threads can add at once.  A shard doubles when three-quarters full, up
+ *  to 2^MAX_SHARD_BITS slots.  Direct memory is limited by the JVM option
+ *  -XX:MaxDirectMemorySize, which should be raised for large sets.
+ *  @author Jeffrey Jacinto */
+public final class OffHeapLongSet {
+    /** Log 2 of the largest number of slots in a shard, filling a buffer
+     *  of 1GB (buffers are indexed by int). */
+    static final int MAX_SHARD_BITS = 27;
+    /** Log 2 of the initial number of slots in a shard. */
+    static final int INITIAL_SHARD_BITS = 12;
+
+    /** One table of the set.  Slot value 0 marks an empty slot. */
+    private static final class Shard {
+        /** The slots. */
+        LongBuffer table;
+        /** Mask selecting a slot. */
+        int mask;
+        /** Number of keys held. */
+        int size;
+
+        Shard(int bits) {
+            table = allocate(1 << bits);
+            mask = (1 << bits) - 1;
+        }
+
+        /** Add KEY, whose hash is HASH.  Return true iff it was absent. */
+        boolean add(long key, long hash) {
+            if (!insert(table, mask, key, hash)) {
+                return false;
+            }
+            size += 1;
+            if (size > mask - (mask >>> 2)) {
+                grow();
+            }
+            return true;
+        }
+
+        /** Return true iff I hold KEY, whose hash is HASH. */
+        boolean contains(long key, long hash) {
+            int slot = (int) hash & mask;
+            long found;
+            while ((found = table.get(slot)) != 0) {
+                if (found == key) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        /** Double my number of slots. */
+        private void grow() {
+            int slots = 2 * (mask + 1);
+            if (slots > (1 << MAX_SHARD_BITS)) {
+                throw new IllegalStateException("set is full");
+            }
+            LongBuffer larger = allocate(slots);
+            for (int slot = 0; slot <= mask; slot += 1) {
+                long key = table.get(slot);
+                if (key != 0) {
+                    insert(larger, slots - 1, key, hash(key));
+                }
+            }
+            table = larger;
+            mask = slots - 1;
+        }
+    }
+
+    /** The shards. */
+    private final Shard[] mShards;
+    /** Number of hash bits selecting a shard. */
+    private final int mShardBits;
+
+    /** An empty set of 2^SHARDBITS shards.  There should be many more
+     *  shards than threads adding to the set. */
+    public OffHeapLongSet(int shardBits) {
+        mShardBits = shardBits;
+        mShards = new Shard[1 << shardBits];
+        for (int i = 0; i < mShards.length; i += 1) {
+            mShards[i] = new Shard(INITIAL_SHARD_BITS);
+        }
+    }
+
+    /** Add KEY, which must not be 0.  Return true iff it was absent.  May
+     *  be called from any thread. */
+    public boolean add(long key) {
+        if (key == 0) {
+            throw new IllegalArgumentException("0 cannot be held");
+        }
+        long hash = hash(key);
+        Shard shard = shard(hash);
+        synchronized (shard) {
+            return shard.add(key, hash);
+        }
+    }
+
+    /** Return true iff I hold KEY.  May be called from any thread. */
+    public boolean contains(long key) {
+        long hash = hash(key);
+        Shard shard = shard(hash);
+        synchronized (shard) {
+            return shard.contains(key, hash);
+        }
+    }
+
+    /** Return the number of keys held. */
+    public long size() {
+        long size = 0;
+        for (Shard shard : mShards) {
+            synchronized (shard) {
+                size += shard.size;
+            }
+        }
+        return size;
+    }
+
+    /** Return the number of bytes of direct memory my tables occupy. */
+    public long getBytes() {
+        long bytes = 0;
+        for (Shard shard : mShards) {
+            synchronized (shard) {
+                bytes += 8L * (shard.mask + 1);
+            }
+        }
+        return bytes;
+    }
+
+    /** Return the shard holding keys whose hash is HASH. */
+    private Shard shard(long hash) {
+        return mShards[(int) (hash >>> (64 - mShardBits))];
+    }
+
+    /** Add KEY, whose hash is HASH, to TABLE, whose slots are selected by
+     *  MASK.  Return true iff it was absent. */
+    private static boolean insert(LongBuffer table, int mask, long key,
+                                  long hash) {
+        int slot = (int) hash & mask;
+        long found;
+        while ((found = table.get(slot)) != 0) {
+            if (found == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table.put(slot, key);
+        return true;
+    }
+
+    /** Return a direct buffer of SLOTS empty slots. */
+    private static LongBuffer allocate(int slots) {
+        return ByteBuffer.allocateDirect(8 * slots)
+                .order(ByteOrder.nativeOrder()).asLongBuffer();
+    }
+
+    /** Return a hash of KEY whose high bits (choosing a shard) and low
+     *  bits (choosing a slot) are both well mixed. */
+    static long hash(long key) {
+        key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+        key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.example.jeffrey.game_2048.engine;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/** Writes the games published by a MovePublisher as replays in the format
+ *  read by ReplayVerifier.  A replay is begun by each CLEARED event and
+ *  written out whole on the next GAME_ENDED event; games abandoned before
+ *  they end are discarded.  A won game that is played on is written again,
+ *  whole, when it ends, for a ReplayVerifier that plays on past wins.
+ *  Games joined part way through (LOADED), or from which events were
+ *  dropped, cannot be replayed, and are skipped until the next CLEARED
+ *  event.
+ *  @author Jeffrey Jacinto */
+public class ReplayRecorder implements MovePublisher.Subscriber {
+    /** Key names for the sides, indexed as numbered by Boards. */
+    static final String[] KEYS = { "Up", "Right", "Down", "Left" };
+
+    /** Destination of replays. */
+    private final Writer mOutput;
+    /** The replay of the game being recorded, or null if the current game
+     *  cannot be replayed. */
+    private StringBuilder mReplay;
+    /** First error writing to mOutput, or null. */
+    private IOException mError;
+
+    /** A recorder writing replays to OUTPUT. */
+    public ReplayRecorder(Writer output) {
+        mOutput = output;
+    }
+
+    /** Return the first error met writing replays, or null if none. */
+    public IOException getError() {
+        return mError;
+    }
+
+    @Override
+    public void onSubscribe(MovePublisher.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onEvent(MoveEvent event) {
+        switch (event.getType()) {
+            case CLEARED:
+                mReplay = new StringBuilder(ReplayVerifier.HEADER).append('\n');
+                break;
+            case LOADED:
+                mReplay = null;
+                break;
+            case SPAWNED:
+                if (mReplay != null) {
+                    mReplay.append("S ").append(event.getRow()).append(' ')
+                            .append(event.getCol()).append(' ')
+                            .append(event.getValue()).append('\n');
+                }
+                break;
+            case TURN_ENDED:
+                if (mReplay != null) {
+                    mReplay.append("M ").append(KEYS[event.getValue()])
+                            .append('\n');
+                }
+                break;
+            case GAME_ENDED:
+                if (mReplay != null) {
+                    GameSnapshot end = event.getSnapshot();
+                    int length = mReplay.length();
+                    mReplay.append("E ").append(end.getScore()).append(' ')
+                            .append(ReplayVerifier.formatBoard(
+                                    exponents(end)))
+                            .append('\n');
+                    write(mReplay);
+                    if (end.getStatus() == GameSnapshot.Status.WON) {
+                        mReplay.setLength(length);
+                    } else {
+                        mReplay = null;
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /** Return the exponents of the tiles of SNAPSHOT, row by row, including
+     *  those too large to pack. */
+    private static byte[] exponents(GameSnapshot snapshot) {
+        byte[] exponents = new byte[Boards.SQUARES];
+        for (int r = 0; r < Boards.SIZE; r += 1) {
+            for (int c = 0; c < Boards.SIZE; c += 1) {
+                exponents[r * Boards.SIZE + c] =
+                        (byte) snapshot.getExponent(r, c);
+            }
+        }
+        return exponents;
+    }
+
+        /** Write REPLAY to the output, noting the first error. */
+    private void write(CharSequence replay) {
+        try {
+            mOutput.append(replay);
+            mOutput.flush();
+        } catch (IOException excp) {
+            if (mError == null) {
+                mError = excp;
+            }
+        }
+    }
+
+    @Override
+    public void onDropped(int count) {
+        mReplay = null;
+    }
+
+}
@@ -0,0 +1,371 @@
+package com.example.jeffrey.game_2048.engine;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Re-executes recorded games against the rules of GameMain to check that
+ *  a claimed final board and score could really have been reached.
+ *
+ *  A replay is a text stream, read one line at a time:
+ *  <pre>
+ *  2048-replay 1
+ *  S ROW COL VALUE     a tile of VALUE (2 or 4) spawned at (ROW, COL)
+ *  M KEY               a tilt, KEY being "Up", "Down", "Left" or "Right"
+ *  ...
+ *  E SCORE BOARD       the claimed final score and packed board (hex)
+ *  </pre>
+ *  A board with tiles above 2^Boards.MAX_EXPONENT, made by play beyond a
+ *  win, does not pack; its BOARD is written with two hex digits for each
+ *  square instead of one, in the same order.  Such tiles still merge, as
+ *  they do in GameMain.
+ *  A game opens with two spawns, and every move is followed by exactly one
+ *  spawn, even the move that wins.  Moves must change the board, may not
+ *  follow a win unless the verifier plays on past wins (as the app does
+ *  when a won game is moved on), and spawns must land on empty squares.
+ *  Blank lines and lines starting with '#' are ignored.
+ *  @author Jeffrey Jacinto */
+public class ReplayVerifier {
+    /** First line of every replay. */
+    public static final String HEADER = "2048-replay 1";
+    /** Exponent of the winning tile, ending the game. */
+    static final int WIN_EXPONENT = Rules.STANDARD.getWinRank();
+    /** Most fields in a record. */
+    static final int MAX_FIELDS = 4;
+
+    /** True iff moves may follow a win. */
+    private final boolean mKeepPlaying;
+
+    /** A verifier of replays that end at a win, if not before. */
+    public ReplayVerifier() {
+        this(false);
+    }
+
+    /** A verifier of replays that may, if KEEPPLAYING, go on past a win
+     *  until no move is left. */
+    public ReplayVerifier(boolean keepPlaying) {
+        mKeepPlaying = keepPlaying;
+    }
+
+    /** Outcome of verifying one replay. */
+    public static class Result {
+        /** Name of the replay checked. */
+        public final String name;
+        /** True iff the replay is legal and its claims hold. */
+        public final boolean valid;
+        /** Reason for rejection, or null if valid. */
+        public final String reason;
+        /** Line at which the replay was rejected, or 0 if valid. */
+        public final int line;
+        /** Number of moves re-executed. */
+        public final int moves;
+
+        Result(String name, boolean valid, String reason, int line,
+               int moves) {
+            this.name = name;
+            this.valid = valid;
+            this.reason = reason;
+            this.line = line;
+            this.moves = moves;
+        }
+
+        @Override
+        public String toString() {
+            if (valid) {
+                return String.format("%s: ok (%d moves)", name, moves);
+            }
+            return String.format("%s:%d: %s", name, line, reason);
+        }
+    }
+
+    /** Thrown internally when a replay breaks the rules. */
+    private static class Rejected extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        Rejected(String msg, Object... args) {
+            super(String.format(msg, args));
+        }
+    }
+
+    /** Return the result of verifying the replay read from INPUT, whose
+     *  name (for reporting) is NAME.  INPUT is read sequentially and never
+     *  held in memory as a whole. */
+    public Result verify(String name, Reader input) throws IOException {
+        BufferedReader reader = new BufferedReader(input);
+        long board = 0;
+        // the board unpacked, once it holds a tile that packed boards
+        // cannot merge, or null
+        byte[] wide = null;
+        int score = 0, moves = 0, lineNo = 0, spawnsDue = 2;
+        boolean over = false;
+        try {
+            String line = reader.readLine();
+            lineNo = 1;
+            if (line == null || !line.trim().equals(HEADER)) {
+                throw new Rejected("missing header \"%s\"", HEADER);
+            }
+            while ((line = reader.readLine()) != null) {
+                lineNo += 1;
+                String[] fields = split(line);
+                if (fields.length == 0 || fields[0].charAt(0) == '#') {
+                    continue;
+                }
+                switch (fields[0]) {
+                    case "S": {
+                        checkArity(fields, 4);
+                        if (spawnsDue == 0) {
+                            throw new Rejected("unexpected spawn");
+                        }
+                        int row = field(fields, 1), col = field(fields, 2);
+                        int value = field(fields, 3);
+                        if (row < 0 || row >= Boards.SIZE
+                                || col < 0 || col >= Boards.SIZE) {
+                            throw new Rejected("no square at (%d, %d)",
+                                    row, col);
+                        }
+                        if (value != 2 && value != 4) {
+                            throw new Rejected("impossible spawn value %d",
+                                    value);
+                        }
+                        int square = row * Boards.SIZE + col;
+                        if (wide != null ? wide[square] != 0
+                                : Boards.get(board, row, col) != 0) {
+                            throw new Rejected("spawn on occupied square "
+                                    + "(%d, %d)", row, col);
+                        }
+                        if (wide != null) {
+                            wide[square] = (byte) Boards.exponentOf(value);
+                        } else {
+                            board = Boards.set(board, row, col,
+                                    Boards.exponentOf(value));
+                        }
+                        spawnsDue -= 1;
+                        break;
+                    }
+                    case "M": {
+                        checkArity(fields, 2);
+                        if (spawnsDue != 0) {
+                            throw new Rejected("move before spawn");
+                        }
+                        if (over && !mKeepPlaying) {
+                            throw new Rejected("move after win");
+                        }
+                        int side = keyToSide(fields[1]);
+                        if (wide == null && Boards.maxExponent(board)
+                                == Boards.MAX_EXPONENT) {
+                            wide = unpack(board);
+                        }
+                        if (wide != null) {
+                            int gained = Boards.tiltWide(wide, side);
+                            if (gained < 0) {
+                                throw new Rejected("illegal tilt %s",
+                                        fields[1]);
+                            }
+                            score += gained;
+                        } else {
+                            long next = Boards.move(board, side);
+                            if (next == board) {
+                                throw new Rejected("illegal tilt %s",
+                                        fields[1]);
+                            }
+                            score += Boards.score(board, side);
+                            board = next;
+                        }
+                        moves += 1;
+                        over = wide != null
+                                || Boards.maxExponent(board) >= WIN_EXPONENT;
+                        spawnsDue = 1;
+                        break;
+                    }
+                    case "E": {
+                        checkArity(fields, 3);
+                        if (spawnsDue != 0) {
+                            throw new Rejected("missing spawn");
+                        }
+                        int claimed = field(fields, 1);
+                        byte[] claimedBoard = parseBoard(fields[2]);
+                        byte[] replayed = wide != null ? wide : unpack(board);
+                        if (claimed != score) {
+                            throw new Rejected("score mismatch: claimed %d,"
+                                    + " replayed %d", claimed, score);
+                        }
+                        if (!Arrays.equals(claimedBoard, replayed)) {
+                            throw new Rejected("board mismatch: claimed %s,"
+                                    + " replayed %s", fields[2],
+                                    formatBoard(replayed));
+                        }
+                        return new Result(name, true, null, 0, moves);
+                    }
+                    default:
+                        throw new Rejected("unknown record \"%s\"", fields[0]);
+                }
+            }
+            throw new Rejected("missing end record");
+        } catch (Rejected excp) {
+            return new Result(name, false, excp.getMessage(), lineNo, moves);
+        } catch (NumberFormatException excp) {
+            return new Result(name, false, "malformed number", lineNo, moves);
+        }
+    }
+
+    /** Return the result of verifying the replay in FILE. */
+    public Result verify(File file) throws IOException {
+        Reader input = new InputStreamReader(new FileInputStream(file),
+                Charset.forName("UTF-8"));
+        try {
+            return verify(file.getName(), input);
+        } finally {
+            input.close();
+        }
+    }
+
+    /** Verify all of FILES, using THREADS threads, and return their results
+     *  in the same order.  A file that cannot be read is reported as
+     *  rejected at line 0. */
+    public List<Result> verifyAll(List<File> files, int threads)
+            throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Result>> pending = new ArrayList<>(files.size());
+            for (final File file : files) {
+                pending.add(pool.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() throws IOException {
+                        return verify(file);
+                    }
+                }));
+            }
+            List<Result> results = new ArrayList<>(files.size());
+            for (int i = 0; i < files.size(); i += 1) {
+                try {
+                    results.add(pending.get(i).get());
+                } catch (ExecutionException excp) {
+                    results.add(new Result(files.get(i).getName(), false,
+                            String.valueOf(excp.getCause()), 0, 0));
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Return the whitespace-separated fields of LINE, but no more than
+     *  MAX_FIELDS + 1, so that a line with too many fields for any record
+     *  is still told from one with MAX_FIELDS.  Cheaper than String.split,
+     *  which compiles a pattern on every call. */
+    static String[] split(String line) {
+        String[] fields = new String[MAX_FIELDS + 1];
+        int n = 0, len = line.length(), k = 0;
+        while (k < len && n < fields.length) {
+            while (k < len && Character.isWhitespace(line.charAt(k))) {
+                k += 1;
+            }
+            int start = k;
+            while (k < len && !Character.isWhitespace(line.charAt(k))) {
+                k += 1;
+            }
+            if (k > start) {
+                fields[n] = line.substring(start, k);
+                n += 1;
+            }
+        }
+        if (n < fields.length) {
+            String[] result = new String[n];
+            System.arraycopy(fields, 0, result, 0, n);
+            return result;
+        }
+        return fields;
+    }
+
+    /** Return the exponents, row by row, of the board written in hex as
+     *  TEXT, either packed (one digit a square) or wide (two).  Unlike
+     *  Long.parseLong, accepts packed boards whose top bit is set. */
+    static byte[] parseBoard(String text) {
+        int digits;
+        if (text.length() == Boards.SQUARES) {
+            digits = 1;
+        } else if (text.length() == 2 * Boards.SQUARES) {
+            digits = 2;
+        } else {
+            throw new NumberFormatException(text);
+        }
+        byte[] exponents = new byte[Boards.SQUARES];
+        for (int k = 0; k < text.length(); k += 1) {
+            int digit = Character.digit(text.charAt(k), 16);
+            if (digit < 0) {
+                throw new NumberFormatException(text);
+            }
+            int square = Boards.SQUARES - 1 - k / digits;
+            exponents[square] = (byte) ((exponents[square] << 4) | digit);
+        }
+        return exponents;
+    }
+
+    /** Return EXPONENTS, a board held row by row, written in hex as read
+     *  by parseBoard: packed if it fits, and wide otherwise. */
+    static String formatBoard(byte[] exponents) {
+        int digits = 1;
+        for (byte exponent : exponents) {
+            if (exponent > Boards.MAX_EXPONENT) {
+                digits = 2;
+            }
+        }
+        StringBuilder text = new StringBuilder(digits * Boards.SQUARES);
+        for (int square = Boards.SQUARES - 1; square >= 0; square -= 1) {
+            if (digits == 2) {
+                text.append(Character.forDigit(exponents[square] >> 4, 16));
+            }
+            text.append(Character.forDigit(exponents[square] & 0xF, 16));
+        }
+        return text.toString();
+    }
+
+    /** Return the exponents of packed BOARD, row by row. */
+    static byte[] unpack(long board) {
+        byte[] exponents = new byte[Boards.SQUARES];
+        for (int i = 0; i < Boards.SQUARES; i += 1) {
+            exponents[i] = (byte) ((board >>> (4 * i)) & 0xF);
+        }
+        return exponents;
+    }
+
+    /** Check that FIELDS, a record, has exactly N fields. */
+    private static void checkArity(String[] fields, int n) throws Rejected {
+        if (fields.length != n) {
+            throw new Rejected("malformed %s record: %d fields, not %d",
+                    fields[0], fields.length, n);
+        }
+    }
+
+    /** Return field K of FIELDS as an integer. */
+    private static int field(String[] fields, int k) throws Rejected {
+        if (k >= fields.length) {
+            throw new Rejected("missing field %d", k);
+        }
+        return Integer.parseInt(fields[k]);
+    }
+
+    /** Return the side indicated by KEY ("Up", "Down", "Left",
+     *  or "Right"). */
+    static int keyToSide(String key) throws Rejected {
+        try {
+            return Boards.keyToSide(key);
+        } catch (IllegalArgumentException excp) {
+            throw new Rejected("unknown key designation \"%s\"", key);
+        }
+    }
+
+}
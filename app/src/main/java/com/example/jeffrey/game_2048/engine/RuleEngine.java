@@ -0,0 +1,274 @@
+package com.example.jeffrey.game_2048.engine;
+
+/** A variant of the rules of 2048, compiled into tables when a game
+ *  starts, so that it is played by table lookups like Boards rather than
+ *  by consulting its Rules at every move.
+ *
+ *  Boards are packed as by Boards, holding ranks (see Rules); sides are
+ *  numbered as in Boards.  A RuleEngine is immutable and may be shared by
+ *  any number of threads and games.
+ *  @author Jeffrey Jacinto */
+public final class RuleEngine {
+    /** The standard rules of GameMain, compiled. */
+    public static final RuleEngine STANDARD = new RuleEngine(Rules.STANDARD);
+
+    /** Spawns draw 24 bits for the rank of the tile. */
+    private static final int SPAWN_BITS = 24;
+
+    /** The rules compiled. */
+    private final Rules mRules;
+    /** Number of rows and of columns. */
+    private final int mSize;
+    /** mLeft[ROW] is ROW tilted toward column 0, and mRight[ROW] is ROW
+     *  tilted toward column getSize() - 1. */
+    private final char[] mLeft = new char[1 << 16], mRight = new char[1 << 16];
+    /** The scores gained by those tilts. */
+    private final int[] mLeftScore = new int[1 << 16],
+            mRightScore = new int[1 << 16];
+    /** mWon[ROW] is true iff ROW holds a winning tile. */
+    private final boolean[] mWon = new boolean[1 << 16];
+    /** A spawn is of rank mSpawnRanks[K] for the least K such that its
+     *  24 random bits are below mSpawnThresholds[K]. */
+    private final int[] mSpawnRanks, mSpawnThresholds;
+    /** mValues[R] is the value of tiles of rank R. */
+    private final int[] mValues = new int[Boards.MAX_EXPONENT + 1];
+
+    /** The tables for RULES. */
+    RuleEngine(Rules rules) {
+        mRules = rules;
+        mSize = rules.getSize();
+        Rules.MergeRule merge = rules.getMergeRule();
+        for (int rank = 1; rank <= Boards.MAX_EXPONENT; rank += 1) {
+            mValues[rank] = merge.value(rank);
+        }
+        int[] line = new int[mSize], result = new int[mSize];
+        int rows = 1 << (4 * mSize);
+        for (int row = 0; row < rows; row += 1) {
+            for (int c = 0; c < mSize; c += 1) {
+                line[c] = (row >>> (4 * c)) & 0xF;
+                mWon[row] |= line[c] >= rules.getWinRank();
+            }
+            mLeftScore[row] = tiltLeft(line, result, merge);
+            int left = 0, right = 0;
+            for (int c = 0; c < mSize; c += 1) {
+                left |= result[c] << (4 * c);
+                right |= result[c] << (4 * (mSize - 1 - c));
+            }
+            mLeft[row] = (char) left;
+            int reversed = reverse(row);
+            mRight[reversed] = (char) right;
+            mRightScore[reversed] = mLeftScore[row];
+        }
+
+        mSpawnRanks = rules.getSpawnRanks();
+        double[] weights = rules.getSpawnWeights();
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        mSpawnThresholds = new int[weights.length];
+        double sum = 0;
+        for (int k = 0; k < weights.length; k += 1) {
+            sum += weights[k];
+            mSpawnThresholds[k] = (int) Math.min(1 << SPAWN_BITS,
+                    Math.ceil(sum / total * (1 << SPAWN_BITS)));
+        }
+        mSpawnThresholds[weights.length - 1] = 1 << SPAWN_BITS;
+    }
+
+    /** Store LINE tilted toward its first square into RESULT, and return
+     *  the score gained, merging by MERGE as GameMain.tiltBoard does. */
+    private static int tiltLeft(int[] line, int[] result, Rules.MergeRule merge) {
+        int score = 0, dest = 0;
+        boolean merged = false;
+        for (int c = 0; c < result.length; c += 1) {
+            result[c] = 0;
+        }
+        for (int rank : line) {
+            if (rank == 0) {
+                continue;
+            }
+            int made = dest == 0 || merged ? 0
+                    : merge.merge(rank, result[dest - 1]);
+            if (made != 0) {
+                result[dest - 1] = made;
+                score += merge.value(made);
+                merged = true;
+            } else {
+                result[dest] = rank;
+                dest += 1;
+                merged = false;
+            }
+        }
+        return score;
+    }
+
+    /** Return ROW, of getSize() squares, with its squares in reverse
+     *  order. */
+    private int reverse(int row) {
+        int result = 0;
+        for (int c = 0; c < mSize; c += 1) {
+            result |= ((row >>> (4 * c)) & 0xF) << (4 * (mSize - 1 - c));
+        }
+        return result;
+    }
+
+    /** Return the rules I was compiled from. */
+    public Rules getRules() {
+        return mRules;
+    }
+
+    /** Return the number of rows and of columns. */
+    public int getSize() {
+        return mSize;
+    }
+
+    /** Return BOARD with every row looked up in TABLE. */
+    private static long tiltRows(long board, char[] table) {
+        return (long) table[(int) (board & Boards.ROW_MASK)]
+                | ((long) table[(int) ((board >>> 16) & Boards.ROW_MASK)] << 16)
+                | ((long) table[(int) ((board >>> 32) & Boards.ROW_MASK)] << 32)
+                | ((long) table[(int) (board >>> 48)] << 48);
+    }
+
+    /** Return the sum of the scores in TABLE of the rows of BOARD. */
+    private static int scoreRows(long board, int[] table) {
+        return table[(int) (board & Boards.ROW_MASK)]
+                + table[(int) ((board >>> 16) & Boards.ROW_MASK)]
+                + table[(int) ((board >>> 32) & Boards.ROW_MASK)]
+                + table[(int) (board >>> 48)];
+    }
+
+    /** Return the result of tilting BOARD toward SIDE. */
+    public long move(long board, int side) {
+        switch (side) {
+            case Boards.NORTH:
+                return Boards.transpose(tiltRows(Boards.transpose(board),
+                        mLeft));
+            case Boards.EAST:
+                return tiltRows(board, mRight);
+            case Boards.SOUTH:
+                return Boards.transpose(tiltRows(Boards.transpose(board),
+                        mRight));
+            case Boards.WEST:
+                return tiltRows(board, mLeft);
+            default:
+                throw new IllegalArgumentException("Unknown direction");
+        }
+    }
+
+    /** Return the score gained by tilting BOARD toward SIDE. */
+    public int score(long board, int side) {
+        switch (side) {
+            case Boards.NORTH:
+                return scoreRows(Boards.transpose(board), mLeftScore);
+            case Boards.EAST:
+                return scoreRows(board, mRightScore);
+            case Boards.SOUTH:
+                return scoreRows(Boards.transpose(board), mRightScore);
+            case Boards.WEST:
+                return scoreRows(board, mLeftScore);
+            default:
+                throw new IllegalArgumentException("Unknown direction");
+        }
+    }
+
+    /** Return true iff some tilt changes BOARD. */
+    public boolean canMove(long board) {
+        for (int side = Boards.NORTH; side <= Boards.WEST; side += 1) {
+            if (move(board, side) != board) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return true iff BOARD holds a winning tile. */
+    public boolean isWon(long board) {
+        return mWon[(int) (board & Boards.ROW_MASK)]
+                || mWon[(int) ((board >>> 16) & Boards.ROW_MASK)]
+                || mWon[(int) ((board >>> 32) & Boards.ROW_MASK)]
+                || mWon[(int) (board >>> 48)];
+    }
+
+    /** Return the number of empty squares on BOARD. */
+    public int countEmpty(long board) {
+        int empty = 0;
+        for (int r = 0; r < mSize; r += 1) {
+            for (int c = 0; c < mSize; c += 1) {
+                if (Boards.get(board, r, c) == 0) {
+                    empty += 1;
+                }
+            }
+        }
+        return empty;
+    }
+
+    /** Return a random spawn on a board with EMPTY empty squares, made
+     *  from a single draw from RANDOM.  Its square, numbered among the
+     *  empty squares in row-major order, is spawnIndex(result), and the
+     *  rank of its tile is spawnRank(result).  For the standard rules, the
+     *  same spawn as RANDOM.nextSpawn(EMPTY). */
+    public int nextSpawn(int empty, SpawnRandom random) {
+        if (empty <= 0) {
+            throw new IllegalArgumentException("no empty squares");
+        }
+        long bits = random.nextLong();
+        int index = (int) (((bits >>> 32) * empty) >>> 32);
+        int draw = (int) bits >>> (32 - SPAWN_BITS), k = 0;
+        while (draw >= mSpawnThresholds[k]) {
+            k += 1;
+        }
+        return (index << 4) | mSpawnRanks[k];
+    }
+
+    /** Return the index among the empty squares of SPAWN, as returned by
+     *  nextSpawn. */
+    public static int spawnIndex(int spawn) {
+        return spawn >>> 4;
+    }
+
+    /** Return the rank of the tile of SPAWN, as returned by nextSpawn. */
+    public static int spawnRank(int spawn) {
+        return spawn & 0xF;
+    }
+
+    /** Return BOARD with a tile added to one of its empty squares, chosen
+     *  with a single draw from RANDOM, or BOARD itself if it is full.  For
+     *  the standard rules, the same spawn as RANDOM.spawnOn(BOARD). */
+    public long spawnOn(long board, SpawnRandom random) {
+        int empty = countEmpty(board);
+        if (empty == 0) {
+            return board;
+        }
+        int spawn = nextSpawn(empty, random);
+        int index = spawnIndex(spawn);
+        for (int r = 0; r < mSize; r += 1) {
+            for (int c = 0; c < mSize; c += 1) {
+                if (Boards.get(board, r, c) == 0) {
+                    if (index == 0) {
+                        return Boards.set(board, r, c, spawnRank(spawn));
+                    }
+                    index -= 1;
+                }
+            }
+        }
+        throw new AssertionError("empty square not found");
+    }
+
+    /** Return the value of tiles of rank RANK, or 0 if RANK is 0. */
+    public int valueOf(int rank) {
+        return mValues[rank];
+    }
+
+    /** Return the rank of tiles of VALUE, or 0 if VALUE is 0. */
+    public int rankOf(int value) {
+        for (int rank = 0; rank <= Boards.MAX_EXPONENT; rank += 1) {
+            if (mValues[rank] == value) {
+                return rank;
+            }
+        }
+        throw new IllegalArgumentException("not a tile value: " + value);
+    }
+
+}
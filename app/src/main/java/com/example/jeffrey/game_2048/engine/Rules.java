@@ -0,0 +1,203 @@
+package com.example.jeffrey.game_2048.engine;
+
+import java.util.Arrays;
+
+/** A description of a variant of the rules of 2048: the size of the board,
+ *  how tiles merge, which tiles spawn and how often, and which tile wins.
+ *  Rules are compiled by RuleEngine into tables, so that every variant is
+ *  played as fast as the standard game.
+ *
+ *  Tiles are held on packed boards as in Boards, each square holding a
+ *  rank from 1 to Boards.MAX_EXPONENT (0 being empty), whose meaning is
+ *  given by the merge rule.  Boards smaller than 4 x 4 use the top left
+ *  corner of a packed board.  Tilts always follow GameMain.tiltBoard:
+ *  tiles slide toward the chosen side, the tiles nearest that side merge
+ *  first, and no tile merges twice in one turn.
+ *  @author Jeffrey Jacinto */
+public final class Rules {
+    /** How tiles merge, and what they are worth. */
+    public interface MergeRule {
+        /** Return the rank of the tile made when a tile of rank MOVING
+         *  slides into one of rank RESTING, or 0 if they do not merge.
+         *  Both ranks are positive. */
+        int merge(int moving, int resting);
+
+        /** Return the value of a tile of rank RANK, which is also the
+         *  score gained by making it in a merge. */
+        int value(int rank);
+    }
+
+    /** Standard merges: tiles of 2^R have rank R, and equal tiles merge
+     *  into their sum. */
+    public static final MergeRule POWERS_OF_TWO = new MergeRule() {
+        @Override
+        public int merge(int moving, int resting) {
+            return moving == resting && moving < Boards.MAX_EXPONENT
+                    ? moving + 1 : 0;
+        }
+
+        @Override
+        public int value(int rank) {
+            return 1 << rank;
+        }
+    };
+
+    /** Fibonacci merges: tiles are Fibonacci numbers 1, 2, 3, 5, 8, ...
+     *  (of ranks 1, 2, 3, ...), and two 1s, or any two consecutive
+     *  numbers, merge into their sum. */
+    public static final MergeRule FIBONACCI = new MergeRule() {
+        @Override
+        public int merge(int moving, int resting) {
+            int high = Math.max(moving, resting);
+            boolean consecutive = Math.abs(moving - resting) == 1
+                    || (moving == 1 && resting == 1);
+            return consecutive && high < Boards.MAX_EXPONENT ? high + 1 : 0;
+        }
+
+        @Override
+        public int value(int rank) {
+            int a = 1, b = 1;
+            for (int r = 0; r < rank; r += 1) {
+                int c = a + b;
+                a = b;
+                b = c;
+            }
+            return a;
+        }
+    };
+
+    /** Merges in the style of Threes: a 1 and a 2 make a 3, and equal
+     *  tiles from 3 up merge into their sum.  Ranks 1, 2 and 3 are the
+     *  tiles 1, 2 and 3, and rank R above 3 is 3 * 2^(R - 3). */
+    public static final MergeRule THREES = new MergeRule() {
+        @Override
+        public int merge(int moving, int resting) {
+            if (moving + resting == 3) {
+                return 3;
+            }
+            return moving == resting && moving >= 3
+                    && moving < Boards.MAX_EXPONENT ? moving + 1 : 0;
+        }
+
+        @Override
+        public int value(int rank) {
+            return rank <= 3 ? rank : 3 << (rank - 3);
+        }
+    };
+
+    /** The rules of GameMain. */
+    public static final Rules STANDARD = new Rules("standard", 4,
+            POWERS_OF_TWO, new int[] { 1, 2 },
+            new double[] { SpawnRandom.LOW_TILE_PROBABILITY,
+                           1 - SpawnRandom.LOW_TILE_PROBABILITY }, 11);
+    /** Standard rules on a 3 x 3 board, won at 512. */
+    public static final Rules SMALL = new Rules("3x3", 3, POWERS_OF_TWO,
+            new int[] { 1, 2 },
+            new double[] { SpawnRandom.LOW_TILE_PROBABILITY,
+                           1 - SpawnRandom.LOW_TILE_PROBABILITY }, 9);
+    /** Fibonacci tiles, spawning 1s and 2s, won at 987, the largest that
+     *  fits a square. */
+    public static final Rules FIBONACCI_RULES = new Rules("fibonacci", 4,
+            FIBONACCI, new int[] { 1, 2 }, new double[] { 0.75, 0.25 },
+            Boards.MAX_EXPONENT);
+    /** Threes-style tiles, spawning 1s, 2s and 3s equally, won at 6144. */
+    public static final Rules THREES_RULES = new Rules("threes", 4, THREES,
+            new int[] { 1, 2, 3 }, new double[] { 1, 1, 1 }, 14);
+
+    /** Name of the variant. */
+    private final String mName;
+    /** Number of rows and of columns. */
+    private final int mSize;
+    /** How tiles merge. */
+    private final MergeRule mMerge;
+    /** Ranks of the tiles spawned, and their relative weights. */
+    private final int[] mSpawnRanks;
+    private final double[] mSpawnWeights;
+    /** Least rank that wins. */
+    private final int mWinRank;
+
+    /** Rules called NAME for a SIZE x SIZE board (SIZE from 2 to 4), with
+     *  tiles merging by MERGE, spawning tiles of rank SPAWNRANKS[k] with
+     *  relative weight SPAWNWEIGHTS[k], and won on making a tile of rank
+     *  WINRANK or more. */
+    public Rules(String name, int size, MergeRule merge, int[] spawnRanks,
+                 double[] spawnWeights, int winRank) {
+        if (size < 2 || size > Boards.SIZE) {
+            throw new IllegalArgumentException("board size must be from 2"
+                    + " to " + Boards.SIZE);
+        }
+        if (spawnRanks.length == 0
+                || spawnRanks.length != spawnWeights.length) {
+            throw new IllegalArgumentException("bad spawn distribution");
+        }
+        for (int k = 0; k < spawnRanks.length; k += 1) {
+            if (spawnRanks[k] < 1 || spawnRanks[k] > Boards.MAX_EXPONENT
+                    || !(spawnWeights[k] > 0)) {
+                throw new IllegalArgumentException("bad spawn distribution");
+            }
+        }
+        if (winRank < 1 || winRank > Boards.MAX_EXPONENT) {
+            throw new IllegalArgumentException("bad winning rank");
+        }
+        mName = name;
+        mSize = size;
+        mMerge = merge;
+        mSpawnRanks = spawnRanks.clone();
+        mSpawnWeights = spawnWeights.clone();
+        mWinRank = winRank;
+    }
+
+    /** Return the predefined rules called NAME. */
+    public static Rules named(String name) {
+        for (Rules rules : new Rules[] {
+                STANDARD, SMALL, FIBONACCI_RULES, THREES_RULES }) {
+            if (rules.getName().equals(name)) {
+                return rules;
+            }
+        }
+        throw new IllegalArgumentException("unknown rules: " + name);
+    }
+
+    /** Return my name. */
+    public String getName() {
+        return mName;
+    }
+
+    /** Return the number of rows and of columns. */
+    public int getSize() {
+        return mSize;
+    }
+
+    /** Return my merge rule. */
+    public MergeRule getMergeRule() {
+        return mMerge;
+    }
+
+    /** Return the ranks of the tiles spawned. */
+    public int[] getSpawnRanks() {
+        return mSpawnRanks.clone();
+    }
+
+    /** Return the relative weights of the tiles spawned. */
+    public double[] getSpawnWeights() {
+        return mSpawnWeights.clone();
+    }
+
+    /** Return the least rank that wins. */
+    public int getWinRank() {
+        return mWinRank;
+    }
+
+    /** Return my rules compiled into tables. */
+    public RuleEngine compile() {
+        return new RuleEngine(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%dx%d, spawns %s, wins at %d)", mName,
+                mSize, mSize, Arrays.toString(mSpawnRanks),
+                mMerge.value(mWinRank));
+    }
+
+}
@@ -0,0 +1,436 @@
+package com.example.jeffrey.game_2048.engine;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Plays games of 2048 without a display, from scripts of key presses.
+ *
+ *  A script is a text stream of lines, each one of
+ *  <pre>
+ *  KEY  or  M KEY      a key press: "Up", "Down", "Left" or "Right"
+ *  New Game            ends the current game and starts another
+ *  Quit                ends the script
+ *  S ROW COL VALUE     a spawn (used only when testing)
+ *  </pre>
+ *  Blank lines, lines starting with '#' and the end records of replays
+ *  are ignored, and the header of a replay starts a new game unless the
+ *  current one has not begun, so logs of replays (see ReplayVerifier) are
+ *  scripts too.
+ *  Key presses that change nothing are ignored, as in the app.  So are
+ *  those that come after a win, unless playing on past wins, as the app
+ *  does when a won game is moved on; replays of games played on are
+ *  checked by a ReplayVerifier that plays on too.  Random tiles come from
+ *  a Xoroshiro128 seeded afresh for each script, so runs with the same
+ *  seed are identical.  Games are played by the standard rules, or by a
+ *  variant compiled into a RuleEngine; replays of variants give tile
+ *  values under their rules, and so cannot be checked by ReplayVerifier.
+ *  Boards are packed, so two 2^Boards.MAX_EXPONENT tiles never merge
+ *  here, as they do in the app and in ReplayVerifier; a game played on
+ *  that far no longer verifies.
+ *  When testing, random tiles are instead read from the script's spawns,
+ *  which must follow every move, and the game opens with the first two.
+ *
+ *  When logging, every game played is written as a replay: every spawn,
+ *  every key press that moved tiles, and the final score and board.  So a
+ *  log can be checked with ReplayVerifier, or run again when testing to
+ *  reproduce the game exactly.
+ *  @author Jeffrey Jacinto */
+public class ScriptRunner {
+    /** Reader buffer size for script files. */
+    private static final int BUFFER = 1 << 16;
+
+    /** Outcome of running one script. */
+    public static class Stats {
+        /** Name of the script. */
+        public final String name;
+        /** Number of games and of moves played. */
+        public final int games, moves;
+        /** Running time (nanoseconds). */
+        public final long nanos;
+        /** Reason the script was abandoned, or null if it ran to the end. */
+        public final String error;
+        /** Line at which the script was abandoned, or 0. */
+        public final int line;
+
+        Stats(String name, int games, int moves, long nanos, String error,
+              int line) {
+            this.name = name;
+            this.games = games;
+            this.moves = moves;
+            this.nanos = nanos;
+            this.error = error;
+            this.line = line;
+        }
+
+        /** Return the moves played per second. */
+        public double getMovesPerSecond() {
+            return nanos == 0 ? 0 : moves * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            String result = String.format("%s: %d games, %d moves, %.1f ms,"
+                    + " %.0f moves/s", name, games, moves, nanos / 1e6,
+                    getMovesPerSecond());
+            if (error != null) {
+                result += String.format(" (abandoned at line %d: %s)", line,
+                        error);
+            }
+            return result;
+        }
+    }
+
+    /** A script that cannot be run. */
+    private static class Abandoned extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        Abandoned(String msg, Object... args) {
+            super(String.format(msg, args));
+        }
+    }
+
+    /** Seed for the random tiles of each script. */
+    private final long mSeed;
+    /** The rules played. */
+    private final RuleEngine mEngine;
+    /** True iff random tiles come from the scripts. */
+    private final boolean mTesting;
+    /** True iff play goes on past a win. */
+    private final boolean mKeepPlaying;
+    /** Destination of game logs, or null. */
+    private final Writer mLog;
+
+    /** The game being played: its board, score and number of moves, the
+     *  number of scripted spawns it awaits, and the number of games
+     *  played. */
+    private long mBoard;
+    private int mScore, mMoves, mSpawnsDue, mGames;
+    /** The replay of the game being played, if logging. */
+    private final StringBuilder mReplay = new StringBuilder();
+    /** Source of random tiles when not testing. */
+    private SpawnRandom mRandom;
+
+    /** A runner of standard games whose random tiles are seeded with SEED,
+     *  or read from the scripts if TESTING, logging games to LOG unless it
+     *  is null. */
+    public ScriptRunner(long seed, boolean testing, Writer log) {
+        this(seed, testing, log, RuleEngine.STANDARD);
+    }
+
+    /** A runner as above of games played by ENGINE. */
+    public ScriptRunner(long seed, boolean testing, Writer log,
+                        RuleEngine engine) {
+        this(seed, testing, log, engine, false);
+    }
+
+    /** A runner as above whose games go on past a win, until no move is
+     *  left, iff KEEPPLAYING. */
+    public ScriptRunner(long seed, boolean testing, Writer log,
+                        RuleEngine engine, boolean keepPlaying) {
+        mSeed = seed;
+        mEngine = engine;
+        mTesting = testing;
+        mKeepPlaying = keepPlaying;
+        mLog = log;
+    }
+
+    /** Run the script read from INPUT, called NAME. */
+    public Stats run(String name, Reader input) throws IOException {
+        BufferedReader reader = new BufferedReader(input, BUFFER);
+        long start = System.nanoTime();
+        int totalMoves = 0, lineNo = 0;
+        mRandom = new Xoroshiro128(mSeed);
+        mGames = 0;
+        String error = null;
+        try {
+            newGame();
+            String line;
+            Script:
+            while ((line = reader.readLine()) != null) {
+                lineNo += 1;
+                String[] fields = ReplayVerifier.split(line);
+                if (fields.length == 0 || fields[0].charAt(0) == '#') {
+                    continue;
+                }
+                switch (fields[0]) {
+                    case "M":
+                        totalMoves += press(fields.length > 1 ? fields[1] : "");
+                        break;
+                    case "Up": case "Down": case "Left": case "Right":
+                        totalMoves += press(fields[0]);
+                        break;
+                    case "S":
+                        if (mTesting) {
+                            spawn(fields);
+                        }
+                        break;
+                    case "New":
+                        if (fields.length != 2 || !fields[1].equals("Game")) {
+                            throw new Abandoned("unknown command \"%s\"",
+                                    line.trim());
+                        }
+                        endGame();
+                        newGame();
+                        break;
+                    case "Quit":
+                        break Script;
+                    case "E":
+                        break;
+                    default:
+                        if (line.trim().equals(ReplayVerifier.HEADER)) {
+                            if (mMoves > 0 || (mTesting && mBoard != 0)) {
+                                endGame();
+                                newGame();
+                            }
+                            break;
+                        }
+                        throw new Abandoned("unknown command \"%s\"",
+                                line.trim());
+                }
+            }
+            endGame();
+        } catch (Abandoned excp) {
+            error = excp.getMessage();
+        } catch (NumberFormatException excp) {
+            error = "malformed number";
+        }
+        if (error == null) {
+            lineNo = 0;
+        }
+        if (mLog != null) {
+            mLog.flush();
+        }
+        return new Stats(name, mGames, totalMoves, System.nanoTime() - start,
+                error, lineNo);
+    }
+
+    /** Run the script in FILE. */
+    public Stats run(File file) throws IOException {
+        Reader input = new InputStreamReader(new FileInputStream(file),
+                Charset.forName("UTF-8"));
+        try {
+            return run(file.getPath(), input);
+        } finally {
+            input.close();
+        }
+    }
+
+    /** Start a game, adding its opening tiles unless testing. */
+    private void newGame() {
+        mBoard = 0;
+        mScore = mMoves = 0;
+        mGames += 1;
+        mReplay.setLength(0);
+        mReplay.append(ReplayVerifier.HEADER).append('\n');
+        mSpawnsDue = 2;
+        if (!mTesting) {
+            randomSpawn();
+            randomSpawn();
+        }
+    }
+
+    /** Log the end of the current game.  When testing, a game that never
+     *  began (as when a script opens with New Game) is not counted. */
+    private void endGame() throws IOException, Abandoned {
+        if (mTesting && mBoard == 0) {
+            mGames -= 1;
+            return;
+        }
+        if (mSpawnsDue != 0 && mTesting) {
+            throw new Abandoned("missing spawn");
+        }
+        if (mLog != null) {
+            mReplay.append(String.format("E %d %016x\n", mScore, mBoard));
+            mLog.append(mReplay);
+        }
+    }
+
+    /** Tilt toward the side named by KEY.  Return 1 if that moved tiles,
+     *  and 0 if it did nothing because the game is won (unless playing on)
+     *  or no tile could move. */
+    private int press(String key) throws Abandoned {
+        int side;
+        try {
+            side = Boards.keyToSide(key);
+        } catch (IllegalArgumentException excp) {
+            throw new Abandoned("unknown key \"%s\"", key);
+        }
+        if (mSpawnsDue != 0) {
+            throw new Abandoned("move before spawn");
+        }
+        if (!mKeepPlaying && mEngine.isWon(mBoard)) {
+            return 0;
+        }
+        long next = mEngine.move(mBoard, side);
+        if (next == mBoard) {
+            return 0;
+        }
+        mScore += mEngine.score(mBoard, side);
+        mBoard = next;
+        mMoves += 1;
+        if (mLog != null) {
+            mReplay.append("M ").append(key).append('\n');
+        }
+        mSpawnsDue = 1;
+        if (!mTesting) {
+            randomSpawn();
+        }
+        return 1;
+    }
+
+    /** Add a random tile. */
+    private void randomSpawn() {
+        long next = mEngine.spawnOn(mBoard, mRandom);
+        if (next != mBoard) {
+            int square = Long.numberOfTrailingZeros(next ^ mBoard) / 4;
+            logSpawn(square / Boards.SIZE, square % Boards.SIZE,
+                    mEngine.valueOf(Boards.get(next, square / Boards.SIZE,
+                            square % Boards.SIZE)));
+            mBoard = next;
+        }
+        mSpawnsDue -= 1;
+    }
+
+    /** Add the tile given by the spawn record FIELDS. */
+    private void spawn(String[] fields) throws Abandoned {
+        if (fields.length < 4) {
+            throw new Abandoned("malformed spawn");
+        }
+        if (mSpawnsDue == 0) {
+            throw new Abandoned("unexpected spawn");
+        }
+        int row = Integer.parseInt(fields[1]),
+                col = Integer.parseInt(fields[2]),
+                value = Integer.parseInt(fields[3]);
+        int rank = spawnRank(value), size = mEngine.getSize();
+        if (row < 0 || row >= size || col < 0 || col >= size || rank == 0
+                || Boards.get(mBoard, row, col) != 0) {
+            throw new Abandoned("impossible spawn");
+        }
+        mBoard = Boards.set(mBoard, row, col, rank);
+        mSpawnsDue -= 1;
+        logSpawn(row, col, value);
+    }
+
+    /** Return the rank of spawned tiles of VALUE, or 0 if tiles of VALUE
+     *  never spawn. */
+    private int spawnRank(int value) {
+        for (int rank : mEngine.getRules().getSpawnRanks()) {
+            if (mEngine.valueOf(rank) == value) {
+                return rank;
+            }
+        }
+        return 0;
+    }
+
+    /** Log the spawn of a tile of VALUE at (ROW, COL). */
+    private void logSpawn(int row, int col, int value) {
+        if (mLog != null) {
+            mReplay.append("S ").append(row).append(' ').append(col)
+                    .append(' ').append(value).append('\n');
+        }
+    }
+
+    /** Run scripts as directed by ARGS:
+     *  <pre>
+     *  [--seed N] [--rules NAME] [--testing] [--keep-playing] [--log]
+     *          [FILE ...]
+     *  </pre>
+     *  Plays each FILE in turn, or the standard input if there are none,
+     *  with random tiles seeded by N (by default, from the clock), or read
+     *  from the scripts if --testing.  The rules are the predefined Rules
+     *  called NAME ("standard" by default).  With --keep-playing, games go on
+     *  past a win.  With --log, the games are written to the standard output
+     *  as replays.  A line of statistics for each
+     *  script, and their totals, is written to the standard error.  Exits
+     *  with status 1 if any script was abandoned. */
+    public static void main(String[] args) throws IOException {
+        long seed = System.nanoTime();
+        Rules rules = Rules.STANDARD;
+        boolean testing = false, keepPlaying = false, log = false;
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i += 1) {
+            switch (args[i]) {
+                case "--seed":
+                    if (i + 1 == args.length) {
+                        usage();
+                    }
+                    seed = Long.parseLong(args[i += 1]);
+                    break;
+                case "--rules":
+                    if (i + 1 == args.length) {
+                        usage();
+                    }
+                    try {
+                        rules = Rules.named(args[i += 1]);
+                    } catch (IllegalArgumentException excp) {
+                        usage();
+                    }
+                    break;
+                case "--testing":
+                    testing = true;
+                    break;
+                case "--keep-playing":
+                    keepPlaying = true;
+                    break;
+                case "--log":
+                    log = true;
+                    break;
+                default:
+                    if (args[i].startsWith("--")) {
+                        usage();
+                    }
+                    files.add(new File(args[i]));
+                    break;
+            }
+        }
+        Writer output = log ? new OutputStreamWriter(System.out,
+                Charset.forName("UTF-8")) : null;
+        ScriptRunner runner = new ScriptRunner(seed, testing, output,
+                rules.compile(), keepPlaying);
+        List<Stats> results = new ArrayList<>();
+        if (files.isEmpty()) {
+            results.add(runner.run("<stdin>", new InputStreamReader(System.in,
+                    Charset.forName("UTF-8"))));
+        }
+        for (File file : files) {
+            try {
+                results.add(runner.run(file));
+            } catch (IOException excp) {
+                results.add(new Stats(file.getPath(), 0, 0, 0,
+                        String.valueOf(excp.getMessage()), 0));
+            }
+        }
+        int games = 0, moves = 0;
+        long nanos = 0;
+        boolean failed = false;
+        for (Stats stats : results) {
+            System.err.println(stats);
+            games += stats.games;
+            moves += stats.moves;
+            nanos += stats.nanos;
+            failed |= stats.error != null;
+        }
+        if (results.size() > 1) {
+            System.err.println(new Stats("total", games, moves, nanos, null, 0));
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    /** Report correct usage and exit. */
+    private static void usage() {
+        System.err.println("Usage: ScriptRunner [--seed N] [--rules NAME]"
+                + " [--testing] [--keep-playing] [--log] [FILE ...]");
+        System.exit(1);
+    }
+
+}
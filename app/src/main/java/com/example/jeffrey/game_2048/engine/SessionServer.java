@@ -0,0 +1,306 @@
+package com.example.jeffrey.game_2048.engine;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A headless server hosting many games at once over a line-based text
+ *  protocol on a local socket.
+ *
+ *  Sessions are plain HeadlessGame objects, not threads: a single selector
+ *  thread reads commands from every connection and applies them, so each
+ *  session costs only its game state, and one connection may drive any
+ *  number of sessions.  Commands and replies are single lines:
+ *  <pre>
+ *  NEW                     OK ID BOARD SCORE MOVES STATUS
+ *  MOVE ID KEY             OK ID BOARD SCORE MOVES STATUS
+ *  STATE ID                OK ID BOARD SCORE MOVES STATUS
+ *  QUIT ID                 OK ID
+ *  </pre>
+ *  where KEY is "Up", "Down", "Left" or "Right", BOARD is the packed board
+ *  in hex, and STATUS is PLAYING, WON or LOST.  A move that changes
+ *  nothing is not an error; its reply shows the unchanged game.  Errors
+ *  are reported as "ERR MESSAGE".
+ *
+ *  A session belongs to the connection that made it: no other connection
+ *  may move, see or quit it, and when that connection is closed, with or
+ *  without QUIT, its sessions are dropped.  A connection is not read while
+ *  replies to it are waiting to be written, so a client that sends
+ *  commands without reading the replies is only made to wait.
+ *  @author Jeffrey Jacinto */
+public class SessionServer implements Runnable {
+    /** Longest command accepted (characters). */
+    static final int MAX_LINE = 128;
+    /** Encoding of commands and replies. */
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    /** Games in progress, by session id. */
+    private final ConcurrentHashMap<Long, HeadlessGame> mSessions =
+            new ConcurrentHashMap<>();
+    /** Next session id. */
+    private final AtomicLong mNextId = new AtomicLong(1);
+    /** PRNG from which each new session's PRNG is split. */
+    private final SpawnRandom mSeeds;
+
+    /** Listening socket and the selector serving all connections. */
+    private final ServerSocketChannel mServer;
+    private final Selector mSelector;
+    /** False once stop has been called. */
+    private volatile boolean mRunning = true;
+
+    /** Per-connection buffers. */
+    private static class Connection {
+        /** Bytes read and not yet processed. */
+        final ByteBuffer in = ByteBuffer.allocate(512);
+        /** The command being read. */
+        final StringBuilder line = new StringBuilder();
+        /** Replies not yet written. */
+        final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        /** Ids of the sessions made on this connection and not quit. */
+        final HashSet<Long> sessions = new HashSet<>();
+    }
+
+    /** A server listening on the loopback interface at PORT (or at any
+     *  free port, if 0), whose sessions are seeded from SEED. */
+    public SessionServer(int port, long seed) throws IOException {
+        mSeeds = new Xoroshiro128(seed);
+        mSelector = Selector.open();
+        mServer = ServerSocketChannel.open();
+        mServer.socket().bind(new InetSocketAddress(
+                InetAddress.getByName("127.0.0.1"), port));
+        mServer.configureBlocking(false);
+        mServer.register(mSelector, SelectionKey.OP_ACCEPT);
+    }
+
+    /** Return the port on which I listen. */
+    public int getPort() {
+        return mServer.socket().getLocalPort();
+    }
+
+    /** Return the number of sessions in progress. */
+    public int getSessionCount() {
+        return mSessions.size();
+    }
+
+    /** Stop serving, closing all connections. */
+    public void stop() {
+        mRunning = false;
+        mSelector.wakeup();
+    }
+
+    /** Serve connections until stopped. */
+    @Override
+    public void run() {
+        try {
+            while (mRunning) {
+                mSelector.select();
+                Iterator<SelectionKey> keys =
+                        mSelector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            if (key.isReadable()) {
+                                read(key);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                write(key);
+                            }
+                        }
+                    } catch (IOException excp) {
+                        close(key);
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw new Error("session server failed", excp);
+        } finally {
+            for (SelectionKey key : mSelector.keys()) {
+                try {
+                    close(key);
+                } catch (IOException excp) {
+                    // closing anyway
+                }
+            }
+            try {
+                mSelector.close();
+            } catch (IOException excp) {
+                // closing anyway
+            }
+        }
+    }
+
+    /** Accept a pending connection. */
+    private void accept() throws IOException {
+        SocketChannel channel = mServer.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(mSelector, SelectionKey.OP_READ, new Connection());
+    }
+
+    /** Read and answer all complete commands available on KEY. */
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection conn = (Connection) key.attachment();
+        if (channel.read(conn.in) < 0) {
+            close(key);
+            return;
+        }
+        conn.in.flip();
+        StringBuilder replies = new StringBuilder();
+        while (conn.in.hasRemaining()) {
+            char ch = (char) conn.in.get();
+            if (ch == '\n') {
+                replies.append(handle(conn.line.toString().trim(), conn))
+                        .append('\n');
+                conn.line.setLength(0);
+            } else if (conn.line.length() >= MAX_LINE) {
+                channel.write(ASCII.encode("ERR line too long\n"));
+                close(key);
+                return;
+            } else {
+                conn.line.append(ch);
+            }
+        }
+        conn.in.clear();
+        if (replies.length() > 0) {
+            conn.out.add(ASCII.encode(replies.toString()));
+            write(key);
+        }
+    }
+
+    /** Close the connection of KEY, dropping the sessions made on it. */
+    private void close(SelectionKey key) throws IOException {
+        Connection conn = (Connection) key.attachment();
+        if (conn != null) {
+            for (Long id : conn.sessions) {
+                mSessions.remove(id);
+            }
+            conn.sessions.clear();
+        }
+        key.channel().close();
+    }
+
+    /** Write as many pending replies on KEY as the socket will take,
+     *  asking to be told when it will take more, and reading no more
+     *  commands on KEY until all are written. */
+    private void write(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection conn = (Connection) key.attachment();
+        while (!conn.out.isEmpty()) {
+            ByteBuffer reply = conn.out.peek();
+            channel.write(reply);
+            if (reply.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            conn.out.poll();
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /** Return the reply to the command LINE, made other than on a
+     *  connection.  Sessions it makes are kept until quit. */
+    public String handle(String line) {
+        return handle(line, null);
+    }
+
+    /** Return the reply to the command LINE, read from OWNER, or made other
+     *  than on a connection if OWNER is null. */
+    private String handle(String line, Connection owner) {
+        String[] words = line.split(" +");
+        try {
+            switch (words[0]) {
+                case "NEW": {
+                    long id = mNextId.getAndIncrement();
+                    HeadlessGame game;
+                    synchronized (mSeeds) {
+                        game = new HeadlessGame(mSeeds.split());
+                    }
+                    mSessions.put(id, game);
+                    if (owner != null) {
+                        owner.sessions.add(id);
+                    }
+                    return reply(id, game);
+                }
+                case "MOVE": {
+                    long id = Long.parseLong(words[1]);
+                    HeadlessGame game = session(id, owner);
+                    int side = Boards.keyToSide(words[2]);
+                    synchronized (game) {
+                        game.move(side);
+                        return reply(id, game);
+                    }
+                }
+                case "STATE": {
+                    long id = Long.parseLong(words[1]);
+                    HeadlessGame game = session(id, owner);
+                    synchronized (game) {
+                        return reply(id, game);
+                    }
+                }
+                case "QUIT": {
+                    long id = Long.parseLong(words[1]);
+                    session(id, owner);
+                    mSessions.remove(id);
+                    if (owner != null) {
+                        owner.sessions.remove(id);
+                    }
+                    return "OK " + id;
+                }
+                default:
+                    return "ERR unknown command " + words[0];
+            }
+        } catch (ArrayIndexOutOfBoundsException excp) {
+            return "ERR missing argument";
+        } catch (NumberFormatException excp) {
+            return "ERR bad session id";
+        } catch (IllegalArgumentException excp) {
+            return "ERR " + excp.getMessage();
+        }
+    }
+
+    /** Return the session with id ID, which must belong to OWNER, unless
+     *  OWNER is null.  Sessions of other connections are reported as
+     *  missing. */
+    private HeadlessGame session(long id, Connection owner) {
+        HeadlessGame game = mSessions.get(id);
+        if (game == null || (owner != null && !owner.sessions.contains(id))) {
+            throw new IllegalArgumentException("no session " + id);
+        }
+        return game;
+    }
+
+    /** Return the reply describing session ID, whose game is GAME. */
+    private static String reply(long id, HeadlessGame game) {
+        return String.format("OK %d %016x %d %d %s", id, game.getBoard(),
+                game.getScore(), game.getMoves(), game.getStatus());
+    }
+
+    /** Serve on the port given by ARGS[0] (default 2048) until killed. */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 2048;
+        SessionServer server = new SessionServer(port, System.nanoTime());
+        System.out.println("serving 2048 sessions on 127.0.0.1:"
+                + server.getPort());
+        server.run();
+    }
+
+}
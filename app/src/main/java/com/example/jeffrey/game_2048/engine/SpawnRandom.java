@@ -0,0 +1,81 @@
+package com.example.jeffrey.game_2048.engine;
+
+/** A source of random spawns: which empty square receives the next tile,
+ *  and whether that tile is a 2 or a 4.
+ *
+ *  A SpawnRandom is not synchronized, and is meant to be used by a single
+ *  thread.  Work spread across threads should give each its own stream
+ *  with split(), which is cheap and makes streams that do not overlap.
+ *  The whole state can be saved with getState() and restored with
+ *  setState(), so that a game can be resumed or replayed exactly.
+ *  @author Jeffrey Jacinto */
+public abstract class SpawnRandom {
+    /** Probability of choosing 2 as random tile (as opposed to 4). */
+    public static final double LOW_TILE_PROBABILITY = 0.9;
+
+    /** Spawns draw 24 bits for the tile's value; draws at or above this
+     *  make a 4. */
+    private static final int FOUR_THRESHOLD =
+            (int) Math.ceil(LOW_TILE_PROBABILITY * (1 << 24));
+
+    /** Return the next 64 random bits. */
+    public abstract long nextLong();
+
+    /** Return a new, independent stream, leaving me to continue with one
+     *  that does not overlap it.  The result depends only on my state. */
+    public abstract SpawnRandom split();
+
+    /** Return a copy of my state. */
+    public abstract long[] getState();
+
+    /** Replace my state with STATE, as returned by getState(). */
+    public abstract void setState(long[] state);
+
+    /** Return a random spawn on a board with EMPTY empty squares, made
+     *  from a single draw.  Its square, numbered among the empty squares
+     *  in row-major order, is spawnIndex(result) and its exponent (1 or
+     *  2) is spawnExponent(result). */
+    public int nextSpawn(int empty) {
+        if (empty <= 0) {
+            throw new IllegalArgumentException("no empty squares");
+        }
+        long bits = nextLong();
+        int index = (int) (((bits >>> 32) * empty) >>> 32);
+        int four = ((int) bits >>> 8) >= FOUR_THRESHOLD ? 1 : 0;
+        return (index << 1) | four;
+    }
+
+    /** Return BOARD, packed as by Boards, with a random tile added to one
+     *  of its empty squares as GameMain.setRandomPiece does, or BOARD itself
+     *  if it is full. */
+    public long spawnOn(long board) {
+        int empty = Boards.countEmpty(board);
+        if (empty == 0) {
+            return board;
+        }
+        int spawn = nextSpawn(empty);
+        int index = spawnIndex(spawn);
+        for (int i = 0; i < Boards.SQUARES; i += 1) {
+            if (((board >>> (4 * i)) & 0xF) == 0) {
+                if (index == 0) {
+                    return board | ((long) spawnExponent(spawn) << (4 * i));
+                }
+                index -= 1;
+            }
+        }
+        throw new AssertionError("empty square not found");
+    }
+
+    /** Return the index among the empty squares of SPAWN, as returned by
+     *  nextSpawn. */
+    public static int spawnIndex(int spawn) {
+        return spawn >>> 1;
+    }
+
+    /** Return the exponent of the tile of SPAWN, as returned by
+     *  nextSpawn. */
+    public static int spawnExponent(int spawn) {
+        return 1 + (spawn & 1);
+    }
+
+}
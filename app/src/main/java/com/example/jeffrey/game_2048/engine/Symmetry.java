@@ -0,0 +1,136 @@
+package com.example.jeffrey.game_2048.engine;
+
+/** The eight symmetries (rotations and reflections) of boards packed as by
+ *  Boards, and canonical keys that identify symmetric boards.
+ *
+ *  Transform T (0 <= T < TRANSFORMS) transposes the board if bit 2 of T is
+ *  set, then mirrors its columns if bit 0 is set, then flips its rows if
+ *  bit 1 is set.  Tilts commute with the symmetries: tilting
+ *  apply(T, B) toward mapSide(T, S) gives apply(T, move(B, S)), with the
+ *  same score.  So a table keyed by canonical(B) can serve all eight
+ *  boards symmetric to B, mapping sides with canonicalTransform(B).
+ *  @author Jeffrey Jacinto */
+public final class Symmetry {
+    /** Number of symmetries. */
+    public static final int TRANSFORMS = 8;
+    /** Transform bits. */
+    static final int MIRROR = 1, FLIP = 2, TRANSPOSE = 4;
+
+    /** INVERSE[T] undoes transform T. */
+    private static final int[] INVERSE = new int[TRANSFORMS];
+    /** SIDES[T][S] is the side to which side S is taken by transform T. */
+    private static final int[][] SIDES = new int[TRANSFORMS][4];
+
+    static {
+        for (int t = 0; t < TRANSFORMS; t += 1) {
+            for (int s = 0; s < 4; s += 1) {
+                int side = s;
+                if ((t & TRANSPOSE) != 0) {
+                    side = 3 - side;
+                }
+                if ((t & MIRROR) != 0 && side % 2 == 1) {
+                    side = 4 - side;
+                }
+                if ((t & FLIP) != 0 && side % 2 == 0) {
+                    side = 2 - side;
+                }
+                SIDES[t][s] = side;
+            }
+        }
+        long probe = 0xFEDCBA9876543210L;
+        for (int t = 0; t < TRANSFORMS; t += 1) {
+            for (int u = 0; u < TRANSFORMS; u += 1) {
+                if (apply(u, apply(t, probe)) == probe) {
+                    INVERSE[t] = u;
+                }
+            }
+        }
+    }
+
+    /** Not instantiable. */
+    private Symmetry() {
+    }
+
+    /** Return BOARD with the columns of each row reversed. */
+    public static long mirror(long board) {
+        return ((board & 0xF000F000F000F000L) >>> 12)
+                | ((board & 0x0F000F000F000F00L) >>> 4)
+                | ((board & 0x00F000F000F000F0L) << 4)
+                | ((board & 0x000F000F000F000FL) << 12);
+    }
+
+    /** Return BOARD with the order of its rows reversed. */
+    public static long flip(long board) {
+        return (board >>> 48)
+                | ((board >>> 16) & 0xFFFF0000L)
+                | ((board << 16) & 0xFFFF00000000L)
+                | (board << 48);
+    }
+
+    /** Return BOARD transformed by TRANSFORM. */
+    public static long apply(int transform, long board) {
+        if ((transform & TRANSPOSE) != 0) {
+            board = Boards.transpose(board);
+        }
+        if ((transform & MIRROR) != 0) {
+            board = mirror(board);
+        }
+        if ((transform & FLIP) != 0) {
+            board = flip(board);
+        }
+        return board;
+    }
+
+    /** Return the transform that undoes TRANSFORM. */
+    public static int inverse(int transform) {
+        return INVERSE[transform];
+    }
+
+    /** Return the side (as numbered by Boards) to which TRANSFORM takes
+     *  SIDE. */
+    public static int mapSide(int transform, int side) {
+        return SIDES[transform][side];
+    }
+
+    /** Return the side that TRANSFORM takes to SIDE. */
+    public static int unmapSide(int transform, int side) {
+        return SIDES[INVERSE[transform]][side];
+    }
+
+    /** Return the canonical key of BOARD: the least of its eight
+     *  transforms, which is the same for all boards symmetric to it. */
+    public static long canonical(long board) {
+        long m = mirror(board), t = Boards.transpose(board),
+                tm = mirror(t);
+        return min(min(min(board, m), min(flip(board), flip(m))),
+                min(min(t, tm), min(flip(t), flip(tm))));
+    }
+
+    /** Return the transform that takes BOARD to canonical(BOARD).  When
+     *  several do (BOARD is itself symmetric), return the least. */
+    public static int canonicalTransform(long board) {
+        long m = mirror(board), t = Boards.transpose(board),
+                tm = mirror(t);
+        int best = 0;
+        long least = board;
+        for (int i = 1; i < TRANSFORMS; i += 1) {
+            long image = (i & TRANSPOSE) != 0
+                    ? ((i & MIRROR) != 0 ? tm : t)
+                    : ((i & MIRROR) != 0 ? m : board);
+            if ((i & FLIP) != 0) {
+                image = flip(image);
+            }
+            if (image < least) {
+                least = image;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /** Return the lesser of A and B. */
+    private static long min(long a, long b) {
+        return a < b ? a : b;
+    }
+
+}
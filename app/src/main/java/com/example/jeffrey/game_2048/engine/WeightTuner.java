@@ -0,0 +1,389 @@
+package com.example.jeffrey.game_2048.engine;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Tunes the weights of the Heuristic by self-play, with no display.
+ *
+ *  The tuner is a cross-entropy search: each generation draws candidate
+ *  weight vectors from a Gaussian with a separate deviation for each
+ *  weight, scores every candidate by the mean final score of games played
+ *  by Expectimax to a fixed depth, and moves the Gaussian toward the best
+ *  quarter of the candidates.  Weights are searched as the logarithms of
+ *  multiples of those of Heuristic.DEFAULT, so that all are on one scale
+ *  and keep their signs.  The first candidate of each generation is the
+ *  current mean itself.
+ *
+ *  All candidates of a generation play games from the same seeds (common
+ *  random numbers), so that their differences reflect their weights rather
+ *  than their luck, and each generation uses new seeds.  Games continue
+ *  past the winning tile until no move is left.  The games of a
+ *  generation are shared among a pool of threads; since each game depends
+ *  only on its seed and weights, a run is reproduced exactly from its
+ *  seed, whatever the number of threads.  After each generation the state
+ *  of the run is written to a checkpoint file, from which an interrupted
+ *  run resumes.
+ *  @author Jeffrey Jacinto */
+public class WeightTuner {
+    /** Default numbers of generations, of candidates in each, and of
+     *  games played by each candidate, and default search depth. */
+    static final int GENERATIONS = 100, POPULATION = 24, GAMES = 64,
+            DEPTH = 1;
+    /** One in ELITE_FRACTION of the candidates guides the next
+     *  generation. */
+    static final int ELITE_FRACTION = 4;
+    /** Deviation of the first generation, least deviation kept, and the
+     *  weight given to each generation's elite when updating the
+     *  Gaussian. */
+    static final double INITIAL_DEVIATION = 0.5, MIN_DEVIATION = 0.02,
+            SMOOTHING = 0.7;
+    /** Number of games played by each task given to the pool. */
+    static final int GAMES_PER_TASK = 4;
+    /** Log 2 of the size of each searcher's cache. */
+    static final int CACHE_BITS = 12;
+    /** First line of a checkpoint file. */
+    private static final String HEADER = "# WeightTuner checkpoint";
+
+    /** Number of candidates in each generation, of games each plays, and
+     *  the depth to which games are searched. */
+    private final int mPopulation, mGames, mDepth;
+    /** PRNG for candidates and game seeds. */
+    private final SpawnRandom mRandom;
+    /** The Gaussian: mean and deviations, by weight (log multiples of the
+     *  defaults). */
+    private final double[] mMean = new double[Heuristic.NAMES.length],
+            mDeviation = new double[Heuristic.NAMES.length];
+    /** Number of generations completed. */
+    private int mGeneration;
+    /** Mean score of the current mean in the last generation, and of the
+     *  best candidate, or 0 before the first. */
+    private double mMeanScore, mBestScore;
+
+    /** A new run whose generations have POPULATION candidates, each
+     *  playing GAMES games searched to DEPTH, drawing candidates and seeds
+     *  from a PRNG seeded with SEED. */
+    public WeightTuner(long seed, int population, int games, int depth) {
+        if (population < ELITE_FRACTION || games < 1 || depth < 1) {
+            throw new IllegalArgumentException("bad tuning size");
+        }
+        mPopulation = population;
+        mGames = games;
+        mDepth = depth;
+        mRandom = new Xoroshiro128(seed);
+        Arrays.fill(mDeviation, INITIAL_DEVIATION);
+    }
+
+    /** Return the number of generations completed. */
+    public int getGeneration() {
+        return mGeneration;
+    }
+
+    /** Return the heuristic at the mean of the Gaussian: the weights tuned
+     *  so far. */
+    public Heuristic getHeuristic() {
+        return heuristic(mMean);
+    }
+
+    /** Return the heuristic whose weights are those of Heuristic.DEFAULT
+     *  multiplied by e^X[I]. */
+    static Heuristic heuristic(double[] x) {
+        float[] weights = Heuristic.DEFAULT.getWeights();
+        for (int i = 0; i < weights.length; i += 1) {
+            weights[i] *= (float) Math.exp(x[i]);
+        }
+        return new Heuristic(weights);
+    }
+
+    /** Return the final score of a game whose tiles are drawn from a PRNG
+     *  seeded with SEED, played beyond the winning tile by SEARCHER to
+     *  DEPTH. */
+    public static int play(Expectimax searcher, int depth, long seed) {
+        HeadlessGame game = new HeadlessGame(new Xoroshiro128(seed));
+        while (true) {
+            if (game.hasWon()) {
+                game.keepPlaying();
+            }
+            if (game.gameOver()) {
+                return game.getScore();
+            }
+            game.move(searcher.bestMoveToDepth(game.getBoard(), depth));
+        }
+    }
+
+    /** Play one generation on POOL, update the Gaussian, and return the
+     *  mean score of the best candidate. */
+    public double step(ExecutorService pool) throws InterruptedException {
+        final long seeds = mRandom.nextLong();
+        final double[][] candidates = new double[mPopulation][];
+        candidates[0] = mMean.clone();
+        for (int k = 1; k < mPopulation; k += 1) {
+            candidates[k] = new double[mMean.length];
+            for (int i = 0; i < mMean.length; i += 1) {
+                candidates[k][i] = mMean[i]
+                        + mDeviation[i] * gaussian(mRandom);
+            }
+        }
+
+        List<Future<Long>> pending = new ArrayList<>();
+        for (int k = 0; k < mPopulation; k += 1) {
+            final Heuristic heuristic = heuristic(candidates[k]);
+            for (int g = 0; g < mGames; g += GAMES_PER_TASK) {
+                final int first = g,
+                        last = Math.min(mGames, g + GAMES_PER_TASK);
+                pending.add(pool.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        Expectimax searcher =
+                                new Expectimax(CACHE_BITS, heuristic);
+                        long total = 0;
+                        for (int n = first; n < last; n += 1) {
+                            total += play(searcher, mDepth, seeds + n);
+                        }
+                        return total;
+                    }
+                }));
+            }
+        }
+        final double[] scores = new double[mPopulation];
+        int tasks = pending.size() / mPopulation;
+        for (int t = 0; t < pending.size(); t += 1) {
+            try {
+                scores[t / tasks] += pending.get(t).get();
+            } catch (ExecutionException excp) {
+                throw new IllegalStateException(excp.getCause());
+            }
+        }
+        Integer[] order = new Integer[mPopulation];
+        for (int k = 0; k < mPopulation; k += 1) {
+            scores[k] /= mGames;
+            order[k] = k;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(scores[b], scores[a]);
+            }
+        });
+
+        int elite = mPopulation / ELITE_FRACTION;
+        for (int i = 0; i < mMean.length; i += 1) {
+            double mean = 0, variance = 0;
+            for (int e = 0; e < elite; e += 1) {
+                mean += candidates[order[e]][i];
+            }
+            mean /= elite;
+            for (int e = 0; e < elite; e += 1) {
+                double d = candidates[order[e]][i] - mean;
+                variance += d * d;
+            }
+            mMean[i] = SMOOTHING * mean + (1 - SMOOTHING) * mMean[i];
+            mDeviation[i] = Math.max(MIN_DEVIATION,
+                    SMOOTHING * Math.sqrt(variance / elite)
+                    + (1 - SMOOTHING) * mDeviation[i]);
+        }
+        mGeneration += 1;
+        mMeanScore = scores[0];
+        mBestScore = scores[order[0]];
+        return mBestScore;
+    }
+
+    /** Return a standard normal deviate drawn from RANDOM. */
+    static double gaussian(SpawnRandom random) {
+        double u = ((random.nextLong() >>> 11) + 1) * 0x1.0p-53,
+                v = (random.nextLong() >>> 11) * 0x1.0p-53;
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+    }
+
+    /** Write the state of the run to FILE, replacing it whole. */
+    public void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        PrintWriter out = new PrintWriter(new FileWriter(temp));
+        try {
+            out.println(HEADER);
+            out.printf("size %d %d %d%n", mPopulation, mGames, mDepth);
+            out.printf("generation %d %s %s%n", mGeneration,
+                    Double.toString(mMeanScore), Double.toString(mBestScore));
+            long[] state = mRandom.getState();
+            out.printf("random %d %d%n", state[0], state[1]);
+            out.println("mean" + join(mMean));
+            out.println("deviation" + join(mDeviation));
+            out.println("# weights " + getHeuristic());
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("could not write " + temp);
+        }
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+            throw new IOException("could not replace " + file);
+        }
+    }
+
+    /** Return VALUES, each preceded by a space. */
+    private static String join(double[] values) {
+        StringBuilder result = new StringBuilder();
+        for (double value : values) {
+            result.append(' ').append(value);
+        }
+        return result.toString();
+    }
+
+    /** Return the run saved in FILE by save. */
+    public static WeightTuner load(File file) throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            if (!HEADER.equals(in.readLine())) {
+                throw new IOException(file + " is not a checkpoint");
+            }
+            String[] size = fields(in, "size", 3),
+                    generation = fields(in, "generation", 3),
+                    random = fields(in, "random", 2),
+                    mean = fields(in, "mean", Heuristic.NAMES.length),
+                    deviation = fields(in, "deviation",
+                                       Heuristic.NAMES.length);
+            WeightTuner tuner = new WeightTuner(0,
+                    Integer.parseInt(size[0]), Integer.parseInt(size[1]),
+                    Integer.parseInt(size[2]));
+            tuner.mGeneration = Integer.parseInt(generation[0]);
+            tuner.mMeanScore = Double.parseDouble(generation[1]);
+            tuner.mBestScore = Double.parseDouble(generation[2]);
+            tuner.mRandom.setState(new long[] {
+                Long.parseLong(random[0]), Long.parseLong(random[1])
+            });
+            for (int i = 0; i < Heuristic.NAMES.length; i += 1) {
+                tuner.mMean[i] = Double.parseDouble(mean[i]);
+                tuner.mDeviation[i] = Double.parseDouble(deviation[i]);
+            }
+            return tuner;
+        } catch (NumberFormatException excp) {
+            throw new IOException("bad checkpoint " + file, excp);
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Read the next line of IN, which must be NAME followed by N fields,
+     *  and return the fields. */
+    private static String[] fields(BufferedReader in, String name, int n)
+            throws IOException {
+        String line = in.readLine();
+        String[] words = line == null ? new String[0] : line.split(" ");
+        if (words.length != n + 1 || !words[0].equals(name)) {
+            throw new IOException("expected " + name + " in checkpoint");
+        }
+        return Arrays.copyOfRange(words, 1, words.length);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("generation %d: mean weights %.0f,"
+                + " best candidate %.0f", mGeneration, mMeanScore,
+                mBestScore);
+    }
+
+    /** Tune as directed by ARGS:
+     *  <pre>
+     *  [--seed N] [--generations N] [--population N] [--games N]
+     *  [--depth N] [--threads N] [--checkpoint FILE]
+     *  </pre>
+     *  Runs until N generations (by default, GENERATIONS) are complete,
+     *  each of N candidates (POPULATION) playing N games (GAMES) searched
+     *  to depth N (DEPTH), split among N threads (by default, one per
+     *  processor), with candidates and seeds drawn from a PRNG seeded by N
+     *  (by default, from the clock).  If FILE exists, resumes the run saved
+     *  there, with the settings it was started with; the state of the run
+     *  is saved to FILE after every generation.  Reports each generation
+     *  on the standard error, and prints the tuned weights, in the order
+     *  of Heuristic.NAMES, on the standard output. */
+    public static void main(String[] args)
+            throws IOException, InterruptedException {
+        long seed = System.nanoTime();
+        int generations = GENERATIONS, population = POPULATION,
+                games = GAMES, depth = DEPTH,
+                threads = Runtime.getRuntime().availableProcessors();
+        File checkpoint = null;
+        for (int i = 0; i < args.length; i += 1) {
+            if (i + 1 == args.length) {
+                usage();
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--generations":
+                    generations = Integer.parseInt(value);
+                    break;
+                case "--population":
+                    population = Integer.parseInt(value);
+                    break;
+                case "--games":
+                    games = Integer.parseInt(value);
+                    break;
+                case "--depth":
+                    depth = Integer.parseInt(value);
+                    break;
+                case "--threads":
+                    threads = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "--checkpoint":
+                    checkpoint = new File(value);
+                    break;
+                default:
+                    usage();
+                    break;
+            }
+            i += 1;
+        }
+
+        WeightTuner tuner;
+        if (checkpoint != null && checkpoint.exists()) {
+            tuner = load(checkpoint);
+            System.err.printf("resuming %s at %s%n", checkpoint, tuner);
+        } else {
+            tuner = new WeightTuner(seed, population, games, depth);
+            System.err.printf("seed %d%n", seed);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            while (tuner.getGeneration() < generations) {
+                long start = System.nanoTime();
+                tuner.step(pool);
+                if (checkpoint != null) {
+                    tuner.save(checkpoint);
+                }
+                System.err.printf("%s (%.1f s)%n  %s%n", tuner,
+                        (System.nanoTime() - start) / 1e9,
+                        tuner.getHeuristic());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        float[] weights = tuner.getHeuristic().getWeights();
+        for (int i = 0; i < weights.length; i += 1) {
+            System.out.printf("%s %s%n", Heuristic.NAMES[i], weights[i]);
+        }
+    }
+
+    /** Report correct usage and exit. */
+    private static void usage() {
+        System.err.println("Usage: WeightTuner [--seed N] [--generations N]"
+                + " [--population N] [--games N] [--depth N] [--threads N]"
+                + " [--checkpoint FILE]");
+        System.exit(1);
+    }
+
+}
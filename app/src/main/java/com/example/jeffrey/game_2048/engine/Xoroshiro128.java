@@ -0,0 +1,94 @@
+package com.example.jeffrey.game_2048.engine;
+
+/** The xoroshiro128** generator of Blackman and Vigna: 128 bits of state,
+ *  period 2^128 - 1, and a few shifts and rotations per draw.  Seeds are
+ *  expanded into state with SplitMix64, and split() hands out the current
+ *  stream and jumps ahead 2^64 draws, so split streams never overlap.
+ *  @author Jeffrey Jacinto */
+public final class Xoroshiro128 extends SpawnRandom {
+    /** Jump polynomial advancing the state by 2^64 draws. */
+    private static final long[] JUMP = {
+        0xdf900294d8f554a5L, 0x170865df4b3201fcL
+    };
+
+    /** The state, never both zero. */
+    private long mS0, mS1;
+
+    /** A generator seeded from SEED.  Equal seeds give equal streams. */
+    public Xoroshiro128(long seed) {
+        long z = seed;
+        z += 0x9e3779b97f4a7c15L;
+        mS0 = mix(z);
+        z += 0x9e3779b97f4a7c15L;
+        mS1 = mix(z);
+        if ((mS0 | mS1) == 0) {
+            mS1 = 1;
+        }
+    }
+
+    /** A generator with state (S0, S1). */
+    private Xoroshiro128(long s0, long s1) {
+        mS0 = s0;
+        mS1 = s1;
+    }
+
+    /** A generator seeded from the clock. */
+    public static Xoroshiro128 seeded() {
+        return new Xoroshiro128(System.nanoTime() ^ System.currentTimeMillis());
+    }
+
+    /** Return the SplitMix64 output for counter value Z. */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public long nextLong() {
+        long s0 = mS0, s1 = mS1;
+        long result = Long.rotateLeft(s0 * 5, 7) * 9;
+        s1 ^= s0;
+        mS0 = Long.rotateLeft(s0, 24) ^ s1 ^ (s1 << 16);
+        mS1 = Long.rotateLeft(s1, 37);
+        return result;
+    }
+
+    @Override
+    public SpawnRandom split() {
+        Xoroshiro128 child = new Xoroshiro128(mS0, mS1);
+        jump();
+        return child;
+    }
+
+    /** Advance my state by 2^64 draws. */
+    private void jump() {
+        long s0 = 0, s1 = 0;
+        for (long poly : JUMP) {
+            for (int b = 0; b < 64; b += 1) {
+                if ((poly & (1L << b)) != 0) {
+                    s0 ^= mS0;
+                    s1 ^= mS1;
+                }
+                nextLong();
+            }
+        }
+        mS0 = s0;
+        mS1 = s1;
+    }
+
+    @Override
+    public long[] getState() {
+        return new long[] { mS0, mS1 };
+    }
+
+    @Override
+    public void setState(long[] state) {
+        if (state.length != 2 || (state[0] | state[1]) == 0) {
+            throw new IllegalArgumentException("bad xoroshiro128 state");
+        }
+        mS0 = state[0];
+        mS1 = state[1];
+    }
+
+}
@@ -0,0 +1,285 @@
+package com.example.jeffrey.game_2048.store;
+
+import android.util.Log;
+
+import com.example.jeffrey.game_2048.engine.GameSnapshot;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+
+/** A write-ahead log of game checkpoints (snapshots), written behind the
+ *  caller on a background thread.
+ *
+ *  Each checkpoint is appended as a fixed-size record followed by its
+ *  CRC-32, in a single write, so a process killed at any point leaves
+ *  every earlier record intact and at worst a torn final record, which
+ *  readLast skips.  Once COMPACT_AFTER records have accumulated, the log is
+ *  rewritten to hold only the latest one.  Callers never wait on I/O:
+ *  append only hands over the checkpoint, and if the writer falls behind,
+ *  intermediate checkpoints are skipped in favor of the latest.  Once the
+ *  log is closed, appends, flushes and clears are ignored, so that a
+ *  game loop still winding down may safely outlive it.
+ *  @author Jeffrey Jacinto */
+public class CheckpointLog {
+    /** Number of records after which the log is compacted. */
+    static final int COMPACT_AFTER = 256;
+    /** Size of a record, including its checksum (bytes). */
+    static final int RECORD_BYTES = GameSnapshot.BYTES + 4;
+
+    /** The log file. */
+    private final File mFile;
+    /** Runs all file operations, in order. */
+    private final ExecutorService mWriter;
+    /** The newest checkpoint not yet handed to the writer, or null. */
+    private final AtomicReference<GameSnapshot> mPending =
+            new AtomicReference<>();
+    /** Writes the pending checkpoint, if any. */
+    private final Runnable mWriteTask = new Runnable() {
+        @Override
+        public void run() {
+            GameSnapshot checkpoint = mPending.getAndSet(null);
+            if (checkpoint != null) {
+                write(checkpoint);
+            }
+        }
+    };
+
+    /** Open log output, or null if not yet opened. Used only by mWriter. */
+    private FileOutputStream mOut;
+    /** Number of records in the log. Used only by mWriter. */
+    private int mRecords;
+    /** Record buffer. Used only by mWriter. */
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(RECORD_BYTES);
+    private final CRC32 mCrc = new CRC32();
+
+    /** A log kept in FILE, appending to any records already there. */
+    public CheckpointLog(File file) {
+        mFile = file;
+        mWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "checkpoint-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /** Schedule CHECKPOINT to be logged.  Never blocks. */
+    public void append(GameSnapshot checkpoint) {
+        if (mPending.getAndSet(checkpoint) == null) {
+            schedule(mWriteTask);
+        }
+    }
+
+    /** Schedule everything logged so far to be forced to the device, and
+     *  the log compacted.  Never blocks. */
+    public void flush() {
+        schedule(new Runnable() {
+            @Override
+            public void run() {
+                GameSnapshot last = readLast(mFile);
+                if (last != null) {
+                    compact(last);
+                }
+            }
+        });
+    }
+
+    /** Return the last checkpoint logged, or null if there is none, once
+     *  every checkpoint scheduled so far has been written.  Blocks until
+     *  then, even if interrupted (leaving the thread interrupted), so that
+     *  a stale checkpoint is never returned.  Once the log is closed, reads
+     *  it as the writer leaves it. */
+    public GameSnapshot readLast() {
+        Future<GameSnapshot> last;
+        try {
+            last = mWriter.submit(new Callable<GameSnapshot>() {
+                @Override
+                public GameSnapshot call() {
+                    return readLast(mFile);
+                }
+            });
+        } catch (RejectedExecutionException excp) {
+            last = null;
+        }
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    if (last == null) {
+                        // closed: read the log as the writer left it
+                        if (mWriter.awaitTermination(1, TimeUnit.SECONDS)) {
+                            return readLast(mFile);
+                        }
+                        continue;
+                    }
+                    return last.get();
+                } catch (InterruptedException excp) {
+                    interrupted = true;
+                } catch (ExecutionException excp) {
+                    log("checkpoint read failed", excp);
+                    return null;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Discard all checkpoints, after any already scheduled. */
+    public void clear() {
+        schedule(new Runnable() {
+            @Override
+            public void run() {
+                closeOutput();
+                mRecords = 0;
+                if (!mFile.delete() && mFile.exists()) {
+                    log("cannot delete " + mFile, null);
+                }
+            }
+        });
+    }
+
+    /** Finish pending writes and release the writer thread. */
+    public void close() {
+        flush();
+        schedule(new Runnable() {
+            @Override
+            public void run() {
+                closeOutput();
+            }
+        });
+        mWriter.shutdown();
+    }
+
+    /** Run TASK on the writer, unless the log is closed. */
+    private void schedule(Runnable task) {
+        try {
+            mWriter.execute(task);
+        } catch (RejectedExecutionException excp) {
+            // closed
+        }
+    }
+
+    /** Append CHECKPOINT to the log, compacting it if it is due. */
+    private void write(GameSnapshot checkpoint) {
+        if (mRecords >= COMPACT_AFTER) {
+            compact(checkpoint);
+            return;
+        }
+        try {
+            if (mOut == null) {
+                long length = mFile.length();
+                if (length % RECORD_BYTES != 0) {
+                    // realign after a record torn by a crash
+                    compact(checkpoint);
+                    return;
+                }
+                mRecords = (int) (length / RECORD_BYTES);
+                mOut = new FileOutputStream(mFile, true);
+            }
+            mOut.write(encode(checkpoint));
+            mRecords += 1;
+        } catch (IOException excp) {
+            log("checkpoint write failed", excp);
+            closeOutput();
+        }
+    }
+
+    /** Replace the log with one holding only CHECKPOINT, forced to the
+     *  device before it takes the old log's place. */
+    private void compact(GameSnapshot checkpoint) {
+        closeOutput();
+        File temp = new File(mFile.getPath() + ".tmp");
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(encode(checkpoint));
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(mFile)) {
+                throw new IOException("cannot replace " + mFile);
+            }
+            mRecords = 1;
+        } catch (IOException excp) {
+            log("checkpoint compaction failed", excp);
+        }
+    }
+
+    /** Return the record for CHECKPOINT, checksum included. */
+    private byte[] encode(GameSnapshot checkpoint) {
+        mBuffer.clear();
+        checkpoint.write(mBuffer);
+        mCrc.reset();
+        mCrc.update(mBuffer.array(), 0, GameSnapshot.BYTES);
+        mBuffer.putInt((int) mCrc.getValue());
+        return mBuffer.array();
+    }
+
+    /** Close the log output, if open. */
+    private void closeOutput() {
+        if (mOut != null) {
+            try {
+                mOut.close();
+            } catch (IOException excp) {
+                log("checkpoint close failed", excp);
+            }
+            mOut = null;
+        }
+    }
+
+    /** Return the last intact checkpoint in the log FILE, or null if there
+     *  is none.  Reads only as many records, from the end, as it must. */
+    public static GameSnapshot readLast(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        byte[] record = new byte[RECORD_BYTES];
+        CRC32 crc = new CRC32();
+        try {
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                for (long k = in.length() / RECORD_BYTES - 1; k >= 0; k -= 1) {
+                    in.seek(k * RECORD_BYTES);
+                    in.readFully(record);
+                    crc.reset();
+                    crc.update(record, 0, GameSnapshot.BYTES);
+                    ByteBuffer buffer = ByteBuffer.wrap(record);
+                    int checksum = buffer.getInt(GameSnapshot.BYTES);
+                    if (checksum == (int) crc.getValue()) {
+                        return GameSnapshot.read(buffer);
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException excp) {
+            log("checkpoint read failed", excp);
+        }
+        return null;
+    }
+
+    /** Log MSG and EXCP (which may be null) as an error. */
+    private static void log(String msg, Exception excp) {
+        Log.e("CHECKPOINT", msg, excp);
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.example.jeffrey.game_2048.store;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/** Summary of one finished game, as kept by ScoreHistory.
+ *  @author Jeffrey Jacinto */
+public class GameRecord {
+    /** Size of a record when written (bytes). */
+    public static final int BYTES = 28;
+
+    /** Final score, and value of the largest tile. */
+    private final int mScore, mMaxTile;
+    /** Number of moves made. */
+    private final int mMoves;
+    /** Length of the game (milliseconds). */
+    private final long mDuration;
+    /** Time the game finished (milliseconds since the epoch). */
+    private final long mTimestamp;
+
+    /** A record of a game finished at TIMESTAMP after DURATION milliseconds
+     *  and MOVES moves, with final score SCORE and largest tile MAXTILE. */
+    public GameRecord(int score, int maxTile, int moves, long duration,
+                      long timestamp) {
+        mScore = score;
+        mMaxTile = maxTile;
+        mMoves = moves;
+        mDuration = duration;
+        mTimestamp = timestamp;
+    }
+
+    /** Return the final score. */
+    public int getScore() {
+        return mScore;
+    }
+
+    /** Return the value of the largest tile. */
+    public int getMaxTile() {
+        return mMaxTile;
+    }
+
+    /** Return the number of moves made. */
+    public int getMoves() {
+        return mMoves;
+    }
+
+    /** Return the length of the game in milliseconds. */
+    public long getDuration() {
+        return mDuration;
+    }
+
+    /** Return the time the game finished. */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /** Return the time the game started, which identifies it. */
+    public long getStartTime() {
+        return mTimestamp - mDuration;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof GameRecord)) {
+            return false;
+        }
+        GameRecord other = (GameRecord) obj;
+        return mScore == other.mScore && mMaxTile == other.mMaxTile
+                && mMoves == other.mMoves && mDuration == other.mDuration
+                && mTimestamp == other.mTimestamp;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (mTimestamp ^ (mTimestamp >>> 32)) * 31 + mScore;
+    }
+
+    /** Write this record to OUT, in BYTES bytes. */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(mScore);
+        out.writeInt(mMaxTile);
+        out.writeInt(mMoves);
+        out.writeLong(mDuration);
+        out.writeLong(mTimestamp);
+    }
+
+    /** Return a record read from IN, as written by write. */
+    static GameRecord read(DataInput in) throws IOException {
+        int score = in.readInt(), maxTile = in.readInt(), moves = in.readInt();
+        long duration = in.readLong();
+        return new GameRecord(score, maxTile, moves, duration, in.readLong());
+    }
+
+}
@@ -0,0 +1,417 @@
+package com.example.jeffrey.game_2048.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+/** An on-device history of finished games.
+ *
+ *  Every game is appended to a file of fixed-size records, of which only
+ *  the last is ever rewritten, by a won game played on.  Alongside it, a
+ *  small index file holds the TOP_K best games and per-day and per-week
+ *  aggregates for the most recent DAYS days and WEEKS weeks.  The index is
+ *  updated on each append and loaded whole on opening, so queries never
+ *  scan the record file; it is rebuilt from the records only if it is
+ *  missing or stale.  It also holds a copy of the last record, so that it
+ *  is found stale when that record was replaced after it was saved.
+ *  @author Jeffrey Jacinto */
+public class ScoreHistory {
+    /** Number of best games kept in the index. */
+    public static final int TOP_K = 10;
+    /** Number of days and of weeks for which aggregates are kept. */
+    public static final int DAYS = 366, WEEKS = 106;
+
+    /** Identifies index files, and the index format version. */
+    private static final int MAGIC = 0x32303438, VERSION = 2;
+    /** Milliseconds in a day. */
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    /** Totals over a group of games. */
+    public static class Aggregate {
+        /** Aggregate of no games. */
+        static final Aggregate EMPTY = new Aggregate(-1, 0, 0, 0, 0, 0);
+
+        /** Day or week number covered, or -1 for all time. */
+        private final int mKey;
+        /** Number of games, and the best score among them. */
+        private final int mGames, mBestScore;
+        /** Sums of scores, moves and durations. */
+        private final long mTotalScore, mTotalMoves, mTotalDuration;
+
+        Aggregate(int key, int games, int bestScore, long totalScore,
+                  long totalMoves, long totalDuration) {
+            mKey = key;
+            mGames = games;
+            mBestScore = bestScore;
+            mTotalScore = totalScore;
+            mTotalMoves = totalMoves;
+            mTotalDuration = totalDuration;
+        }
+
+        /** Return this aggregate for KEY with RECORD, one of its games,
+         *  taken out.  Its best score is kept while it has games, so a
+         *  day or week keeps the best score reached in it by a game that
+         *  went on to finish in another. */
+        Aggregate minus(int key, GameRecord record) {
+            return new Aggregate(key, mGames - 1,
+                    mGames == 1 ? 0 : mBestScore,
+                    mTotalScore - record.getScore(),
+                    mTotalMoves - record.getMoves(),
+                    mTotalDuration - record.getDuration());
+        }
+
+        /** Return this aggregate for KEY with RECORD added. */
+        Aggregate plus(int key, GameRecord record) {
+            return new Aggregate(key, mGames + 1,
+                    Math.max(mBestScore, record.getScore()),
+                    mTotalScore + record.getScore(),
+                    mTotalMoves + record.getMoves(),
+                    mTotalDuration + record.getDuration());
+        }
+
+        /** Return the number of games. */
+        public int getGames() {
+            return mGames;
+        }
+
+        /** Return the best score, or 0 if there are no games. */
+        public int getBestScore() {
+            return mBestScore;
+        }
+
+        /** Return the sum of all scores. */
+        public long getTotalScore() {
+            return mTotalScore;
+        }
+
+        /** Return the sum of all moves. */
+        public long getTotalMoves() {
+            return mTotalMoves;
+        }
+
+        /** Return the total time played (milliseconds). */
+        public long getTotalDuration() {
+            return mTotalDuration;
+        }
+
+        /** Return the mean score, or 0 if there are no games. */
+        public double getMeanScore() {
+            return mGames == 0 ? 0 : (double) mTotalScore / mGames;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(mKey);
+            out.writeInt(mGames);
+            out.writeInt(mBestScore);
+            out.writeLong(mTotalScore);
+            out.writeLong(mTotalMoves);
+            out.writeLong(mTotalDuration);
+        }
+
+        static Aggregate read(DataInputStream in) throws IOException {
+            int key = in.readInt(), games = in.readInt(), best = in.readInt();
+            long score = in.readLong(), moves = in.readLong();
+            return new Aggregate(key, games, best, score, moves,
+                    in.readLong());
+        }
+    }
+
+    /** Record and index files. */
+    private final File mRecords, mIndex;
+    /** Number of records in the record file. */
+    private long mCount;
+    /** The best mTopCount games, best first. */
+    private final GameRecord[] mTop = new GameRecord[TOP_K];
+    private int mTopCount;
+    /** The last record in the record file, or null if there is none. */
+    private GameRecord mLast;
+    /** Aggregates over all games, by day (indexed by day % DAYS) and by
+     *  week (indexed by week % WEEKS).  Entries whose key does not match
+     *  the day or week asked for are stale. */
+    private Aggregate mTotal = Aggregate.EMPTY;
+    private final Aggregate[] mDays = new Aggregate[DAYS],
+            mWeeks = new Aggregate[WEEKS];
+
+    /** A history kept in directory DIR, loading any existing index. */
+    public ScoreHistory(File dir) throws IOException {
+        mRecords = new File(dir, "scores.dat");
+        mIndex = new File(dir, "scores.idx");
+        long length = mRecords.length();
+        if (length % GameRecord.BYTES != 0) {
+            // drop a record torn by a crash while appending
+            RandomAccessFile records = new RandomAccessFile(mRecords, "rw");
+            try {
+                records.setLength(length - length % GameRecord.BYTES);
+            } finally {
+                records.close();
+            }
+        }
+        long count = mRecords.length() / GameRecord.BYTES;
+        if (!loadIndex(count)) {
+            rebuildIndex();
+        }
+    }
+
+    /** Append RECORD to the history and update the index.  If RECORD is
+     *  of the same game as the last record (one started at the same time),
+     *  as when a won game is played on and recorded again at its end, it
+     *  replaces that record instead.  Since a game played on only gains,
+     *  the index then trades the old record for the new one without
+     *  rereading the history. */
+    public synchronized void add(GameRecord record) throws IOException {
+        if (mLast != null && mLast.getStartTime() == record.getStartTime()
+                && mLast.getScore() <= record.getScore()) {
+            RandomAccessFile records = new RandomAccessFile(mRecords, "rw");
+            try {
+                records.seek((mCount - 1) * GameRecord.BYTES);
+                record.write(records);
+            } finally {
+                records.close();
+            }
+            unindex(mLast);
+            index(record);
+            saveIndex();
+            return;
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(mRecords, true)));
+        try {
+            record.write(out);
+        } finally {
+            out.close();
+        }
+        index(record);
+        saveIndex();
+    }
+
+    /** Return the number of games recorded. */
+    public synchronized long size() {
+        return mCount;
+    }
+
+    /** Return the best score recorded, or 0 if none. */
+    public synchronized int getBestScore() {
+        return mTopCount == 0 ? 0 : mTop[0].getScore();
+    }
+
+    /** Return the best min(K, TOP_K) games, best first. */
+    public synchronized List<GameRecord> top(int k) {
+        int n = Math.min(Math.min(k, TOP_K), mTopCount);
+        List<GameRecord> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i += 1) {
+            result.add(mTop[i]);
+        }
+        return result;
+    }
+
+    /** Return the aggregate of all games. */
+    public synchronized Aggregate total() {
+        return mTotal;
+    }
+
+    /** Return the aggregate of games finished on the local day containing
+     *  TIME, which must be within the last DAYS days. */
+    public synchronized Aggregate day(long time) {
+        int day = dayOf(time);
+        Aggregate result = mDays[day % DAYS];
+        return result != null && result.mKey == day ? result : Aggregate.EMPTY;
+    }
+
+    /** Return the aggregate of games finished in the local week (starting
+     *  Monday) containing TIME, which must be within the last WEEKS weeks. */
+    public synchronized Aggregate week(long time) {
+        int week = weekOf(dayOf(time));
+        Aggregate result = mWeeks[week % WEEKS];
+        return result != null && result.mKey == week ? result
+                : Aggregate.EMPTY;
+    }
+
+    /** Return the local day number of TIME. */
+    static int dayOf(long time) {
+        return (int) ((time + TimeZone.getDefault().getOffset(time)) / DAY);
+    }
+
+    /** Return the week number of DAY.  Day 0 was a Thursday. */
+    static int weekOf(int day) {
+        return (day + 3) / 7;
+    }
+
+    /** Add RECORD to the in-memory index, as the last record. */
+    private void index(GameRecord record) {
+        mCount += 1;
+        mLast = record;
+        mTotal = mTotal.plus(-1, record);
+
+        int day = dayOf(record.getTimestamp()), week = weekOf(day);
+        mDays[day % DAYS] = current(mDays[day % DAYS], day).plus(day, record);
+        mWeeks[week % WEEKS] =
+                current(mWeeks[week % WEEKS], week).plus(week, record);
+
+        int k = mTopCount;
+        while (k > 0 && mTop[k - 1].getScore() < record.getScore()) {
+            if (k < TOP_K) {
+                mTop[k] = mTop[k - 1];
+            }
+            k -= 1;
+        }
+        if (k < TOP_K) {
+            mTop[k] = record;
+            mTopCount = Math.min(TOP_K, mTopCount + 1);
+        }
+    }
+
+    /** Take RECORD, the last record, out of the in-memory index, to be
+     *  replaced by a record of the same game that scored no less, so that
+     *  no game below the best TOP_K is needed to fill its place. */
+    private void unindex(GameRecord record) {
+        mCount -= 1;
+        mLast = null;
+        mTotal = mTotal.minus(-1, record);
+
+        int day = dayOf(record.getTimestamp()), week = weekOf(day);
+        mDays[day % DAYS] =
+                current(mDays[day % DAYS], day).minus(day, record);
+        mWeeks[week % WEEKS] =
+                current(mWeeks[week % WEEKS], week).minus(week, record);
+
+        for (int k = 0; k < mTopCount; k += 1) {
+            if (mTop[k].equals(record)) {
+                System.arraycopy(mTop, k + 1, mTop, k, mTopCount - k - 1);
+                mTopCount -= 1;
+                mTop[mTopCount] = null;
+                break;
+            }
+        }
+    }
+
+    /** Return AGGREGATE if it is for KEY, and otherwise an empty one. */
+    private static Aggregate current(Aggregate aggregate, int key) {
+        return aggregate == null || aggregate.mKey != key ? Aggregate.EMPTY
+                : aggregate;
+    }
+
+    /** Load the index file, returning true iff it is present, well-formed
+     *  and covers exactly COUNT records, the last of which it holds. */
+    private boolean loadIndex(long count) {
+        if (!mIndex.exists()) {
+            return count == 0;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(mIndex)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION
+                        || in.readLong() != count) {
+                    return false;
+                }
+                GameRecord last = count == 0 ? null : GameRecord.read(in);
+                if (last != null && !last.equals(readLast(count))) {
+                    return false;
+                }
+                mCount = count;
+                mLast = last;
+                mTopCount = in.readInt();
+                if (mTopCount < 0 || mTopCount > TOP_K) {
+                    return false;
+                }
+                for (int i = 0; i < mTopCount; i += 1) {
+                    mTop[i] = GameRecord.read(in);
+                }
+                mTotal = Aggregate.read(in);
+                for (int i = 0; i < DAYS; i += 1) {
+                    mDays[i] = Aggregate.read(in);
+                }
+                for (int i = 0; i < WEEKS; i += 1) {
+                    mWeeks[i] = Aggregate.read(in);
+                }
+                return true;
+            } finally {
+                in.close();
+            }
+        } catch (EOFException excp) {
+            return false;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Return the last of the COUNT records in the record file. */
+    private GameRecord readLast(long count) throws IOException {
+        RandomAccessFile records = new RandomAccessFile(mRecords, "r");
+        try {
+            records.seek((count - 1) * GameRecord.BYTES);
+            return GameRecord.read(records);
+        } finally {
+            records.close();
+        }
+    }
+
+    /** Rebuild the index from the record file and save it. */
+    private void rebuildIndex() throws IOException {
+        mCount = 0;
+        mLast = null;
+        mTopCount = 0;
+        mTotal = Aggregate.EMPTY;
+        for (int i = 0; i < DAYS; i += 1) {
+            mDays[i] = null;
+        }
+        for (int i = 0; i < WEEKS; i += 1) {
+            mWeeks[i] = null;
+        }
+        if (mRecords.exists()) {
+            long count = mRecords.length() / GameRecord.BYTES;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(mRecords)));
+            try {
+                for (long i = 0; i < count; i += 1) {
+                    index(GameRecord.read(in));
+                }
+            } finally {
+                in.close();
+            }
+        }
+        saveIndex();
+    }
+
+    /** Write the index, replacing the old one only once complete. */
+    private void saveIndex() throws IOException {
+        File temp = new File(mIndex.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(mCount);
+            if (mLast != null) {
+                mLast.write(out);
+            }
+            out.writeInt(mTopCount);
+            for (int i = 0; i < mTopCount; i += 1) {
+                mTop[i].write(out);
+            }
+            mTotal.write(out);
+            for (Aggregate day : mDays) {
+                (day == null ? Aggregate.EMPTY : day).write(out);
+            }
+            for (Aggregate week : mWeeks) {
+                (week == null ? Aggregate.EMPTY : week).write(out);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(mIndex)) {
+            throw new IOException("cannot replace " + mIndex);
+        }
+    }
+
+}
@@ -0,0 +1,394 @@
+package com.example.jeffrey.game_2048;
+
+import com.example.jeffrey.game_2048.engine.Boards;
+import com.example.jeffrey.game_2048.engine.Expectimax;
+import com.example.jeffrey.game_2048.engine.GameSnapshot;
+import com.example.jeffrey.game_2048.engine.HeadlessGame;
+import com.example.jeffrey.game_2048.engine.MoveEvent;
+import com.example.jeffrey.game_2048.engine.MovePublisher;
+import com.example.jeffrey.game_2048.engine.NTupleNetwork;
+import com.example.jeffrey.game_2048.engine.RuleEngine;
+import com.example.jeffrey.game_2048.engine.SpawnRandom;
+import com.example.jeffrey.game_2048.engine.Xoroshiro128;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/** Checks that the operations made on every turn allocate no more than
+ *  their budgets, so that the garbage they make, once removed, stays
+ *  removed.
+ *
+ *  Each operation is run until the JIT has compiled it, then run many
+ *  times more while the JVM's count of the bytes allocated by the thread
+ *  (from com.sun.management.ThreadMXBean) is watched, giving the bytes
+ *  allocated by one operation in the steady state.  Inputs are made
+ *  beforehand, so that only the operation itself is measured.  On a JVM
+ *  without these counters, reached by reflection since they are not part
+ *  of Android, the tests are skipped.
+ *
+ *  The moves, spawns, game-over checks and state encoding of packed
+ *  boards allocate nothing.  Those of GameMain allocate only what they
+ *  publish: a new GameSnapshot after every change, and a MoveEvent for
+ *  every event, as counted by a subscriber.  The sizes of both are
+ *  measured, not assumed, since they depend on the JVM's object layout.
+ *
+ *  Out of scope, since they need Android: the display and what feeds it.
+ *  Game makes a Tile for every tile spawned and new Tile arrays on every
+ *  clear, BoardRenderer.showScore a Runnable on every score change, and
+ *  GameFragment's loop a String for every key; none of these is
+ *  budgeted here.
+ *  @author Jeffrey Jacinto */
+public class AllocationBudgetTest {
+    /** Number of different inputs cycled through by an operation. */
+    private static final int INPUTS = 1 << 12;
+    private static final int MASK = INPUTS - 1;
+    /** Bytes per operation allowed beyond a budget, for the odd
+     *  allocation made by the JVM itself while measuring. */
+    private static final double TOLERANCE = 1;
+
+    /** The thread MX bean, and its method getThreadAllocatedBytes(long),
+     *  or null if this JVM has none. */
+    private static final Object THREADS;
+    private static final Method ALLOCATED;
+
+    static {
+        Object threads = null;
+        Method allocated = null;
+        try {
+            threads = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            allocated = Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long.class);
+            allocated.invoke(threads, Thread.currentThread().getId());
+        } catch (ReflectiveOperationException | RuntimeException excp) {
+            threads = null;
+            allocated = null;
+        }
+        THREADS = threads;
+        ALLOCATED = allocated;
+    }
+
+    /** Sinks for results, so that the JIT cannot drop the operations. */
+    private static volatile long sSink;
+    private static volatile Object sObject;
+
+    /** Random mid-game boards, the same as tiles for GameMain.setTiles,
+     *  and as snapshots. */
+    private static long[] sBoards;
+    private static int[][][] sTiles;
+    private static GameSnapshot[] sSnapshots;
+    /** Measured size of a GameSnapshot with its exponents, and of a
+     *  MoveEvent (bytes). */
+    private static double sSnapshotBytes, sEventBytes;
+
+    /** An operation under test. */
+    private abstract static class Operation {
+        /** Run the operation for the Nth time. */
+        abstract void run(int n);
+    }
+
+    @BeforeClass
+    public static void makeInputs() {
+        SpawnRandom random = new Xoroshiro128(1);
+        sBoards = new long[INPUTS];
+        sTiles = new int[INPUTS][][];
+        sSnapshots = new GameSnapshot[INPUTS];
+        int[][] values = new int[Boards.SIZE][Boards.SIZE];
+        for (int k = 0; k < INPUTS; k += 1) {
+            sBoards[k] = midgame(random);
+            sTiles[k] = tiles(sBoards[k]);
+            Boards.unpack(sBoards[k], values);
+            sSnapshots[k] = new GameSnapshot(values, k, k, k,
+                    GameSnapshot.Status.PLAYING);
+        }
+        if (ALLOCATED == null) {
+            return;
+        }
+        final int[][] board = values;
+        sSnapshotBytes = measure(new Operation() {
+            @Override
+            void run(int n) {
+                sObject = new GameSnapshot(board, n, n, n,
+                        GameSnapshot.Status.PLAYING);
+            }
+        }, 1 << 18, 1 << 20);
+        sEventBytes = measure(new Operation() {
+            @Override
+            void run(int n) {
+                sObject = MoveEvent.moved(n, 0, 1, 2, 3, n);
+            }
+        }, 1 << 18, 1 << 20);
+    }
+
+    @Before
+    public void needCounters() {
+        assumeTrue("allocation counters not available", ALLOCATED != null);
+    }
+
+    /** Return the number of bytes allocated so far by this thread. */
+    private static long allocated() {
+        try {
+            return (Long) ALLOCATED.invoke(THREADS,
+                    Thread.currentThread().getId());
+        } catch (IllegalAccessException | InvocationTargetException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Return the bytes allocated by one run of OPERATION on average, once
+     *  it has been run WARMUP times, over COUNT runs. */
+    private static double measure(Operation operation, int warmup,
+                                  int count) {
+        for (int n = 0; n < warmup; n += 1) {
+            operation.run(n);
+        }
+        // the cost of reading the counter, to be taken off
+        long overhead = allocated();
+        overhead = allocated() - overhead;
+        long start = allocated();
+        for (int n = 0; n < count; n += 1) {
+            operation.run(n);
+        }
+        long bytes = allocated() - start - overhead;
+        return Math.max(0, bytes) / (double) count;
+    }
+
+    /** Check that OPERATION, called NAME, allocates at most BUDGET bytes
+     *  per run, measured as by measure(OPERATION, WARMUP, COUNT). */
+    private static void checkBudget(String name, double budget,
+                                    Operation operation, int warmup,
+                                    int count) {
+        checkBytes(name, measure(operation, warmup, count), budget);
+    }
+
+    /** Check that OPERATION, called NAME, allocates on average no more
+     *  than the snapshots and events MODEL publishes to a subscriber,
+     *  measured as by measure(OPERATION, WARMUP, COUNT). */
+    private static void checkPublished(String name, GameMain model,
+                                       Operation operation, int warmup,
+                                       int count) {
+        Counter counter = new Counter();
+        MovePublisher.Subscription subscription = model.getEvents()
+                .subscribe(counter, MovePublisher.DIRECT,
+                        BoardRenderer.CAPACITY);
+        try {
+            for (int n = 0; n < warmup; n += 1) {
+                operation.run(n);
+            }
+            counter.events = counter.snapshots = 0;
+            double bytes = measure(operation, 0, count);
+            assertTrue(name + ": published nothing", counter.events > 0);
+            checkBytes(name, bytes, counter.budget(count));
+        } finally {
+            subscription.cancel();
+        }
+    }
+
+    /** Check that BYTES, allocated by a run of the operation NAME on
+     *  average, are within BUDGET. */
+    private static void checkBytes(String name, double bytes,
+                                   double budget) {
+        assertTrue(String.format("%s: %.1f bytes/op, over budget %.1f",
+                        name, bytes, budget),
+                bytes <= budget + TOLERANCE);
+    }
+
+    @Test
+    public void packedMovesAllocateNothing() {
+        checkBudget("Boards.move", 0, new Operation() {
+            @Override
+            void run(int n) {
+                sSink += Boards.move(sBoards[n & MASK], n & 3);
+            }
+        }, 1 << 20, 1 << 22);
+        checkBudget("Boards.score", 0, new Operation() {
+            @Override
+            void run(int n) {
+                sSink += Boards.score(sBoards[n & MASK], n & 3);
+            }
+        }, 1 << 20, 1 << 22);
+        checkBudget("Boards.canMove", 0, new Operation() {
+            @Override
+            void run(int n) {
+                sSink += Boards.canMove(sBoards[n & MASK]) ? 1 : 0;
+            }
+        }, 1 << 20, 1 << 22);
+        final long[] tilted = new long[INPUTS];
+        final int[] scores = new int[INPUTS];
+        final boolean[] changed = new boolean[INPUTS];
+        checkBudget("Boards.moveAll", 0, new Operation() {
+            @Override
+            void run(int n) {
+                Boards.moveAll(n & 3, sBoards, 0, INPUTS, tilted, scores,
+                        changed);
+            }
+        }, 1 << 10, 1 << 12);
+    }
+
+    @Test
+    public void headlessTurnsAllocateNothing() {
+        final SpawnRandom spawns = new Xoroshiro128(2);
+        checkBudget("RuleEngine.spawnOn", 0, new Operation() {
+            @Override
+            void run(int n) {
+                sSink += RuleEngine.STANDARD.spawnOn(sBoards[n & MASK],
+                        spawns);
+            }
+        }, 1 << 20, 1 << 22);
+        final HeadlessGame game = new HeadlessGame(new Xoroshiro128(3));
+        checkBudget("HeadlessGame.move", 0, new Operation() {
+            @Override
+            void run(int n) {
+                if (game.gameOver()) {
+                    game.clear();
+                }
+                game.move(n & 3);
+            }
+        }, 1 << 20, 1 << 22);
+    }
+
+    @Test
+    public void snapshotsAllocateOnlyWhenRead() {
+        final ByteBuffer encoded = ByteBuffer.allocate(GameSnapshot.BYTES);
+        checkBudget("GameSnapshot.write", 0, new Operation() {
+            @Override
+            void run(int n) {
+                encoded.clear();
+                sSnapshots[n & MASK].write(encoded);
+            }
+        }, 1 << 20, 1 << 22);
+        checkBudget("GameSnapshot.read", sSnapshotBytes, new Operation() {
+            @Override
+            void run(int n) {
+                encoded.flip();
+                sObject = GameSnapshot.read(encoded);
+            }
+        }, 1 << 20, 1 << 22);
+    }
+
+    @Test
+    public void searchesAllocateNothing() {
+        final Expectimax searcher = new Expectimax(12);
+        checkBudget("Expectimax.bestMoveToDepth", 0, new Operation() {
+            @Override
+            void run(int n) {
+                sSink += searcher.bestMoveToDepth(sBoards[n & MASK], 2);
+            }
+        }, 1 << 12, 1 << 14);
+        final NTupleNetwork network = new NTupleNetwork(new int[][] {
+            { 0, 1, 2, 3 }, { 4, 5, 6, 7 }, { 0, 1, 4, 5 }, { 1, 2, 5, 6 }
+        });
+        checkBudget("NTupleNetwork.bestMove", 0, new Operation() {
+            @Override
+            void run(int n) {
+                sSink += network.bestMove(sBoards[n & MASK]);
+            }
+        }, 1 << 18, 1 << 20);
+    }
+
+    /** Counts the events of a game, and the snapshots they imply. */
+    private static class Counter implements MovePublisher.Subscriber {
+        /** Events received, and the spawns and turns among them, after
+         *  each of which GameMain makes a new snapshot. */
+        long events, snapshots;
+
+        @Override
+        public void onSubscribe(MovePublisher.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onEvent(MoveEvent event) {
+            events += 1;
+            if (event.getType() == MoveEvent.Type.SPAWNED
+                    || event.getType() == MoveEvent.Type.TURN_ENDED) {
+                snapshots += 1;
+            }
+        }
+
+        @Override
+        public void onDropped(int count) {
+            fail(count + " events dropped");
+        }
+
+        /** Return the bytes a run should allocate on average, for the
+         *  snapshots and events counted in RUNS runs. */
+        double budget(int runs) {
+            return (snapshots * sSnapshotBytes + events * sEventBytes)
+                    / runs;
+        }
+    }
+
+    @Test
+    public void modelAllocatesOnlyWhatItPublishes() {
+        final GameMain model = new GameMain(null);
+        model.setRandom(new Xoroshiro128(4));
+        final GameMain.Side[] sides = GameMain.Side.values();
+        checkBudget("GameMain.tiltBoard (probe)", 0, new Operation() {
+            @Override
+            void run(int n) {
+                model.setTiles(sTiles[n & MASK]);
+                sSink += model.tiltBoard(sides[n & 3], false) ? 1 : 0;
+            }
+        }, 1 << 18, 1 << 20);
+        checkBudget("GameMain.gameOver", 0, new Operation() {
+            @Override
+            void run(int n) {
+                sSink += model.gameOver() ? 1 : 0;
+            }
+        }, 1 << 20, 1 << 22);
+
+        checkPublished("GameMain.setRandomPiece", model, new Operation() {
+            @Override
+            void run(int n) {
+                model.setTiles(sTiles[n & MASK]);
+                model.setRandomPiece();
+            }
+        }, 1 << 18, 1 << 20);
+        checkPublished("GameMain.tiltBoard (turn)", model, new Operation() {
+            @Override
+            void run(int n) {
+                model.setTiles(sTiles[n & MASK]);
+                sSink += model.tiltBoard(sides[n & 3], true) ? 1 : 0;
+            }
+        }, 1 << 18, 1 << 20);
+    }
+
+    /** Return a board drawn from RANDOM such as is met in the middle of a
+     *  game: mostly small tiles, with a third of the squares empty. */
+    private static long midgame(SpawnRandom random) {
+        long bits = random.nextLong(), board = 0;
+        for (int i = 0; i < Boards.SQUARES; i += 1) {
+            int nibble = (int) (bits >>> (4 * i)) & 0xF;
+            int exponent = nibble < 5 ? 0 : 1 + nibble % 7;
+            board |= (long) exponent << (4 * i);
+        }
+        return board;
+    }
+
+    /** Return the tiles of BOARD as triples { VALUE, ROW, COL }, as taken
+     *  by GameMain.setTiles. */
+    private static int[][] tiles(long board) {
+        int[][] tiles = new int[Boards.SQUARES - Boards.countEmpty(board)][];
+        int n = 0;
+        for (int r = 0; r < Boards.SIZE; r += 1) {
+            for (int c = 0; c < Boards.SIZE; c += 1) {
+                int exponent = Boards.get(board, r, c);
+                if (exponent != 0) {
+                    tiles[n] = new int[] { Boards.valueOf(exponent), r, c };
+                    n += 1;
+                }
+            }
+        }
+        return tiles;
+    }
+
+}
@@ -0,0 +1,136 @@
+package com.example.jeffrey.game_2048.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/** Checks the batch tilts of Boards.moveAll against single tilts. */
+public class BoardsTest {
+    /** Number of random boards tilted toward each side. */
+    private static final int BOARDS = 4 * Boards.BLOCK + 37;
+
+    /** Return BOARDS random boards, with about half their squares
+     *  empty. */
+    private static long[] randomBoards(long seed) {
+        SpawnRandom random = new Xoroshiro128(seed);
+        long[] boards = new long[BOARDS];
+        for (int k = 0; k < BOARDS; k += 1) {
+            boards[k] = SymmetryTest.randomBoard(random);
+        }
+        return boards;
+    }
+
+    /** Check moveAll toward every side on the COUNT boards of BOARDS
+     *  starting at FROM. */
+    private static void checkMoveAll(long[] boards, int from, int count) {
+        long[] results = new long[count];
+        int[] scores = new int[count];
+        boolean[] changed = new boolean[count];
+        for (int side = 0; side < 4; side += 1) {
+            Boards.moveAll(side, boards, from, count, results, scores,
+                           changed);
+            for (int k = 0; k < count; k += 1) {
+                long board = boards[from + k],
+                        moved = Boards.move(board, side);
+                assertEquals(moved, results[k]);
+                assertEquals(Boards.score(board, side), scores[k]);
+                assertEquals(moved != board, changed[k]);
+            }
+        }
+    }
+
+    @Test
+    public void moveAllMatchesMove() {
+        long[] boards = randomBoards(1);
+        checkMoveAll(boards, 0, BOARDS);
+        checkMoveAll(boards, 0, 1);
+        checkMoveAll(boards, 0, 0);
+    }
+
+    @Test
+    public void moveAllFromOffset() {
+        long[] boards = randomBoards(2);
+        checkMoveAll(boards, 37, BOARDS - 37);
+        checkMoveAll(boards, Boards.BLOCK + 1, Boards.BLOCK);
+        checkMoveAll(boards, BOARDS - 1, 1);
+    }
+
+    @Test
+    public void moveAllWithoutScores() {
+        long[] boards = randomBoards(3);
+        long[] results = new long[BOARDS];
+        for (int side = 0; side < 4; side += 1) {
+            Boards.moveAll(side, boards, 0, BOARDS, results, null, null);
+            for (int k = 0; k < BOARDS; k += 1) {
+                assertEquals(Boards.move(boards[k], side), results[k]);
+            }
+        }
+    }
+
+    @Test
+    public void moveAllInPlace() {
+        long[] boards = randomBoards(4);
+        for (int side = 0; side < 4; side += 1) {
+            long[] tilted = boards.clone();
+            Boards.moveAll(side, tilted, 0, BOARDS, tilted, null, null);
+            for (int k = 0; k < BOARDS; k += 1) {
+                assertEquals(Boards.move(boards[k], side), tilted[k]);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void moveAllRejectsOverlap() {
+        long[] boards = randomBoards(5);
+        Boards.moveAll(Boards.WEST, boards, 1, BOARDS - 1, boards, null,
+                       null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void moveAllRejectsBadSide() {
+        long[] boards = randomBoards(6);
+        Boards.moveAll(4, boards, 0, BOARDS, new long[BOARDS], null, null);
+    }
+
+    /** Return the exponents of packed BOARD, row by row. */
+    private static byte[] wide(long board) {
+        byte[] exponents = new byte[Boards.SQUARES];
+        for (int i = 0; i < Boards.SQUARES; i += 1) {
+            exponents[i] = (byte) Boards.get(board, i / Boards.SIZE,
+                                             i % Boards.SIZE);
+        }
+        return exponents;
+    }
+
+    @Test
+    public void tiltWideMatchesMove() {
+        long[] boards = randomBoards(7);
+        for (long board : boards) {
+            if (Boards.maxExponent(board) == Boards.MAX_EXPONENT) {
+                continue; // tiles move cannot merge
+            }
+            for (int side = 0; side < 4; side += 1) {
+                byte[] tilted = wide(board);
+                int score = Boards.tiltWide(tilted, side);
+                long moved = Boards.move(board, side);
+                assertArrayEquals(wide(moved), tilted);
+                assertEquals(moved == board ? -1 : Boards.score(board, side),
+                             score);
+            }
+        }
+    }
+
+    @Test
+    public void tiltWideMergesLargeTiles() {
+        long board = Boards.set(Boards.set(0, 0, 1, Boards.MAX_EXPONENT),
+                                1, 1, Boards.MAX_EXPONENT);
+        assertEquals(board, Boards.move(board, Boards.NORTH));
+        byte[] tilted = wide(board);
+        assertEquals(1 << 16, Boards.tiltWide(tilted, Boards.NORTH));
+        assertEquals(16, tilted[1]);
+        assertEquals(1 << 17, Boards.tiltWide(new byte[] {
+            16, 16, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0
+        }, Boards.WEST));
+    }
+
+}
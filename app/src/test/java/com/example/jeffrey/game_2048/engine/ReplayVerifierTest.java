@@ -0,0 +1,78 @@
+package com.example.jeffrey.game_2048.engine;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/** Checks that ReplayVerifier accepts legal replays and rejects records
+ *  that are malformed. */
+public class ReplayVerifierTest {
+    /** A legal replay: two 2s merged by a tilt to the left. */
+    private static final String[] LEGAL = {
+        ReplayVerifier.HEADER, "S 0 0 2", "S 0 1 2", "M Left", "S 3 3 2",
+        "E 4 1000000000000002"
+    };
+
+    /** Return the result of verifying LINES, with line K (counting from
+     *  0) replaced by REPLACEMENT, unless K is negative. */
+    private static ReplayVerifier.Result verify(String[] lines, int k,
+                                                String replacement)
+            throws IOException {
+        StringBuilder replay = new StringBuilder();
+        for (int i = 0; i < lines.length; i += 1) {
+            replay.append(i == k ? replacement : lines[i]).append('\n');
+        }
+        return new ReplayVerifier().verify("test",
+                new StringReader(replay.toString()));
+    }
+
+    @Test
+    public void acceptsLegalReplay() throws IOException {
+        ReplayVerifier.Result result = verify(LEGAL, -1, null);
+        assertTrue(result.toString(), result.valid);
+        assertEquals(1, result.moves);
+    }
+
+    /** Check that replacing line K of LEGAL by LINE is rejected at that
+     *  line. */
+    private static void checkRejected(int k, String line)
+            throws IOException {
+        ReplayVerifier.Result result = verify(LEGAL, k, line);
+        assertFalse(line, result.valid);
+        assertEquals(line, k + 1, result.line);
+    }
+
+    @Test
+    public void rejectsWrongArity() throws IOException {
+        checkRejected(1, "S 0 0 2 9");
+        checkRejected(1, "S 0 0");
+        checkRejected(3, "M Left junk");
+        checkRejected(3, "M");
+        checkRejected(5, "E 4 1000000000000002 junk");
+        checkRejected(5, "E 4");
+    }
+
+    @Test
+    public void rejectsWrongClaims() throws IOException {
+        checkRejected(5, "E 8 1000000000000002");
+        checkRejected(5, "E 4 2000000000000002");
+        checkRejected(3, "M Up");
+    }
+
+    @Test
+    public void boardsRoundTrip() {
+        byte[] packed = ReplayVerifier.unpack(0xfedcba9876543210L);
+        assertEquals("fedcba9876543210", ReplayVerifier.formatBoard(packed));
+        assertArrayEquals(packed,
+                ReplayVerifier.parseBoard("fedcba9876543210"));
+        byte[] wide = packed.clone();
+        wide[5] = 17;
+        String text = ReplayVerifier.formatBoard(wide);
+        assertEquals(2 * Boards.SQUARES, text.length());
+        assertArrayEquals(wide, ReplayVerifier.parseBoard(text));
+    }
+
+}
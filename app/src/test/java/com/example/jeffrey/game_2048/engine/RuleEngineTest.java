@@ -0,0 +1,131 @@
+package com.example.jeffrey.game_2048.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/** Checks the tables compiled by RuleEngine: the standard rules against
+ *  Boards, and the merges of the other variants. */
+public class RuleEngineTest {
+    /** Number of random boards checked. */
+    private static final int BOARDS = 100000;
+
+    /** Return the board whose square at row r and column c holds rank
+     *  RANKS[r][c], leaving squares outside RANKS empty. */
+    private static long board(int[][] ranks) {
+        long board = 0;
+        for (int r = 0; r < ranks.length; r += 1) {
+            for (int c = 0; c < ranks[r].length; c += 1) {
+                board = Boards.set(board, r, c, ranks[r][c]);
+            }
+        }
+        return board;
+    }
+
+    @Test
+    public void standardMatchesBoards() {
+        SpawnRandom random = new Xoroshiro128(17);
+        RuleEngine engine = RuleEngine.STANDARD;
+        for (int k = 0; k < BOARDS; k += 1) {
+            long board = SymmetryTest.randomBoard(random);
+            for (int side = 0; side < 4; side += 1) {
+                assertEquals(Boards.move(board, side),
+                             engine.move(board, side));
+                assertEquals(Boards.score(board, side),
+                             engine.score(board, side));
+            }
+            assertEquals(Boards.canMove(board), engine.canMove(board));
+            assertEquals(Boards.countEmpty(board), engine.countEmpty(board));
+            assertEquals(Boards.maxExponent(board) >= 11,
+                         engine.isWon(board));
+        }
+    }
+
+    @Test
+    public void standardSpawnsMatchSpawnRandom() {
+        SpawnRandom random = new Xoroshiro128(5);
+        for (int k = 0; k < BOARDS; k += 1) {
+            long board = SymmetryTest.randomBoard(random);
+            long[] state = random.getState();
+            long expected = random.spawnOn(board);
+            random.setState(state);
+            assertEquals(expected, RuleEngine.STANDARD.spawnOn(board, random));
+        }
+    }
+
+    @Test
+    public void fibonacciMerges() {
+        RuleEngine engine = Rules.FIBONACCI_RULES.compile();
+        // tiles 1 1 2 3: the 1s make a 2, then the 2 and 3 make a 5
+        long board = board(new int[][] { { 1, 1, 2, 3 } });
+        assertEquals(board(new int[][] { { 2, 4 } }),
+                     engine.move(board, Boards.WEST));
+        assertEquals(2 + 5, engine.score(board, Boards.WEST));
+        // tiles 2 and 5 are not consecutive
+        board = board(new int[][] { { 2, 4 } });
+        assertEquals(board, engine.move(board, Boards.WEST));
+        assertEquals(8, engine.valueOf(5));
+        assertEquals(Boards.MAX_EXPONENT, engine.rankOf(987));
+    }
+
+    @Test
+    public void threesMerges() {
+        RuleEngine engine = Rules.THREES_RULES.compile();
+        // tiles 1 2 3 3: the 1 and 2 make a 3, then the 3s make a 6
+        long board = board(new int[][] { { 1, 2, 3, 3 } });
+        assertEquals(board(new int[][] { { 0, 0, 3, 4 } }),
+                     engine.move(board, Boards.EAST));
+        assertEquals(3 + 6, engine.score(board, Boards.EAST));
+        // 1s and 2s merge only with each other
+        board = board(new int[][] { { 1, 1, 2, 2 } });
+        assertEquals(board(new int[][] { { 1, 3, 2 } }),
+                     engine.move(board, Boards.WEST));
+        assertEquals(6, engine.valueOf(4));
+        assertEquals(14, engine.rankOf(6144));
+        assertTrue(engine.isWon(board(new int[][] { { 0, 14 } })));
+        assertFalse(engine.isWon(board(new int[][] { { 13, 13 } })));
+    }
+
+    @Test
+    public void smallBoardTilts() {
+        RuleEngine engine = Rules.SMALL.compile();
+        assertEquals(3, engine.getSize());
+        long board = board(new int[][] {
+            { 1, 1, 0 },
+            { 0, 2, 2 },
+            { 1, 0, 1 }
+        });
+        assertEquals(board(new int[][] {
+            { 0, 0, 2 },
+            { 0, 0, 3 },
+            { 0, 0, 2 }
+        }), engine.move(board, Boards.EAST));
+        assertEquals(4 + 8 + 4, engine.score(board, Boards.EAST));
+        assertEquals(board(new int[][] {
+            { 0, 0, 0 },
+            { 0, 1, 2 },
+            { 2, 2, 1 }
+        }), engine.move(board, Boards.SOUTH));
+        assertEquals(4, engine.score(board, Boards.SOUTH));
+        assertEquals(3, engine.countEmpty(board));
+
+        // full, with no merges, though the fourth row and column are empty
+        long stuck = board(new int[][] {
+            { 1, 2, 1 },
+            { 2, 1, 2 },
+            { 1, 2, 1 }
+        });
+        assertFalse(engine.canMove(stuck));
+        assertEquals(stuck, engine.spawnOn(stuck, new Xoroshiro128(1)));
+        assertTrue(RuleEngine.STANDARD.canMove(stuck));
+
+        SpawnRandom random = new Xoroshiro128(3);
+        long spawned = engine.spawnOn(0, random);
+        for (int k = 0; k < 7; k += 1) {
+            spawned = engine.spawnOn(spawned, random);
+        }
+        assertEquals(1, engine.countEmpty(spawned));
+        assertEquals(8, Boards.SQUARES - Boards.countEmpty(spawned));
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.example.jeffrey.game_2048.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/** Checks canonical keys against all eight transforms of random boards. */
+public class SymmetryTest {
+    /** Number of random boards checked. */
+    private static final int BOARDS = 1000000;
+
+    /** Return a random board from RANDOM, with about half its squares
+     *  empty, so that symmetric boards and equal images are common. */
+    static long randomBoard(SpawnRandom random) {
+        long board = random.nextLong(), empty = random.nextLong();
+        for (int i = 0; i < Boards.SQUARES; i += 1) {
+            if (((empty >>> (4 * i)) & 1) != 0) {
+                board &= ~(0xFL << (4 * i));
+            }
+        }
+        return board;
+    }
+
+    /** Check canonical and canonicalTransform on BOARD. */
+    private static void check(long board) {
+        long least = Symmetry.apply(0, board);
+        int leastTransform = 0;
+        for (int t = 1; t < Symmetry.TRANSFORMS; t += 1) {
+            long image = Symmetry.apply(t, board);
+            if (image < least) {
+                least = image;
+                leastTransform = t;
+            }
+        }
+        assertEquals(least, Symmetry.canonical(board));
+        assertEquals(leastTransform, Symmetry.canonicalTransform(board));
+        for (int t = 0; t < Symmetry.TRANSFORMS; t += 1) {
+            assertEquals(least,
+                         Symmetry.canonical(Symmetry.apply(t, board)));
+        }
+    }
+
+    @Test
+    public void canonicalIsLeastTransform() {
+        SpawnRandom random = new Xoroshiro128(1);
+        for (int n = 0; n < BOARDS; n += 1) {
+            check(randomBoard(random));
+        }
+    }
+
+    @Test
+    public void canonicalOfSymmetricBoards() {
+        check(0);
+        check(0x1111111111111111L);
+        check(0x1000000000000001L);
+        check(0x0110100110010110L);
+    }
+
+    @Test
+    public void inverseUndoesTransform() {
+        SpawnRandom random = new Xoroshiro128(2);
+        for (int n = 0; n < 1000; n += 1) {
+            long board = randomBoard(random);
+            for (int t = 0; t < Symmetry.TRANSFORMS; t += 1) {
+                assertEquals(board, Symmetry.apply(Symmetry.inverse(t),
+                        Symmetry.apply(t, board)));
+            }
+        }
+    }
+
+    @Test
+    public void tiltsCommuteWithTransforms() {
+        SpawnRandom random = new Xoroshiro128(3);
+        for (int n = 0; n < 100000; n += 1) {
+            long board = randomBoard(random);
+            for (int t = 0; t < Symmetry.TRANSFORMS; t += 1) {
+                long image = Symmetry.apply(t, board);
+                for (int side = 0; side < 4; side += 1) {
+                    int mapped = Symmetry.mapSide(t, side);
+                    assertEquals(Symmetry.apply(t, Boards.move(board, side)),
+                                 Boards.move(image, mapped));
+                    assertEquals(Boards.score(board, side),
+                                 Boards.score(image, mapped));
+                    assertEquals(side, Symmetry.unmapSide(t, mapped));
+                }
+            }
+        }
+    }
+
+}
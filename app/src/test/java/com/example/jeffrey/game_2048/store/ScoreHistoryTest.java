@@ -0,0 +1,219 @@
+package com.example.jeffrey.game_2048.store;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/** Checks the record and index files of ScoreHistory, and their repair. */
+public class ScoreHistoryTest {
+    /** A time on which games are finished. */
+    private static final long NOON = 1700000000000L;
+
+    @Rule
+    public TemporaryFolder mDir = new TemporaryFolder();
+
+    /** Return a record of a game scoring SCORE, started at START, that
+     *  lasted MOVES seconds. */
+    private static GameRecord record(int score, int moves, long start) {
+        return new GameRecord(score, 2048, moves, moves * 1000L,
+                start + moves * 1000L);
+    }
+
+    /** Return the scores of the best games in HISTORY, best first. */
+    private static List<Integer> topScores(ScoreHistory history) {
+        List<Integer> scores = new ArrayList<>();
+        for (GameRecord record : history.top(ScoreHistory.TOP_K)) {
+            scores.add(record.getScore());
+        }
+        return scores;
+    }
+
+    /** Check that HISTORY indexes the same games as a history whose index
+     *  is rebuilt from its records. */
+    private void checkMatchesRebuilt(ScoreHistory history) throws IOException {
+        File index = new File(mDir.getRoot(), "scores.idx");
+        assertTrue(index.delete());
+        ScoreHistory rebuilt = new ScoreHistory(mDir.getRoot());
+        assertEquals(rebuilt.size(), history.size());
+        assertEquals(rebuilt.top(ScoreHistory.TOP_K),
+                     history.top(ScoreHistory.TOP_K));
+        checkSame(rebuilt.total(), history.total());
+        checkSame(rebuilt.day(NOON), history.day(NOON));
+        checkSame(rebuilt.week(NOON), history.week(NOON));
+    }
+
+    /** Check that aggregates EXPECTED and ACTUAL agree. */
+    private static void checkSame(ScoreHistory.Aggregate expected,
+                                  ScoreHistory.Aggregate actual) {
+        assertEquals(expected.getGames(), actual.getGames());
+        assertEquals(expected.getBestScore(), actual.getBestScore());
+        assertEquals(expected.getTotalScore(), actual.getTotalScore());
+        assertEquals(expected.getTotalMoves(), actual.getTotalMoves());
+        assertEquals(expected.getTotalDuration(), actual.getTotalDuration());
+    }
+
+    @Test
+    public void indexSurvivesReopening() throws IOException {
+        ScoreHistory history = new ScoreHistory(mDir.getRoot());
+        for (int k = 1; k <= 5; k += 1) {
+            history.add(record(100 * k, k, NOON + 10000 * k));
+        }
+        ScoreHistory reopened = new ScoreHistory(mDir.getRoot());
+        assertEquals(5, reopened.size());
+        assertEquals(topScores(history), topScores(reopened));
+        checkSame(history.total(), reopened.total());
+        assertEquals(500, reopened.getBestScore());
+        checkMatchesRebuilt(reopened);
+    }
+
+    @Test
+    public void topKIsBounded() throws IOException {
+        ScoreHistory history = new ScoreHistory(mDir.getRoot());
+        Random random = new Random(1);
+        List<Integer> scores = new ArrayList<>();
+        for (int k = 0; k < 3 * ScoreHistory.TOP_K; k += 1) {
+            int score = random.nextInt(100000);
+            scores.add(score);
+            history.add(record(score, 10, NOON + 100000 * k));
+        }
+        Collections.sort(scores, Collections.reverseOrder());
+        List<Integer> best = scores.subList(0, ScoreHistory.TOP_K);
+        assertEquals(ScoreHistory.TOP_K, history.top(1000).size());
+        assertEquals(best, topScores(history));
+        assertEquals(3, history.top(3).size());
+        assertEquals(best, topScores(new ScoreHistory(mDir.getRoot())));
+        checkMatchesRebuilt(history);
+    }
+
+    @Test
+    public void tornRecordIsDropped() throws IOException {
+        ScoreHistory history = new ScoreHistory(mDir.getRoot());
+        for (int k = 1; k <= 3; k += 1) {
+            history.add(record(100 * k, k, NOON + 10000 * k));
+        }
+        File records = new File(mDir.getRoot(), "scores.dat");
+        FileOutputStream out = new FileOutputStream(records, true);
+        try {
+            out.write(new byte[GameRecord.BYTES / 2]);
+        } finally {
+            out.close();
+        }
+        ScoreHistory reopened = new ScoreHistory(mDir.getRoot());
+        assertEquals(3, reopened.size());
+        assertEquals(3 * GameRecord.BYTES, records.length());
+        reopened.add(record(1000, 4, NOON + 40000));
+        assertEquals(4, new ScoreHistory(mDir.getRoot()).size());
+        assertEquals(1000, new ScoreHistory(mDir.getRoot()).getBestScore());
+    }
+
+    @Test
+    public void staleIndexIsRebuilt() throws IOException {
+        ScoreHistory history = new ScoreHistory(mDir.getRoot());
+        history.add(record(100, 1, NOON));
+        File index = new File(mDir.getRoot(), "scores.idx");
+        File saved = mDir.newFile("saved.idx");
+        Files.copy(index.toPath(), saved.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING);
+        history.add(record(900, 2, NOON + 10000));
+        // as if the process died after appending, before saving the index
+        Files.copy(saved.toPath(), index.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING);
+        ScoreHistory reopened = new ScoreHistory(mDir.getRoot());
+        assertEquals(2, reopened.size());
+        assertEquals(900, reopened.getBestScore());
+        assertEquals(2, reopened.total().getGames());
+    }
+
+    @Test
+    public void malformedIndexIsRebuilt() throws IOException {
+        ScoreHistory history = new ScoreHistory(mDir.getRoot());
+        history.add(record(100, 1, NOON));
+        history.add(record(200, 2, NOON + 10000));
+        // magic, version, count, last record, then the top-K count
+        RandomAccessFile index = new RandomAccessFile(
+                new File(mDir.getRoot(), "scores.idx"), "rw");
+        try {
+            index.seek(4 + 4 + 8 + GameRecord.BYTES);
+            index.writeInt(ScoreHistory.TOP_K + 1);
+        } finally {
+            index.close();
+        }
+        ScoreHistory reopened = new ScoreHistory(mDir.getRoot());
+        assertEquals(2, reopened.size());
+        assertEquals(topScores(history), topScores(reopened));
+    }
+
+    @Test
+    public void indexWithOtherLastRecordIsRebuilt() throws IOException {
+        ScoreHistory history = new ScoreHistory(mDir.getRoot());
+        history.add(record(100, 1, NOON));
+        history.add(record(200, 2, NOON + 10000));
+        // as if the process died after replacing the last record, before
+        // saving the index: the count still matches
+        RandomAccessFile records = new RandomAccessFile(
+                new File(mDir.getRoot(), "scores.dat"), "rw");
+        try {
+            records.seek(GameRecord.BYTES);
+            record(5000, 9, NOON + 10000).write(records);
+        } finally {
+            records.close();
+        }
+        ScoreHistory reopened = new ScoreHistory(mDir.getRoot());
+        assertEquals(2, reopened.size());
+        assertEquals(5000, reopened.getBestScore());
+        assertEquals(5100, reopened.total().getTotalScore());
+    }
+
+    @Test
+    public void gamePlayedOnReplacesLastRecord() throws IOException {
+        ScoreHistory history = new ScoreHistory(mDir.getRoot());
+        history.add(record(300, 3, NOON - 100000));
+        history.add(record(2000, 100, NOON));
+        history.add(record(9000, 400, NOON));
+        assertEquals(2, history.size());
+        assertEquals(2 * GameRecord.BYTES,
+                     new File(mDir.getRoot(), "scores.dat").length());
+        assertEquals(9000, history.getBestScore());
+        assertEquals(2, history.total().getGames());
+        assertEquals(9300, history.total().getTotalScore());
+        assertEquals(403, history.total().getTotalMoves());
+        assertEquals(topScores(history),
+                     topScores(new ScoreHistory(mDir.getRoot())));
+        checkMatchesRebuilt(history);
+    }
+
+    @Test
+    public void gamePlayedOnEntersTopK() throws IOException {
+        ScoreHistory history = new ScoreHistory(mDir.getRoot());
+        for (int k = 0; k < ScoreHistory.TOP_K; k += 1) {
+            history.add(record(1000 + k, 10, NOON + 100000 * k));
+        }
+        long start = NOON + 100000 * ScoreHistory.TOP_K;
+        history.add(record(500, 10, start));
+        assertFalse(topScores(history).contains(500));
+        history.add(record(5000, 50, start));
+        assertEquals(ScoreHistory.TOP_K + 1, history.size());
+        assertEquals(5000, history.getBestScore());
+        assertEquals(ScoreHistory.TOP_K, history.top(1000).size());
+        assertFalse(topScores(history).contains(1000));
+        history.add(record(6000, 60, start));
+        assertEquals(ScoreHistory.TOP_K + 1, history.size());
+        assertEquals(Integer.valueOf(6000), topScores(history).get(0));
+        assertEquals(Integer.valueOf(1009), topScores(history).get(1));
+        checkMatchesRebuilt(history);
+    }
+
+}